@@ -0,0 +1,107 @@
+package io.descoped.lds.api.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+
+import java.time.ZonedDateTime;
+
+import static io.descoped.lds.api.persistence.json.JsonTools.mapper;
+
+/**
+ * Deterministic documents of different shapes used to drive the benchmarks.
+ */
+public enum DocumentCorpus {
+
+    /**
+     * A handful of fields of every leaf type, typical of reference data.
+     */
+    SMALL {
+        @Override
+        JsonNode create() {
+            ObjectNode root = mapper.createObjectNode();
+            populate(root, 0);
+            return root;
+        }
+    },
+
+    /**
+     * Many sibling fields and a large array of small objects.
+     */
+    WIDE {
+        @Override
+        JsonNode create() {
+            ObjectNode root = mapper.createObjectNode();
+            for (int i = 0; i < 200; i++) {
+                root.put("field" + i, "value" + i);
+            }
+            ArrayNode items = root.putArray("items");
+            for (int i = 0; i < 200; i++) {
+                populate(items.addObject(), i);
+            }
+            return root;
+        }
+    },
+
+    /**
+     * Objects and arrays nested many levels down.
+     */
+    DEEP {
+        @Override
+        JsonNode create() {
+            ObjectNode root = mapper.createObjectNode();
+            ObjectNode node = root;
+            for (int i = 0; i < 32; i++) {
+                populate(node, i);
+                ArrayNode children = node.putArray("children");
+                children.addObject().put("sibling", i);
+                node = children.addObject();
+            }
+            return root;
+        }
+    },
+
+    /**
+     * A few string values that span many fragments.
+     */
+    LARGE_STRING {
+        @Override
+        JsonNode create() {
+            ObjectNode root = mapper.createObjectNode();
+            populate(root, 0);
+            root.put("ascii", text("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ", 64 * 1024));
+            root.put("multiByte", text("Blåbærsyltetøy på skiver æøå ", 64 * 1024));
+            return root;
+        }
+    };
+
+    static final ZonedDateTime VERSION = ZonedDateTime.parse("2018-01-01T00:00:00.000Z");
+
+    abstract JsonNode create();
+
+    DocumentKey key() {
+        return new DocumentKey("ns", "Benchmark" + name(), "id-" + ordinal(), VERSION);
+    }
+
+    static void populate(ObjectNode node, int i) {
+        node.put("id", "id-" + i);
+        node.put("name", "The name of element " + i);
+        node.put("anInt", i);
+        node.put("aLong", 1_000_000_000_000L + i);
+        node.put("aDouble", 987654321.123456789 + i);
+        node.put("aBoolean", i % 2 == 0);
+        node.putNull("aNull");
+        node.putArray("anEmptyArray");
+        node.putObject("anEmptyObject");
+        node.put("link", "/Benchmark/id-" + i);
+    }
+
+    static String text(String pattern, int length) {
+        StringBuilder sb = new StringBuilder(length + pattern.length());
+        while (sb.length() < length) {
+            sb.append(pattern);
+        }
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,108 @@
+package io.descoped.lds.api.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.json.FragmentsToJson;
+import io.descoped.lds.api.persistence.json.JsonToFragments;
+import io.descoped.lds.api.persistence.reactivex.RxGroupByTools;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentComparators;
+import io.descoped.lds.api.persistence.streaming.FragmentDictionary;
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider output as the bridge receives it: fragments of many documents whose namespaces, entities and paths are
+ * separate string instances, as if decoded from storage one by one. Compares sorting and assembling them as they are
+ * with first interning them into a {@link FragmentDictionary}, to tell where interning pays for itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class FragmentDictionaryBenchmark {
+
+    @Param({"SMALL", "WIDE", "DEEP"})
+    DocumentCorpus corpus;
+
+    @Param({"100"})
+    int documents;
+
+    List<Fragment> orderedFragments;
+    List<Fragment> shuffledFragments;
+
+    @Setup
+    public void setUp() {
+        JsonNode json = corpus.create();
+        DocumentKey key = corpus.key();
+        orderedFragments = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            DocumentKey documentKey = new DocumentKey(key.namespace(), key.entity(), String.format("id-%06d", i), key.version());
+            new JsonToFragments(documentKey, json, 512).forEachRemaining(fragment ->
+                    orderedFragments.add(new Fragment(new String(fragment.namespace()), new String(fragment.entity()),
+                            new String(fragment.id()), fragment.version(), new String(fragment.path()),
+                            fragment.fragmentType(), fragment.offset(), fragment.value())));
+        }
+        orderedFragments.sort(FragmentComparators.FORWARD);
+        shuffledFragments = new ArrayList<>(orderedFragments);
+        Collections.shuffle(shuffledFragments, new Random(1));
+    }
+
+    static List<Fragment> interned(List<Fragment> fragments) {
+        FragmentDictionary dictionary = new FragmentDictionary();
+        List<Fragment> interned = new ArrayList<>(fragments.size());
+        for (Fragment fragment : fragments) {
+            interned.add(dictionary.intern(fragment));
+        }
+        return interned;
+    }
+
+    static void assemble(List<Fragment> fragments, Blackhole blackhole) {
+        RxGroupByTools.groupByOrdered(Flowable.fromIterable(fragments), DocumentKey::from)
+                .concatMapSingle(group -> group.flowable().collect(() -> new FragmentsToJson(group.key()), FragmentsToJson::accept))
+                .blockingForEach(assembler -> blackhole.consume(assembler.toJsonNode()));
+    }
+
+    @Benchmark
+    public List<Fragment> sort() {
+        List<Fragment> sorted = new ArrayList<>(shuffledFragments);
+        sorted.sort(FragmentComparators.FORWARD);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Fragment> internAndSort() {
+        List<Fragment> sorted = interned(shuffledFragments);
+        sorted.sort(FragmentComparators.FORWARD);
+        return sorted;
+    }
+
+    @Benchmark
+    public void assemble(Blackhole blackhole) {
+        assemble(orderedFragments, blackhole);
+    }
+
+    @Benchmark
+    public void internAndAssemble(Blackhole blackhole) {
+        assemble(interned(orderedFragments), blackhole);
+    }
+}
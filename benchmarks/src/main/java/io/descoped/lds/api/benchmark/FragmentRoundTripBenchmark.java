@@ -0,0 +1,113 @@
+package io.descoped.lds.api.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.flattened.FlattenedDocument;
+import io.descoped.lds.api.persistence.json.FlattenedDocumentToJson;
+import io.descoped.lds.api.persistence.json.FragmentsToJson;
+import io.descoped.lds.api.persistence.json.JsonToFlattenedDocument;
+import io.descoped.lds.api.persistence.json.JsonToFragments;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures each step of the conversion between {@link JsonNode} and {@link Fragment}s that every read and write goes
+ * through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class FragmentRoundTripBenchmark {
+
+    @Param({"SMALL", "WIDE", "DEEP", "LARGE_STRING"})
+    DocumentCorpus corpus;
+
+    @Param({"64", "512", "8192"})
+    int fragmentSize;
+
+    DocumentKey key;
+    JsonNode json;
+    FlattenedDocument flattenedDocument;
+    Map<String, List<Fragment>> fragmentsByPath;
+    List<Fragment> sortedFragments;
+
+    @Setup
+    public void setUp() {
+        key = corpus.key();
+        json = corpus.create();
+        flattenedDocument = toDocument();
+        fragmentsByPath = new LinkedHashMap<>();
+        Iterator<Fragment> iterator = flattenedDocument.fragmentIterator();
+        while (iterator.hasNext()) {
+            Fragment fragment = iterator.next();
+            fragmentsByPath.computeIfAbsent(fragment.path(), path -> new ArrayList<>()).add(fragment);
+        }
+        sortedFragments = new ArrayList<>(new TreeSet<>(fragmentsByPath.values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList())));
+    }
+
+    @Benchmark
+    public FlattenedDocument toDocument() {
+        return new JsonToFlattenedDocument(key.namespace(), key.entity(), key.id(), key.timestamp(), json, fragmentSize)
+                .toDocument();
+    }
+
+    @Benchmark
+    public void fragmentIterator(Blackhole blackhole) {
+        Iterator<Fragment> iterator = flattenedDocument.fragmentIterator();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void jsonToFragments(Blackhole blackhole) {
+        Iterator<Fragment> iterator = new JsonToFragments(key, json, fragmentSize);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public FlattenedDocument decodeDocument() {
+        return FlattenedDocument.decodeDocument(key, fragmentsByPath, fragmentSize);
+    }
+
+    @Benchmark
+    public JsonNode toJsonNode() {
+        return new FlattenedDocumentToJson(flattenedDocument).toJsonNode();
+    }
+
+    @Benchmark
+    public JsonNode assembleFromFragments() {
+        FragmentsToJson assembler = new FragmentsToJson(key);
+        for (Fragment fragment : sortedFragments) {
+            assembler.accept(fragment);
+        }
+        return assembler.toJsonNode();
+    }
+}
@@ -0,0 +1,64 @@
+package io.descoped.lds.api.benchmark;
+
+import io.descoped.lds.api.persistence.flattened.PathComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single {@link PathComparator} comparison. With the GC profiler, gc.alloc.rate.norm should be zero (within
+ * measurement noise) for every pair of paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PathComparatorBenchmark {
+
+    public enum Paths {
+        SIBLINGS("$.person.name.first", "$.person.name.last"),
+        ARRAY_INDICES("$.items[9].values[10].amount", "$.items[10].values[9].amount"),
+        DIFFERENT_DEPTH("$.a.b.c.d.e.f", "$.a.b[3]"),
+        EQUAL("$.items[123].values[45].amount", "$.items[123].values[45].amount");
+
+        final String path1;
+        final String path2;
+
+        Paths(String path1, String path2) {
+            this.path1 = path1;
+            this.path2 = path2;
+        }
+    }
+
+    @Param
+    Paths paths;
+
+    PathComparator comparator;
+    String path1;
+    String path2;
+
+    @Setup
+    public void setUp() {
+        comparator = new PathComparator();
+        // copies, so that comparisons cannot short-circuit on identity
+        path1 = new String(paths.path1);
+        path2 = new String(paths.path2);
+    }
+
+    @Benchmark
+    public int compare() {
+        return comparator.compare(path1, path2);
+    }
+}
@@ -1,5 +1,6 @@
 package io.descoped.lds.api.persistence;
 
+import io.descoped.lds.api.persistence.streaming.EpochMicros;
 import io.descoped.lds.api.persistence.streaming.Fragment;
 
 import java.time.ZonedDateTime;
@@ -8,19 +9,26 @@ import java.util.Objects;
 public class DocumentKey {
 
     public static DocumentKey from(Fragment fragment) {
-        return new DocumentKey(fragment.namespace(), fragment.entity(), fragment.id(), fragment.timestamp());
+        return new DocumentKey(fragment.namespace(), fragment.entity(), fragment.id(), fragment.version());
     }
 
     private final String namespace;
     private final String entity;
     private final String id;
-    private final ZonedDateTime timestamp;
+    private final long version;
 
     public DocumentKey(String namespace, String entity, String id, ZonedDateTime timestamp) {
+        this(namespace, entity, id, EpochMicros.of(timestamp));
+    }
+
+    /**
+     * @param version the version in microseconds since the epoch, see {@link EpochMicros}.
+     */
+    public DocumentKey(String namespace, String entity, String id, long version) {
         this.namespace = namespace;
         this.entity = entity;
         this.id = id;
-        this.timestamp = timestamp;
+        this.version = version;
     }
 
     public String namespace() {
@@ -35,13 +43,23 @@ public class DocumentKey {
         return id;
     }
 
+    /**
+     * @return the version as a timestamp in UTC, or null if this key has no version.
+     */
     public ZonedDateTime timestamp() {
-        return timestamp;
+        return EpochMicros.toZonedDateTime(version);
+    }
+
+    /**
+     * @return the version in microseconds since the epoch, or {@link EpochMicros#NONE} if this key has no version.
+     */
+    public long version() {
+        return version;
     }
 
     @Override
     public String toString() {
-        return "DocumentKey{" + namespace + '/' + entity + '/' + id + '/' + timestamp + '}';
+        return "DocumentKey{" + namespace + '/' + entity + '/' + id + '/' + timestamp() + '}';
     }
 
     @Override
@@ -49,14 +67,14 @@ public class DocumentKey {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DocumentKey that = (DocumentKey) o;
-        return Objects.equals(namespace, that.namespace) &&
+        return version == that.version &&
+                Objects.equals(namespace, that.namespace) &&
                 Objects.equals(entity, that.entity) &&
-                Objects.equals(id, that.id) &&
-                Objects.equals(timestamp, that.timestamp);
+                Objects.equals(id, that.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(namespace, entity, id, timestamp);
+        return Objects.hash(namespace, entity, id, version);
     }
 }
@@ -3,6 +3,7 @@ package io.descoped.lds.api.persistence.flattened;
 import io.descoped.lds.api.persistence.DocumentKey;
 import io.descoped.lds.api.persistence.streaming.Fragment;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -15,9 +16,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.TreeMap;
 
@@ -58,7 +59,7 @@ public class FlattenedDocument {
     }
 
     public boolean contains(String path, String value) {
-        return ofNullable(leafNodesByPath.get(path)).map(leaf -> leaf.value()).map(v -> value.equals(v)).orElse(Boolean.FALSE);
+        return ofNullable(leafNodesByPath.get(path)).map(leaf -> leaf.value()).map(v -> value.equals(String.valueOf(v))).orElse(Boolean.FALSE);
     }
 
     @Override
@@ -86,16 +87,26 @@ public class FlattenedDocument {
     }
 
     public Iterator<Fragment> fragmentIterator() {
-        // TODO Iterable directly rather than creating temporary collection?
-        List<Fragment> allDocumentFragments = new LinkedList<>();
-        for (Map.Entry<String, FlattenedDocumentLeafNode> entry : leafNodesByPath.entrySet()) {
-            Iterator<Fragment> fragmentIterator = entry.getValue().fragmentIterator();
-            while (fragmentIterator.hasNext()) {
-                Fragment fragment = fragmentIterator.next();
-                allDocumentFragments.add(fragment);
+        Iterator<FlattenedDocumentLeafNode> leafNodes = leafNodesByPath.values().iterator();
+        return new Iterator<>() {
+            Iterator<Fragment> leafFragments = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!leafFragments.hasNext() && leafNodes.hasNext()) {
+                    leafFragments = leafNodes.next().fragmentIterator();
+                }
+                return leafFragments.hasNext();
             }
-        }
-        return allDocumentFragments.iterator();
+
+            @Override
+            public Fragment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return leafFragments.next();
+            }
+        };
     }
 
     public static FlattenedDocument decodeDocument(DocumentKey documentKey, Map<String, ? extends Collection<Fragment>> fragmentsByPath, int fragmentValueCapacityBytes) {
@@ -140,7 +151,7 @@ public class FlattenedDocument {
                 leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.STRING, value.toString(), fragmentValueCapacityBytes));
             } else if (FragmentType.NUMERIC == fragmentType) {
                 byte[] value = fragments.get(0).value();
-                leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.NUMERIC, new String(value, StandardCharsets.UTF_8), fragmentValueCapacityBytes));
+                leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.NUMERIC, NumericType.decode(value), fragmentValueCapacityBytes));
             } else if (FragmentType.BOOLEAN == fragmentType) {
                 byte[] byteValue = fragments.get(0).value();
                 String value = (byteValue[0] == (byte) 1) ? "true" : "false";
@@ -3,6 +3,7 @@ package io.descoped.lds.api.persistence.flattened;
 import io.descoped.lds.api.persistence.DocumentKey;
 import io.descoped.lds.api.persistence.streaming.Fragment;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -11,8 +12,6 @@ import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
@@ -24,12 +23,16 @@ public class FlattenedDocumentLeafNode {
     private static final byte[] FALSE = new byte[]{(byte) 0};
 
     private final DocumentKey key;
-    private final String path;
+    private final FlattenedPath path;
     private final FragmentType type;
-    private final String value;
+    private final Object value;
     private final int capacity;
 
-    public FlattenedDocumentLeafNode(DocumentKey key, String path, FragmentType type, String value, int capacity) {
+    public FlattenedDocumentLeafNode(DocumentKey key, String path, FragmentType type, Object value, int capacity) {
+        this(key, FlattenedPath.of(path), type, value, capacity);
+    }
+
+    public FlattenedDocumentLeafNode(DocumentKey key, FlattenedPath path, FragmentType type, Object value, int capacity) {
         this.key = key;
         this.path = path;
         this.type = type;
@@ -42,6 +45,10 @@ public class FlattenedDocumentLeafNode {
     }
 
     public String path() {
+        return path.path();
+    }
+
+    public FlattenedPath flattenedPath() {
         return path;
     }
 
@@ -53,17 +60,25 @@ public class FlattenedDocumentLeafNode {
         return value;
     }
 
-    public static Map<Integer, byte[]> valueByOffset(FragmentType type, int fragmentCapacity, String value) {
+    /**
+     * @param value the leaf value. STRING values are strings, BOOLEAN values are booleans or their text, and NUMERIC
+     *              values are numbers or the text of a json number.
+     * @return the fragment values of the leaf by offset.
+     */
+    public static Map<Integer, byte[]> valueByOffset(FragmentType type, int fragmentCapacity, Object value) {
         Map<Integer, byte[]> valueByOffset = new TreeMap<>();
         if (type == FragmentType.NULL) {
             valueByOffset.put(0, EMPTY);
         } else if (type == FragmentType.BOOLEAN) {
-            valueByOffset.put(0, Boolean.parseBoolean(value) ? TRUE : FALSE);
+            boolean booleanValue = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean((String) value);
+            valueByOffset.put(0, booleanValue ? TRUE : FALSE);
         } else if (type == FragmentType.NUMERIC) {
-            valueByOffset.put(0, value.getBytes(StandardCharsets.UTF_8));
+            Number number = value instanceof Number ? (Number) value : NumericType.parse((String) value);
+            valueByOffset.put(0, NumericType.encode(NumericType.narrowed(number)));
         } else if (type == FragmentType.STRING) {
-            ByteBuffer out = ByteBuffer.allocate(Math.min(fragmentCapacity, 2 * value.length() + 256));
-            CharBuffer in = CharBuffer.wrap(value);
+            String stringValue = (String) value;
+            ByteBuffer out = ByteBuffer.allocate(Math.min(fragmentCapacity, 2 * stringValue.length() + 256));
+            CharBuffer in = CharBuffer.wrap(stringValue);
             CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
             CoderResult coderResult;
             coderResult = encoder.encode(in, out, false);
@@ -97,12 +112,19 @@ public class FlattenedDocumentLeafNode {
     }
 
     Iterator<Fragment> fragmentIterator() {
-        Map<Integer, byte[]> valueByOffset = valueByOffset(type, capacity, value);
-        List<Fragment> fragments = new LinkedList<>();
-        for (Map.Entry<Integer, byte[]> entry : valueByOffset.entrySet()) {
-            fragments.add(new Fragment(key.namespace(), key.entity(), key.id(), key.timestamp(), path, type, entry.getKey(), entry.getValue()));
-        }
-        return fragments.iterator();
+        Iterator<Map.Entry<Integer, byte[]>> entries = valueByOffset(type, capacity, value).entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Fragment next() {
+                Map.Entry<Integer, byte[]> entry = entries.next();
+                return new Fragment(key.namespace(), key.entity(), key.id(), key.version(), path.path(), type, entry.getKey(), entry.getValue());
+            }
+        };
     }
 
     static void handleError(CoderResult coderResult) {
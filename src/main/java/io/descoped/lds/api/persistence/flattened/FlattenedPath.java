@@ -0,0 +1,195 @@
+package io.descoped.lds.api.persistence.flattened;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pre-parsed flattened path, e.g. <code>$.name[1].first</code>. The root element is not part of the parsed elements,
+ * so the example has the three elements: field <code>name</code>, array index <code>1</code> and field
+ * <code>first</code>. Array indices are parsed once.
+ * <p>
+ * Parsed paths are kept in a small direct-mapped cache, so that the same path occurring in many documents is usually
+ * parsed only once. A path replaces whichever path was cached in its slot, so the cache never holds more than
+ * {@link #CACHE_SLOTS} paths and paths with many distinct array indices cannot crowd out the others for good.
+ */
+public final class FlattenedPath {
+
+    static final int CACHE_SLOTS = 4096;
+
+    private static final AtomicReferenceArray<FlattenedPath> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private static final FlattenedPath ROOT = new FlattenedPath("$", new String[0], new int[0]);
+
+    public static FlattenedPath root() {
+        return ROOT;
+    }
+
+    public static FlattenedPath of(String path) {
+        int hash = path.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SLOTS - 1);
+        FlattenedPath flattenedPath = cache.get(slot);
+        if (flattenedPath != null && flattenedPath.path.equals(path)) {
+            return flattenedPath;
+        }
+        flattenedPath = parse(path);
+        cache.set(slot, flattenedPath);
+        return flattenedPath;
+    }
+
+    static FlattenedPath parse(String path) {
+        if ("$".equals(path)) {
+            return ROOT;
+        }
+        int elements = 0;
+        int i = path.indexOf('.');
+        // a single path element is the leaf, otherwise the root element is skipped
+        int first = i == -1 ? 0 : i + 1;
+        for (i = first; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                elements++;
+            } else if (c != '.' && c != ']' && (i == first || path.charAt(i - 1) == '.')) {
+                elements++;
+            }
+        }
+        String[] names = new String[elements];
+        int[] indices = new int[elements];
+        int element = 0;
+        i = first;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                i++;
+            } else if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Malformed path, missing ']': " + path);
+                }
+                indices[element] = parseIndex(path, i + 1, end);
+                element++;
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                names[element] = path.substring(i, end);
+                indices[element] = -1;
+                element++;
+                i = end;
+            }
+        }
+        return new FlattenedPath(path, names, indices);
+    }
+
+    private static int parseIndex(String path, int start, int end) {
+        if (start == end) {
+            throw new IllegalArgumentException("Malformed path, missing array index: " + path);
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Malformed path, array index is not a number: " + path);
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    private final String path;
+    private final String[] names;
+    private final int[] indices;
+
+    private FlattenedPath(String path, String[] names, int[] indices) {
+        this.path = path;
+        this.names = names;
+        this.indices = indices;
+    }
+
+    /**
+     * @param name the field name.
+     * @return the path of the field with the given name in the object at this path.
+     */
+    public FlattenedPath field(String name) {
+        String[] childNames = Arrays.copyOf(names, names.length + 1);
+        int[] childIndices = Arrays.copyOf(indices, indices.length + 1);
+        childNames[names.length] = name;
+        childIndices[indices.length] = -1;
+        return new FlattenedPath(path + "." + name, childNames, childIndices);
+    }
+
+    /**
+     * @param index the array index.
+     * @return the path of the element with the given index in the array at this path.
+     */
+    public FlattenedPath element(int index) {
+        String[] childNames = Arrays.copyOf(names, names.length + 1);
+        int[] childIndices = Arrays.copyOf(indices, indices.length + 1);
+        childIndices[indices.length] = index;
+        return new FlattenedPath(path + "[" + index + "]", childNames, childIndices);
+    }
+
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return the number of path elements, not counting the root element.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isArrayIndex(int element) {
+        return indices[element] >= 0;
+    }
+
+    /**
+     * @return the field name of the element, or null if the element is an array index.
+     */
+    public String name(int element) {
+        return names[element];
+    }
+
+    /**
+     * @return the array index of the element, or -1 if the element is a field.
+     */
+    public int index(int element) {
+        return indices[element];
+    }
+
+    /**
+     * @return the number of leading path elements that are equal in this and the other path.
+     */
+    public int commonPrefixLength(FlattenedPath other) {
+        int length = Math.min(names.length, other.names.length);
+        for (int i = 0; i < length; i++) {
+            if (indices[i] != other.indices[i] || !sameName(names[i], other.names[i])) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static boolean sameName(String name, String other) {
+        return name == other || name != null && name.equals(other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return path.equals(((FlattenedPath) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -1,45 +1,133 @@
 package io.descoped.lds.api.persistence.flattened;
 
 import java.util.Comparator;
-import java.util.regex.Pattern;
 
+/**
+ * Orders paths by number of path elements, then element by element where array indices (and other all-digit elements)
+ * are ordered numerically and all other elements lexicographically. Path elements are separated by '.', '[' and ']'
+ * (the combination "]." counts as one separator).
+ * <p>
+ * Both paths are scanned in place, a comparison does not allocate.
+ */
 public class PathComparator implements Comparator<String> {
 
-    private static final Pattern SEPARATOR_PATTERN = Pattern.compile("(\\.|\\[|\\]\\.?)");
+    @Override
+    public int compare(String path1, String path2) {
+        int elements1 = countElements(path1);
+        int elements2 = countElements(path2);
+        if (elements1 != elements2) {
+            return elements1 < elements2 ? -1 : +1;
+        }
+        int start1 = 0;
+        int start2 = 0;
+        for (int i = 0; i < elements1; i++) {
+            int end1 = elementEnd(path1, start1);
+            int end2 = elementEnd(path2, start2);
+            int compare = compareElements(path1, start1, end1, path2, start2, end2);
+            if (compare != 0) {
+                return compare;
+            }
+            start1 = nextElementStart(path1, end1);
+            start2 = nextElementStart(path2, end2);
+        }
+        return 0;
+    }
+
+    static boolean isSeparator(char c) {
+        return c == '.' || c == '[' || c == ']';
+    }
+
+    static int elementEnd(String path, int start) {
+        int i = start;
+        while (i < path.length() && !isSeparator(path.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    static int nextElementStart(String path, int end) {
+        if (end + 1 < path.length() && path.charAt(end) == ']' && path.charAt(end + 1) == '.') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Number of path elements, trailing empty elements are not counted.
+     */
+    static int countElements(String path) {
+        int elements = 0;
+        int nonEmptyElements = 0;
+        boolean hasSeparator = false;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = elementEnd(path, start);
+            elements++;
+            if (end > start) {
+                nonEmptyElements = elements;
+            }
+            if (end == path.length()) {
+                break;
+            }
+            hasSeparator = true;
+            start = nextElementStart(path, end);
+        }
+        return hasSeparator ? nonEmptyElements : 1;
+    }
 
-    boolean isDigit(CharSequence seq) {
-        for (int j = 0; j < seq.length(); j++) {
-            char charAt = seq.charAt(j);
-            if (!('0' <= charAt && charAt <= '9')) {
+    static int compareElements(String path1, int start1, int end1, String path2, int start2, int end2) {
+        if (isDigits(path1, start1, end1) && isDigits(path2, start2, end2)) {
+            return compareNumerically(path1, start1, end1, path2, start2, end2);
+        }
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            char c1 = path1.charAt(start1 + i);
+            char c2 = path2.charAt(start2 + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    static boolean isDigits(String path, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (!('0' <= c && c <= '9')) {
                 return false;
             }
         }
         return true;
     }
 
-    @Override
-    public int compare(String path1, String path2) {
-        // Kinda optimized. Could be simpler but this code is called often.
-        String[] parts1 = SEPARATOR_PATTERN.split(path1);
-        String[] parts2 = SEPARATOR_PATTERN.split(path2);
-        if (parts1.length != parts2.length) {
-            return parts1.length < parts2.length ? -1 : +1;
-        } else {
-            int compare = 0;
-            for (int i = 0; i < parts1.length; i++) {
-                if (isDigit(parts1[i]) && isDigit(parts2[i])) {
-                    compare = Integer.compareUnsigned(
-                            Integer.parseInt(parts1[i]),
-                            Integer.parseInt(parts2[i])
-                    );
-                } else {
-                    compare = parts1[i].compareTo(parts2[i]);
-                }
-                if (compare != 0) {
-                    return compare;
-                }
+    /**
+     * Compare two digit sequences by value without parsing them: ignoring leading zeros, the longer sequence is the
+     * larger number, and sequences of equal length compare as their first differing digit.
+     */
+    static int compareNumerically(String path1, int start1, int end1, String path2, int start2, int end2) {
+        while (start1 < end1 - 1 && path1.charAt(start1) == '0') {
+            start1++;
+        }
+        while (start2 < end2 - 1 && path2.charAt(start2) == '0') {
+            start2++;
+        }
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        if (length1 != length2) {
+            return length1 < length2 ? -1 : +1;
+        }
+        for (int i = 0; i < length1; i++) {
+            char c1 = path1.charAt(start1 + i);
+            char c2 = path2.charAt(start2 + i);
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : +1;
             }
-            return compare;
         }
+        return 0;
     }
 }
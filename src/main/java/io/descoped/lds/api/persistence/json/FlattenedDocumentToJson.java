@@ -1,22 +1,19 @@
 package io.descoped.lds.api.persistence.json;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocument;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocumentLeafNode;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
 
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 
 import static io.descoped.lds.api.persistence.json.JsonTools.mapper;
 
 public class FlattenedDocumentToJson {
 
-    static final Pattern arrayNavigationPattern = Pattern.compile("([^\\[]*)\\[([0-9]+)\\]");
-
     final FlattenedDocument document;
 
     public FlattenedDocumentToJson(FlattenedDocument document) {
@@ -24,115 +21,49 @@ public class FlattenedDocumentToJson {
     }
 
     public JsonNode toJsonNode() {
-        ObjectNode root = mapper.createObjectNode();
-        for (Map.Entry<String, FlattenedDocumentLeafNode> entry : document.leafNodesByPath().entrySet()) {
-            String path = entry.getKey();
-            FlattenedDocumentLeafNode leafNode = entry.getValue();
-            String[] pathElements = path.split("\\.");
-            ObjectNode parentOfLeaf = root;
-            for (int i = 1; i < pathElements.length - 1; i++) {
-                String pathElement = pathElements[i];
-                Matcher m = arrayNavigationPattern.matcher(pathElement);
-                if (m.matches()) {
-                    // array-navigation
-                    String arrayIdentifier = m.group(1);
-                    int arrayIndex = Integer.parseInt(m.group(2));
-                    if (!parentOfLeaf.has(arrayIdentifier)) {
-                        parentOfLeaf.putArray(arrayIdentifier);
-                    }
-                    ArrayNode array = (ArrayNode) parentOfLeaf.get(arrayIdentifier);
-                    if (arrayIndex >= array.size()) {
-                        array.insertObject(arrayIndex);
-                    }
-                    parentOfLeaf = (ObjectNode) array.get(arrayIndex);
-                } else {
-                    // map
-                    if (!parentOfLeaf.has(pathElement)) {
-                        parentOfLeaf.putObject(pathElement);
-                    }
-                    parentOfLeaf = (ObjectNode) parentOfLeaf.get(pathElement);
-                }
-            }
+        JsonNodeFactory nodeFactory = mapper.getNodeFactory();
+        JsonTreeBuilder builder = new JsonTreeBuilder(nodeFactory);
+        for (FlattenedDocumentLeafNode leafNode : document.leafNodesByPath().values()) {
+            builder.set(leafNode.flattenedPath(), leafValue(nodeFactory, leafNode));
+        }
+        return builder.root();
+    }
 
-            String leafPathElement = pathElements[pathElements.length - 1];
-            Matcher m = arrayNavigationPattern.matcher(leafPathElement);
-            if (m.matches()) {
-                // array-navigation
-                String arrayIdentifier = m.group(1);
-                int arrayIndex = Integer.parseInt(m.group(2));
-                if (!parentOfLeaf.has(arrayIdentifier)) {
-                    parentOfLeaf.putArray(arrayIdentifier);
-                }
-                ArrayNode leaf = (ArrayNode) parentOfLeaf.get(arrayIdentifier);
+    static JsonNode leafValue(JsonNodeFactory nodeFactory, FlattenedDocumentLeafNode leafNode) {
+        if (FragmentType.NUMERIC == leafNode.type()) {
+            Object value = leafNode.value();
+            return numberNode(nodeFactory, value instanceof Number ? (Number) value : NumericType.parse((String) value));
+        } else if (FragmentType.STRING == leafNode.type()) {
+            return nodeFactory.textNode((String) leafNode.value());
+        } else if (FragmentType.BOOLEAN == leafNode.type()) {
+            Object value = leafNode.value();
+            return nodeFactory.booleanNode(value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean((String) value));
+        } else if (FragmentType.EMPTY_ARRAY == leafNode.type()) {
+            return nodeFactory.arrayNode();
+        } else if (FragmentType.EMPTY_OBJECT == leafNode.type()) {
+            return nodeFactory.objectNode();
+        } else if (FragmentType.NULL == leafNode.type()) {
+            return nodeFactory.nullNode();
+        } else if (FragmentType.DELETED == leafNode.type()) {
+            return nodeFactory.nullNode();
+        } else {
+            throw new UnsupportedOperationException("Unsupported FragmentType: " + leafNode.type());
+        }
+    }
 
-                if (FragmentType.NUMERIC == leafNode.type()) {
-                    String strValue = (String) leafNode.value();
-                    // TODO Use pattern matching to find correct type rather than using exceptions
-                    // TODO to control type and flow.
-                    try {
-                        leaf.insert(arrayIndex, Integer.valueOf(strValue));
-                    } catch (NumberFormatException e) {
-                        try {
-                            leaf.insert(arrayIndex, Long.valueOf(strValue));
-                        } catch (NumberFormatException e1) {
-                            try {
-                                leaf.insert(arrayIndex, Double.valueOf(strValue));
-                            } catch (NumberFormatException e2) {
-                                throw e2;
-                            }
-                        }
-                    }
-                } else if (FragmentType.STRING == leafNode.type()) {
-                    leaf.insert(arrayIndex, (String) leafNode.value());
-                } else if (FragmentType.BOOLEAN == leafNode.type()) {
-                    leaf.insert(arrayIndex, Boolean.valueOf((String) leafNode.value()));
-                } else if (FragmentType.EMPTY_ARRAY == leafNode.type()) {
-                    leaf.insertArray(arrayIndex);
-                } else if (FragmentType.EMPTY_OBJECT == leafNode.type()) {
-                    leaf.insertObject(arrayIndex);
-                } else if (FragmentType.NULL == leafNode.type()) {
-                    leaf.insertNull(arrayIndex);
-                } else if (FragmentType.DELETED == leafNode.type()) {
-                    leaf.insertNull(arrayIndex);
-                } else {
-                    throw new UnsupportedOperationException("Unsupported FragmentType: " + leafNode.type());
-                }
-            } else {
-                // map
-                if (FragmentType.NUMERIC == leafNode.type()) {
-                    String strValue = (String) leafNode.value();
-                    // TODO Use pattern matching to find correct type rather than using exceptions
-                    // TODO to control type and flow.
-                    try {
-                        parentOfLeaf.put(leafPathElement, Integer.valueOf(strValue));
-                    } catch (NumberFormatException e) {
-                        try {
-                            parentOfLeaf.put(leafPathElement, Long.valueOf(strValue));
-                        } catch (NumberFormatException e1) {
-                            try {
-                                parentOfLeaf.put(leafPathElement, Double.valueOf(strValue));
-                            } catch (NumberFormatException e2) {
-                                throw e2;
-                            }
-                        }
-                    }
-                } else if (FragmentType.STRING == leafNode.type()) {
-                    parentOfLeaf.put(leafPathElement, (String) leafNode.value());
-                } else if (FragmentType.BOOLEAN == leafNode.type()) {
-                    parentOfLeaf.put(leafPathElement, Boolean.parseBoolean((String) leafNode.value()));
-                } else if (FragmentType.EMPTY_ARRAY == leafNode.type()) {
-                    parentOfLeaf.putArray(leafPathElement);
-                } else if (FragmentType.EMPTY_OBJECT == leafNode.type()) {
-                    parentOfLeaf.putObject(leafPathElement);
-                } else if (FragmentType.DELETED == leafNode.type()) {
-                    parentOfLeaf.putNull(leafPathElement);
-                } else if (FragmentType.NULL == leafNode.type()) {
-                    parentOfLeaf.putNull(leafPathElement);
-                } else {
-                    throw new UnsupportedOperationException("Unsupported FragmentType: " + leafNode.type());
-                }
-            }
+    static JsonNode numberNode(JsonNodeFactory nodeFactory, Number number) {
+        switch (NumericType.of(number)) {
+            case INT:
+                return nodeFactory.numberNode(number.intValue());
+            case LONG:
+                return nodeFactory.numberNode(number.longValue());
+            case DOUBLE:
+                return nodeFactory.numberNode(number.doubleValue());
+            case BIG_INTEGER:
+                return nodeFactory.numberNode((BigInteger) number);
+            case BIG_DECIMAL:
+                return nodeFactory.numberNode((BigDecimal) number);
         }
-        return root;
+        throw new IllegalStateException();
     }
 }
@@ -0,0 +1,176 @@
+package io.descoped.lds.api.persistence.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.flattened.FlattenedPath;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import static io.descoped.lds.api.persistence.json.JsonTools.mapper;
+
+/**
+ * Assembles a json document directly from its fragments in a single pass, without first collecting the fragments by
+ * path or building a {@link io.descoped.lds.api.persistence.flattened.FlattenedDocument}.
+ * <p>
+ * The fragments of a leaf-node must be accepted one after the other, ordered by offset, as they are when the fragments
+ * are ordered by {@link Fragment#compareTo(Fragment)}. Leaf-nodes and array elements may be accepted in any order.
+ */
+public class FragmentsToJson {
+
+    private final DocumentKey key;
+    private final JsonNodeFactory nodeFactory = mapper.getNodeFactory();
+    private final JsonTreeBuilder builder;
+    private boolean deleted;
+
+    // leaf-node currently being assembled
+    private String leafPath;
+    private FragmentType leafType;
+    private byte[] leafValue;
+
+    // used only when a string value spans several fragments
+    private CharsetDecoder decoder;
+    private CharBuffer out;
+    private StringBuilder text;
+    private ByteBuffer in;
+
+    public FragmentsToJson(DocumentKey key) {
+        this.key = key;
+        this.builder = new JsonTreeBuilder(nodeFactory);
+    }
+
+    public DocumentKey key() {
+        return key;
+    }
+
+    public boolean deleted() {
+        return deleted;
+    }
+
+    public void accept(Fragment fragment) {
+        if (fragment.deleteMarker()) {
+            deleted = true;
+            return;
+        }
+        if (leafPath != null && leafPath.equals(fragment.path())) {
+            if (FragmentType.STRING == leafType) {
+                // continuation of a string value
+                decode(fragment.value());
+            }
+            return;
+        }
+        completeLeaf();
+        leafPath = fragment.path();
+        leafType = fragment.fragmentType();
+        leafValue = fragment.value();
+    }
+
+    /**
+     * Completes the document. No more fragments can be accepted after this method is called.
+     *
+     * @return the assembled document.
+     */
+    public JsonNode toJsonNode() {
+        completeLeaf();
+        return builder.root();
+    }
+
+    public JsonDocument toJsonDocument() {
+        return new JsonDocument(key, toJsonNode());
+    }
+
+    private void decode(byte[] value) {
+        if (text == null) {
+            decoder = StandardCharsets.UTF_8.newDecoder();
+            out = CharBuffer.allocate(256);
+            text = new StringBuilder();
+        }
+        if (in == null) {
+            // second fragment of value, start decoding with the first fragment
+            decoder.reset();
+            out.clear();
+            text.setLength(0);
+            in = ByteBuffer.wrap(leafValue);
+            decodeAvailable();
+        }
+        in = ByteBuffer.wrap(value);
+        decodeAvailable();
+    }
+
+    private void decodeAvailable() {
+        CoderResult coderResult = decoder.decode(in, out, false);
+        throwRuntimeExceptionIfError(coderResult);
+        while (coderResult.isOverflow()) {
+            // drain out buffer
+            text.append(out.flip());
+            out.clear();
+            coderResult = decoder.decode(in, out, false);
+            throwRuntimeExceptionIfError(coderResult);
+        }
+        // underflow but possibly more fragments in leaf-node
+    }
+
+    private String decodedText() {
+        if (in == null) {
+            return new String(leafValue, StandardCharsets.UTF_8);
+        }
+        CoderResult endOfInputCoderResult = decoder.decode(in, out, true);
+        throwRuntimeExceptionIfError(endOfInputCoderResult);
+        CoderResult flushCoderResult = decoder.flush(out);
+        throwRuntimeExceptionIfError(flushCoderResult);
+        text.append(out.flip());
+        in = null;
+        return text.toString();
+    }
+
+    private void completeLeaf() {
+        if (leafPath == null) {
+            return;
+        }
+        JsonNode value = leafNode();
+        if (value != null) {
+            builder.set(FlattenedPath.of(leafPath), value);
+        }
+        leafPath = null;
+        leafType = null;
+        leafValue = null;
+    }
+
+    private JsonNode leafNode() {
+        switch (leafType) {
+            case STRING:
+                return nodeFactory.textNode(decodedText());
+            case NUMERIC:
+                return FlattenedDocumentToJson.numberNode(nodeFactory, NumericType.decode(leafValue));
+            case BOOLEAN:
+                return nodeFactory.booleanNode(leafValue[0] == (byte) 1);
+            case NULL:
+                return nodeFactory.nullNode();
+            case EMPTY_ARRAY:
+                return nodeFactory.arrayNode();
+            case EMPTY_OBJECT:
+                return nodeFactory.objectNode();
+            default:
+                throw new IllegalStateException("Unknown FragmentType: " + leafType);
+        }
+    }
+
+    private static void throwRuntimeExceptionIfError(CoderResult coderResult) {
+        if (coderResult.isError()) {
+            try {
+                coderResult.throwException();
+                throw new IllegalStateException();
+            } catch (CharacterCodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
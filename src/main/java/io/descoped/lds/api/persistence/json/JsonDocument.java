@@ -54,9 +54,16 @@ public class JsonDocument {
             visitCallback.accept(node, path.stream().collect(Collectors.joining(".")).replaceAll("\\.\\[", "["));
             return;
         }
+        if (node == null) {
+            // the document has no value at the path
+            return;
+        }
         String childName = schemaPath[index];
 
         if ("[]".equals(childName)) {
+            if (!node.isArray()) {
+                return;
+            }
             ArrayNode arrayNode = (ArrayNode) node;
             for (int i = 0; i < arrayNode.size(); i++) {
                 JsonNode child = arrayNode.get(i);
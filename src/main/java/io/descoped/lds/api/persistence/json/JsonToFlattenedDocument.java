@@ -6,15 +6,13 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.descoped.lds.api.persistence.DocumentKey;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocument;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocumentLeafNode;
+import io.descoped.lds.api.persistence.flattened.FlattenedPath;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
 
 import java.time.ZonedDateTime;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class JsonToFlattenedDocument {
 
@@ -38,9 +36,7 @@ public class JsonToFlattenedDocument {
 
     public FlattenedDocument toDocument() {
         Map<String, FlattenedDocumentLeafNode> leafNodesByPath = new LinkedHashMap<>();
-        Deque<String> parentPath = new LinkedList<>();
-        parentPath.add("$");
-        populateMapFromJson(parentPath, leafNodesByPath, root);
+        populateMapFromJson(FlattenedPath.root(), leafNodesByPath, root);
         return new FlattenedDocument(
                 new DocumentKey(
                         namespace,
@@ -53,50 +49,41 @@ public class JsonToFlattenedDocument {
         );
     }
 
-    void populateMapFromJson(Deque<String> parentPath, Map<String, FlattenedDocumentLeafNode> leafNodesByPath, JsonNode node) {
+    void populateMapFromJson(FlattenedPath path, Map<String, FlattenedDocumentLeafNode> leafNodesByPath, JsonNode node) {
         if (node == null || node.isNull()) {
-            String path = parentPath.stream().collect(Collectors.joining("."));
-            leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.NULL, null, fragmentCapacity));
+            addLeafNode(leafNodesByPath, path, FragmentType.NULL, null);
         } else if (node.isTextual()) {
-            String path = parentPath.stream().collect(Collectors.joining("."));
-            leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.STRING, node.textValue(), fragmentCapacity));
+            addLeafNode(leafNodesByPath, path, FragmentType.STRING, node.textValue());
         } else if (node.isNumber()) {
-            String path = parentPath.stream().collect(Collectors.joining("."));
-            leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.NUMERIC, node.asText(), fragmentCapacity));
+            addLeafNode(leafNodesByPath, path, FragmentType.NUMERIC, node.numberValue());
         } else if (node.isBoolean()) {
-            String path = parentPath.stream().collect(Collectors.joining("."));
-            leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.BOOLEAN, node.asText(), fragmentCapacity));
+            addLeafNode(leafNodesByPath, path, FragmentType.BOOLEAN, node.asText());
         } else if (node.isArray()) {
             ArrayNode array = (ArrayNode) node;
             if (array.size() == 0) {
-                String path = parentPath.stream().collect(Collectors.joining("."));
-                leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.EMPTY_ARRAY, null, fragmentCapacity));
+                addLeafNode(leafNodesByPath, path, FragmentType.EMPTY_ARRAY, null);
             } else {
                 for (int i = 0; i < array.size(); i++) {
-                    String originalLast = parentPath.removeLast();
-                    String last = originalLast + "[" + i + "]";
-                    parentPath.addLast(last);
-                    populateMapFromJson(parentPath, leafNodesByPath, array.get(i));
-                    parentPath.removeLast();
-                    parentPath.addLast(originalLast);
+                    populateMapFromJson(path.element(i), leafNodesByPath, array.get(i));
                 }
             }
         } else if (node.isObject()) {
             ObjectNode object = (ObjectNode) node;
             if (object.size() == 0) {
-                String path = parentPath.stream().collect(Collectors.joining("."));
-                leafNodesByPath.put(path, new FlattenedDocumentLeafNode(documentKey, path, FragmentType.EMPTY_OBJECT, null, fragmentCapacity));
+                addLeafNode(leafNodesByPath, path, FragmentType.EMPTY_OBJECT, null);
             } else {
                 Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
                 while (fields.hasNext()) {
                     Map.Entry<String, JsonNode> field = fields.next();
-                    parentPath.addLast(field.getKey());
-                    populateMapFromJson(parentPath, leafNodesByPath, field.getValue());
-                    parentPath.removeLast();
+                    populateMapFromJson(path.field(field.getKey()), leafNodesByPath, field.getValue());
                 }
             }
         } else {
-            throw new UnsupportedOperationException("Type " + node.getClass().getName() + " not supported for path " + parentPath);
+            throw new UnsupportedOperationException("Type " + node.getClass().getName() + " not supported for path " + path);
         }
     }
+
+    private void addLeafNode(Map<String, FlattenedDocumentLeafNode> leafNodesByPath, FlattenedPath path, FragmentType type, Object value) {
+        leafNodesByPath.put(path.path(), new FlattenedDocumentLeafNode(documentKey, path, type, value, fragmentCapacity));
+    }
 }
@@ -0,0 +1,287 @@
+package io.descoped.lds.api.persistence.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentDictionary;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a json document and produces its fragments lazily, one fragment per call to {@link #next()}, without building
+ * a {@link io.descoped.lds.api.persistence.flattened.FlattenedDocument} first. The fragments are the same as those of
+ * {@link JsonToFlattenedDocument}, and are produced in {@link Fragment#compareTo(Fragment)} order.
+ * <p>
+ * The path of the current node is kept in a single reusable builder, and string values are chunked one fragment at a
+ * time as they are consumed.
+ */
+public class JsonToFragments implements Iterator<Fragment> {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] TRUE = new byte[]{(byte) 1};
+    private static final byte[] FALSE = new byte[]{(byte) 0};
+
+    private final DocumentKey key;
+    private final int fragmentCapacity;
+    private final FragmentDictionary dictionary;
+
+    private final StringBuilder path = new StringBuilder("$");
+    private final List<Frame> stack = new ArrayList<>();
+
+    // string value currently being chunked
+    private String leafPath;
+    private CharsetEncoder encoder;
+    private CharBuffer in;
+    private ByteBuffer out;
+    private CoderResult coderResult;
+    private long offset;
+
+    private Fragment next;
+
+    public JsonToFragments(DocumentKey key, JsonNode root, int fragmentCapacity) {
+        this(key, root, fragmentCapacity, new FragmentDictionary());
+    }
+
+    /**
+     * @param dictionary the dictionary to share namespace, entity and path strings through, pass the same dictionary
+     *                   to the conversions of all documents of a stream.
+     */
+    public JsonToFragments(DocumentKey key, JsonNode root, int fragmentCapacity, FragmentDictionary dictionary) {
+        this.key = key;
+        this.fragmentCapacity = fragmentCapacity;
+        this.dictionary = dictionary;
+        next = visit(root);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Fragment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Fragment fragment = next;
+        next = null;
+        return fragment;
+    }
+
+    private Fragment advance() {
+        if (in != null) {
+            return nextStringFragment();
+        }
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            path.setLength(frame.pathLength);
+            if (frame.position == frame.children.length) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            JsonNode child;
+            if (frame.fieldNames != null) {
+                String fieldName = frame.fieldNames[frame.position];
+                path.append('.').append(fieldName);
+                child = frame.children[frame.position];
+            } else {
+                int index = frame.indices[frame.position];
+                path.append('[').append(index).append(']');
+                child = frame.children[frame.position];
+            }
+            frame.position++;
+            Fragment fragment = visit(child);
+            if (fragment != null) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the first fragment of the node if it is a leaf-node, or null if the node was pushed for traversal.
+     */
+    private Fragment visit(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return fragment(FragmentType.NULL, 0, EMPTY);
+        } else if (node.isTextual()) {
+            return firstStringFragment(node.textValue());
+        } else if (node.isNumber()) {
+            return fragment(FragmentType.NUMERIC, 0, NumericType.encode(NumericType.narrowed(node.numberValue())));
+        } else if (node.isBoolean()) {
+            return fragment(FragmentType.BOOLEAN, 0, node.booleanValue() ? TRUE : FALSE);
+        } else if (node.isArray()) {
+            if (node.size() == 0) {
+                return fragment(FragmentType.EMPTY_ARRAY, 0, EMPTY);
+            }
+            stack.add(arrayFrame(node));
+            return null;
+        } else if (node.isObject()) {
+            if (node.size() == 0) {
+                return fragment(FragmentType.EMPTY_OBJECT, 0, EMPTY);
+            }
+            stack.add(objectFrame(node));
+            return null;
+        }
+        throw new UnsupportedOperationException("Type " + node.getClass().getName() + " not supported for path " + path);
+    }
+
+    /**
+     * Orders fields as their paths are ordered as strings. A field's name is followed in all paths below it by the
+     * same character, '.' for objects and '[' for arrays, or by nothing for leaf-nodes, so sorting on name and that
+     * character keeps each sub-tree contiguous and in order.
+     */
+    private Frame objectFrame(JsonNode object) {
+        int size = object.size();
+        String[] sortKeys = new String[size];
+        Map.Entry<String, JsonNode>[] entries = entries(object, size);
+        for (int i = 0; i < size; i++) {
+            JsonNode child = entries[i].getValue();
+            String name = entries[i].getKey();
+            sortKeys[i] = child.isObject() && child.size() > 0 ? name + '.'
+                    : child.isArray() && child.size() > 0 ? name + '[' : name;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> sortKeys[a].compareTo(sortKeys[b]));
+        String[] fieldNames = new String[size];
+        JsonNode[] children = new JsonNode[size];
+        for (int i = 0; i < size; i++) {
+            fieldNames[i] = entries[order[i]].getKey();
+            children[i] = entries[order[i]].getValue();
+        }
+        return new Frame(path.length(), fieldNames, null, children);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, JsonNode>[] entries(JsonNode object, int size) {
+        Map.Entry<String, JsonNode>[] entries = new Map.Entry[size];
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        for (int i = 0; fields.hasNext(); i++) {
+            entries[i] = fields.next();
+        }
+        return entries;
+    }
+
+    /**
+     * Orders array elements as their paths are ordered as strings, e.g. [10] before [1] before [2], as '0' sorts
+     * before ']'.
+     */
+    private Frame arrayFrame(JsonNode array) {
+        int size = array.size();
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        if (size > 10) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> (a + "]").compareTo(b + "]"));
+            for (int i = 0; i < size; i++) {
+                indices[i] = order[i];
+            }
+        }
+        JsonNode[] children = new JsonNode[size];
+        for (int i = 0; i < size; i++) {
+            children[i] = array.get(indices[i]);
+        }
+        return new Frame(path.length(), null, indices, children);
+    }
+
+    /**
+     * Chunks the value exactly as {@link io.descoped.lds.api.persistence.flattened.FlattenedDocumentLeafNode#valueByOffset}
+     * does, but one fragment at a time.
+     */
+    private Fragment firstStringFragment(String value) {
+        if (encoder == null) {
+            encoder = StandardCharsets.UTF_8.newEncoder();
+        }
+        int capacity = Math.min(fragmentCapacity, 2 * value.length() + 256);
+        if (out == null || out.capacity() < capacity) {
+            out = ByteBuffer.allocate(capacity);
+        }
+        out.clear().limit(capacity);
+        encoder.reset();
+        in = CharBuffer.wrap(value);
+        offset = 0;
+        leafPath = dictionary.intern(path.toString());
+        coderResult = encoder.encode(in, out, false);
+        handleError(coderResult);
+        return nextStringFragment();
+    }
+
+    private Fragment nextStringFragment() {
+        if (!coderResult.isOverflow()) {
+            // underflow, all input has been consumed
+            CoderResult endOfInputCoderResult = encoder.encode(in, out, true);
+            handleError(endOfInputCoderResult);
+            CoderResult flushCoderResult = encoder.flush(out);
+            handleError(flushCoderResult);
+            in = null;
+            return new Fragment(dictionary, key.namespace(), key.entity(), key.id(), key.version(), leafPath, FragmentType.STRING, offset, drain());
+        }
+        long chunkOffset = offset;
+        offset += out.position();
+        byte[] chunk = drain();
+        coderResult = encoder.encode(in, out, false);
+        handleError(coderResult);
+        return new Fragment(dictionary, key.namespace(), key.entity(), key.id(), key.version(), leafPath, FragmentType.STRING, chunkOffset, chunk);
+    }
+
+    private byte[] drain() {
+        byte[] chunk = Arrays.copyOf(out.array(), out.position());
+        int limit = out.limit();
+        out.clear().limit(limit);
+        return chunk;
+    }
+
+    private Fragment fragment(FragmentType type, long offset, byte[] value) {
+        return new Fragment(dictionary, key.namespace(), key.entity(), key.id(), key.version(), path.toString(), type, offset, value);
+    }
+
+    private static void handleError(CoderResult coderResult) {
+        if (coderResult.isError()) {
+            try {
+                coderResult.throwException();
+                throw new IllegalStateException();
+            } catch (CharacterCodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class Frame {
+        final int pathLength;
+        final String[] fieldNames;
+        final int[] indices;
+        final JsonNode[] children;
+        int position;
+
+        Frame(int pathLength, String[] fieldNames, int[] indices, JsonNode[] children) {
+            this.pathLength = pathLength;
+            this.fieldNames = fieldNames;
+            this.indices = indices;
+            this.children = children;
+        }
+    }
+}
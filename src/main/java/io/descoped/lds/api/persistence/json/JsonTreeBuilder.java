@@ -0,0 +1,91 @@
+package io.descoped.lds.api.persistence.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.descoped.lds.api.persistence.flattened.FlattenedPath;
+
+import java.util.Arrays;
+
+/**
+ * Builds a json tree by setting leaf values at flattened paths, creating missing objects and arrays on the way. Array
+ * elements that are navigated past before they are set hold a null placeholder.
+ * <p>
+ * The containers resolved for the previous leaf are remembered, so that a leaf sharing a path prefix with the previous
+ * leaf, e.g. a sibling, continues from the deepest shared container rather than navigating from the root.
+ */
+class JsonTreeBuilder {
+
+    private final JsonNodeFactory nodeFactory;
+    private final ObjectNode root;
+
+    private FlattenedPath previousPath;
+    // containers[i] is the container reached by navigating the first i elements of the previous path
+    private JsonNode[] containers = new JsonNode[8];
+
+    JsonTreeBuilder(JsonNodeFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+        this.root = nodeFactory.objectNode();
+    }
+
+    ObjectNode root() {
+        return root;
+    }
+
+    void set(FlattenedPath path, JsonNode value) {
+        int leaf = path.size() - 1;
+        if (leaf < 0) {
+            // the root itself, which is always an object
+            return;
+        }
+        if (containers.length <= leaf) {
+            containers = Arrays.copyOf(containers, Math.max(leaf + 1, 2 * containers.length));
+        }
+        int depth = 0;
+        if (previousPath != null) {
+            // the leaf of the previous path is not a resolved container
+            depth = Math.min(path.commonPrefixLength(previousPath), Math.min(leaf, previousPath.size() - 1));
+        }
+        containers[0] = root;
+        for (int i = depth; i < leaf; i++) {
+            containers[i + 1] = child(containers[i], path, i, path.isArrayIndex(i + 1));
+        }
+        JsonNode parent = containers[leaf];
+        if (path.isArrayIndex(leaf)) {
+            ArrayNode array = (ArrayNode) parent;
+            ensureSize(array, path.index(leaf) + 1);
+            array.set(path.index(leaf), value);
+        } else {
+            ((ObjectNode) parent).set(path.name(leaf), value);
+        }
+        previousPath = path;
+    }
+
+    private JsonNode child(JsonNode container, FlattenedPath path, int element, boolean array) {
+        if (!path.isArrayIndex(element)) {
+            ObjectNode object = (ObjectNode) container;
+            String field = path.name(element);
+            JsonNode child = object.get(field);
+            if (child == null) {
+                child = array ? object.putArray(field) : object.putObject(field);
+            }
+            return child;
+        }
+        ArrayNode arrayNode = (ArrayNode) container;
+        int index = path.index(element);
+        ensureSize(arrayNode, index + 1);
+        JsonNode child = arrayNode.get(index);
+        if (child.isNull()) {
+            child = array ? nodeFactory.arrayNode() : nodeFactory.objectNode();
+            arrayNode.set(index, child);
+        }
+        return child;
+    }
+
+    private static void ensureSize(ArrayNode array, int size) {
+        while (array.size() < size) {
+            array.addNull();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.Transaction;
+import io.descoped.lds.api.persistence.TransactionStatistics;
+import io.descoped.lds.api.persistence.streaming.EpochMicros;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transaction handed out by a bridge with a {@link SnapshotDocumentCache}. Remembers the documents written within the
+ * transaction and invalidates them again once the transaction has committed, so that reads of the previous version
+ * made while the transaction was in progress do not stay cached. The provider is only ever given the transaction
+ * this wraps.
+ */
+class CacheInvalidatingTransaction implements Transaction {
+
+    final Transaction delegate;
+    final SnapshotDocumentCache documentCache;
+    final Set<DocumentKey> writtenDocuments = new LinkedHashSet<>();
+    final Set<DocumentKey> writtenEntities = new LinkedHashSet<>();
+
+    CacheInvalidatingTransaction(Transaction delegate, SnapshotDocumentCache documentCache) {
+        this.delegate = delegate;
+        this.documentCache = documentCache;
+    }
+
+    static Transaction unwrap(Transaction tx) {
+        return tx instanceof CacheInvalidatingTransaction ? ((CacheInvalidatingTransaction) tx).delegate : tx;
+    }
+
+    synchronized void written(String namespace, String entity, String id) {
+        writtenDocuments.add(new DocumentKey(namespace, entity, id, EpochMicros.NONE));
+    }
+
+    synchronized void written(String namespace, String entity) {
+        writtenEntities.add(new DocumentKey(namespace, entity, null, EpochMicros.NONE));
+    }
+
+    /**
+     * @return whether anything was written in this transaction, its reads may then see its own uncommitted writes.
+     */
+    synchronized boolean hasWritten() {
+        return !writtenDocuments.isEmpty() || !writtenEntities.isEmpty();
+    }
+
+    synchronized void invalidateWritten() {
+        for (DocumentKey key : writtenDocuments) {
+            documentCache.invalidate(key.namespace(), key.entity(), key.id());
+        }
+        for (DocumentKey key : writtenEntities) {
+            documentCache.invalidate(key.namespace(), key.entity());
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransactionStatistics> commit() {
+        return delegate.commit().whenComplete((statistics, throwable) -> invalidateWritten());
+    }
+
+    @Override
+    public CompletableFuture<TransactionStatistics> cancel() {
+        return delegate.cancel();
+    }
+}
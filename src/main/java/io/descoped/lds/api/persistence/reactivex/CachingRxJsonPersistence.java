@@ -0,0 +1,351 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.PersistenceDeletePolicy;
+import io.descoped.lds.api.persistence.PersistenceException;
+import io.descoped.lds.api.persistence.Transaction;
+import io.descoped.lds.api.persistence.TransactionStatistics;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.specification.Specification;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Caches the documents read with {@link #readDocument(Transaction, ZonedDateTime, String, String, String)}, and the
+ * documents read through links with {@link #readTargetDocuments}, keyed by namespace, entity, id and snapshot. A
+ * document read at a given snapshot does not change, so entries can be shared by all readers within the scope of the
+ * cache. Concurrent reads of the same key share a single read of the delegate. Jackson trees are mutable though, so
+ * every reader is given its own copy of the cached document, which it may change without affecting other readers.
+ * <p>
+ * With {@link Scope#REQUEST} a single cache is shared by all reads through this instance, and an instance should be
+ * created for each request. With {@link Scope#TRANSACTION} each transaction created with {@link #createTransaction}
+ * has its own cache, which is dropped when the transaction commits or is cancelled. Reads in other transactions, and
+ * reads without a transaction, are not cached in this scope.
+ * <p>
+ * Writes through this instance invalidate the cached versions of the documents written to. All other operations are
+ * passed straight to the delegate.
+ */
+public class CachingRxJsonPersistence implements RxJsonPersistence {
+
+    public enum Scope {
+        TRANSACTION,
+        REQUEST
+    }
+
+    /**
+     * Maximum number of link targets read concurrently by {@link #readTargetDocuments}.
+     */
+    static final int READ_TARGET_CONCURRENCY = 16;
+
+    final RxJsonPersistence delegate;
+    final Scope scope;
+    final int maximumSize;
+
+    final DocumentCache requestCache;
+
+    final AtomicLong hitCount = new AtomicLong();
+    final AtomicLong missCount = new AtomicLong();
+    final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param delegate    the persistence to read from.
+     * @param scope       whether entries are shared by all reads, or only by the reads within the same transaction.
+     * @param maximumSize the maximum number of documents kept by each cache, the least recently used are evicted first.
+     */
+    public CachingRxJsonPersistence(RxJsonPersistence delegate, Scope scope, int maximumSize) {
+        this.delegate = delegate;
+        this.scope = scope;
+        this.maximumSize = maximumSize;
+        this.requestCache = scope == Scope.REQUEST ? new DocumentCache() : null;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the cache of the scope of the transaction, or null if reads in the transaction are not cached.
+     */
+    DocumentCache cache(Transaction tx) {
+        if (scope == Scope.REQUEST) {
+            return requestCache;
+        }
+        return tx instanceof CachingTransaction ? ((CachingTransaction) tx).cache : null;
+    }
+
+    /**
+     * @return the transaction of the delegate.
+     */
+    static Transaction unwrap(Transaction tx) {
+        return tx instanceof CachingTransaction ? ((CachingTransaction) tx).delegate : tx;
+    }
+
+    @Override
+    public Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        return Maybe.defer(() -> {
+            DocumentCache cache = cache(tx);
+            if (cache == null) {
+                return delegate.readDocument(unwrap(tx), snapshot, ns, entityName, id);
+            }
+            return cache.get(new CacheKey(ns, entityName, id, snapshot.toInstant()),
+                    () -> delegate.readDocument(unwrap(tx), snapshot, ns, entityName, id));
+        });
+    }
+
+    @Override
+    public Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id,
+                                            Collection<JsonNavigationPath> paths) {
+        return delegate.readDocument(unwrap(tx), snapshot, ns, entityName, id, paths);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String entityName,
+                                                Range<String> range) {
+        return delegate.readDocuments(unwrap(tx), snapshot, ns, entityName, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readDocumentVersions(Transaction tx, String ns, String entityName, String id,
+                                                       Range<ZonedDateTime> range) {
+        return delegate.readDocumentVersions(unwrap(tx), ns, entityName, id, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> readTargetDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String entityName,
+                                                      String id, JsonNavigationPath jsonNavigationPath,
+                                                      String targetEntityName, Range<String> range) {
+        return RxJsonPersistenceBridge.targetIds(readDocument(tx, snapshot, ns, entityName, id), jsonNavigationPath,
+                targetEntityName, range)
+                .concatMapEager(targetId -> readDocument(tx, snapshot, ns, targetEntityName, targetId).toFlowable(),
+                        READ_TARGET_CONCURRENCY, Flowable.bufferSize());
+    }
+
+    @Override
+    public Flowable<JsonDocument> readSourceDocuments(Transaction tx, ZonedDateTime snapshot, String ns,
+                                                      String targetEntityName, String targetId,
+                                                      JsonNavigationPath relationPath, String sourceEntityName,
+                                                      Range<String> range) {
+        return delegate.readSourceDocuments(unwrap(tx), snapshot, ns, targetEntityName, targetId, relationPath, sourceEntityName,
+                range);
+    }
+
+    @Override
+    public Completable createOrOverwrite(Transaction tx, Flowable<JsonDocument> documentFlowable, Specification specification) {
+        // invalidate before writing, so that the delegate writes no document that is still cached, and again once the
+        // write has completed, so that reads of the previous version made while writing do not stay cached
+        List<DocumentKey> written = Collections.synchronizedList(new ArrayList<>());
+        Flowable<JsonDocument> invalidatingDocuments = documentFlowable.doOnNext(document -> {
+            DocumentKey key = document.key();
+            written.add(key);
+            invalidate(tx, key.namespace(), key.entity(), key.id());
+        });
+        return delegate.createOrOverwrite(unwrap(tx), invalidatingDocuments, specification).doOnComplete(() -> {
+            synchronized (written) {
+                written.forEach(key -> invalidate(tx, key.namespace(), key.entity(), key.id()));
+            }
+        });
+    }
+
+    @Override
+    public Completable deleteDocument(Transaction tx, String ns, String entityName, String id, ZonedDateTime version,
+                                      PersistenceDeletePolicy policy) {
+        return delegate.deleteDocument(unwrap(tx), ns, entityName, id, version, policy)
+                .doOnComplete(() -> invalidate(tx, ns, entityName, id));
+    }
+
+    @Override
+    public Completable deleteAllDocumentVersions(Transaction tx, String ns, String entity, String id,
+                                                 PersistenceDeletePolicy policy) {
+        return delegate.deleteAllDocumentVersions(unwrap(tx), ns, entity, id, policy)
+                .doOnComplete(() -> invalidate(tx, ns, entity, id));
+    }
+
+    @Override
+    public Completable deleteAllEntities(Transaction tx, String namespace, String entity, Specification specification) {
+        return delegate.deleteAllEntities(unwrap(tx), namespace, entity, specification)
+                .doOnComplete(() -> invalidate(tx, key -> namespace.equals(key.namespace) && entity.equals(key.entity)));
+    }
+
+    @Override
+    public Completable markDocumentDeleted(Transaction transaction, String ns, String entityName, String id,
+                                           ZonedDateTime version, PersistenceDeletePolicy policy) {
+        return delegate.markDocumentDeleted(unwrap(transaction), ns, entityName, id, version, policy)
+                .doOnComplete(() -> invalidate(transaction, ns, entityName, id));
+    }
+
+    @Override
+    public Single<Boolean> hasPrevious(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        return delegate.hasPrevious(unwrap(tx), snapshot, ns, entityName, id);
+    }
+
+    @Override
+    public Single<Boolean> hasNext(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
+        return delegate.hasNext(unwrap(tx), snapshot, ns, entityName, id);
+    }
+
+    @Override
+    public Transaction createTransaction(boolean readOnly) throws PersistenceException {
+        Transaction tx = delegate.createTransaction(readOnly);
+        return scope == Scope.TRANSACTION ? new CachingTransaction(tx) : tx;
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               JsonNavigationPath path, String value, Range<String> range) {
+        return delegate.findDocument(unwrap(tx), snapshot, namespace, entityName, path, value, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               JsonNavigationPath path, FragmentType type, Object value, Range<String> range) {
+        return delegate.findDocument(unwrap(tx), snapshot, namespace, entityName, path, type, value, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               JsonNavigationPath path, ValueRange valueRange, Range<String> range) {
+        return delegate.findDocument(unwrap(tx), snapshot, namespace, entityName, path, valueRange, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               List<FindPredicate> predicates, Range<String> range) {
+        return delegate.findDocument(unwrap(tx), snapshot, namespace, entityName, predicates, range);
+    }
+
+    @Override
+    public void close() throws PersistenceException {
+        delegate.close();
+    }
+
+    void invalidate(Transaction tx, String namespace, String entity, String id) {
+        invalidate(tx, key -> namespace.equals(key.namespace) && entity.equals(key.entity) && id.equals(key.id));
+    }
+
+    void invalidate(Transaction tx, Predicate<CacheKey> predicate) {
+        DocumentCache cache = cache(tx);
+        if (cache != null) {
+            cache.invalidate(predicate);
+        }
+    }
+
+    /**
+     * Transaction of the {@link Scope#TRANSACTION} scope, which holds the cache of the reads made in it until it
+     * commits or is cancelled. The delegate is only ever given the transaction this wraps.
+     */
+    class CachingTransaction implements Transaction {
+        final Transaction delegate;
+        volatile DocumentCache cache = new DocumentCache();
+
+        CachingTransaction(Transaction delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<TransactionStatistics> commit() {
+            return delegate.commit().whenComplete((statistics, throwable) -> cache = null);
+        }
+
+        @Override
+        public CompletableFuture<TransactionStatistics> cancel() {
+            return delegate.cancel().whenComplete((statistics, throwable) -> cache = null);
+        }
+    }
+
+    /**
+     * Least recently used cache of reads. A read that fails is removed so that it is retried by the next reader. Each
+     * subscriber to a cached read is given a copy of the document read.
+     */
+    class DocumentCache {
+        final LinkedHashMap<CacheKey, Maybe<JsonDocument>> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Maybe<JsonDocument>> eldest) {
+                if (size() > maximumSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized Maybe<JsonDocument> get(CacheKey key, Supplier<Maybe<JsonDocument>> loader) {
+            Maybe<JsonDocument> cached = entries.get(key);
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return cached.map(SnapshotDocumentCache::copy);
+            }
+            missCount.incrementAndGet();
+            Object[] self = new Object[1];
+            Maybe<JsonDocument> read = loader.get()
+                    .doOnError(e -> remove(key, self[0]))
+                    .cache();
+            self[0] = read;
+            entries.put(key, read);
+            return read.map(SnapshotDocumentCache::copy);
+        }
+
+        synchronized void remove(CacheKey key, Object value) {
+            entries.remove(key, value);
+        }
+
+        synchronized void invalidate(Predicate<CacheKey> predicate) {
+            entries.keySet().removeIf(predicate);
+        }
+    }
+
+    static class CacheKey {
+        final String namespace;
+        final String entity;
+        final String id;
+        final Instant snapshot;
+
+        CacheKey(String namespace, String entity, String id, Instant snapshot) {
+            this.namespace = namespace;
+            this.entity = entity;
+            this.id = id;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey that = (CacheKey) o;
+            return Objects.equals(namespace, that.namespace) &&
+                    Objects.equals(entity, that.entity) &&
+                    Objects.equals(id, that.id) &&
+                    Objects.equals(snapshot, that.snapshot);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespace, entity, id, snapshot);
+        }
+    }
+}
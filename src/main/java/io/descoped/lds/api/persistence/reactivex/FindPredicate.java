@@ -0,0 +1,54 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+
+import java.util.StringJoiner;
+
+/**
+ * Matches documents with a leaf-node at a path of a given type and value, one of the terms of a conjunction given to
+ * {@link RxJsonPersistence#findDocument(io.descoped.lds.api.persistence.Transaction, java.time.ZonedDateTime, String,
+ * String, java.util.List, Range)}. The type and value are as described for the typed findDocument.
+ */
+public class FindPredicate {
+
+    private final JsonNavigationPath path;
+    private final FragmentType type;
+    private final Object value;
+
+    private FindPredicate(JsonNavigationPath path, FragmentType type, Object value) {
+        this.path = path;
+        this.type = type;
+        this.value = value;
+    }
+
+    public static FindPredicate of(JsonNavigationPath path, FragmentType type, Object value) {
+        RxJsonPersistenceBridge.findValue(type, value); // validates the type and value
+        return new FindPredicate(path, type, value);
+    }
+
+    public static FindPredicate of(JsonNavigationPath path, String value) {
+        return of(path, FragmentType.STRING, value);
+    }
+
+    public JsonNavigationPath path() {
+        return path;
+    }
+
+    public FragmentType type() {
+        return type;
+    }
+
+    public Object value() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FindPredicate.class.getSimpleName() + "[", "]")
+                .add("path=" + path.serialize())
+                .add("type=" + type)
+                .add("value=" + value)
+                .toString();
+    }
+}
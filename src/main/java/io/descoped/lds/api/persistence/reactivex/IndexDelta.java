@@ -0,0 +1,100 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A change to the value index of a provider that declares {@link RxPersistenceCapability#INDEX_DELTAS}: a leaf value
+ * at an indexed path that a document has from the version of the key on, or that it no longer has from that version
+ * on. Computed by {@link IndexRegistry#delta} from the previous and the written version of a document.
+ */
+public class IndexDelta {
+
+    private final DocumentKey key;
+    private final String path;
+    private final FragmentType type;
+    private final byte[] value;
+    private final boolean added;
+
+    private IndexDelta(DocumentKey key, String path, FragmentType type, byte[] value, boolean added) {
+        this.key = key;
+        this.path = path;
+        this.type = type;
+        this.value = value;
+        this.added = added;
+    }
+
+    public static IndexDelta added(DocumentKey key, String path, FragmentType type, byte[] value) {
+        return new IndexDelta(key, path, type, value, true);
+    }
+
+    public static IndexDelta removed(DocumentKey key, String path, FragmentType type, byte[] value) {
+        return new IndexDelta(key, path, type, value, false);
+    }
+
+    /**
+     * @return the key of the written version of the document.
+     */
+    public DocumentKey key() {
+        return key;
+    }
+
+    /**
+     * @return the index-unaware path, as given to {@link RxPersistence#find}.
+     */
+    public String path() {
+        return path;
+    }
+
+    public FragmentType type() {
+        return type;
+    }
+
+    /**
+     * @return the whole value as it is stored in fragments of the type, as given to {@link RxPersistence#findExact}.
+     */
+    public byte[] value() {
+        return value;
+    }
+
+    /**
+     * @return true if the value was added, false if it was removed.
+     */
+    public boolean added() {
+        return added;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IndexDelta that = (IndexDelta) o;
+        return added == that.added &&
+                key.equals(that.key) &&
+                path.equals(that.path) &&
+                type == that.type &&
+                Arrays.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(key, path, type, added);
+        result = 31 * result + Arrays.hashCode(value);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", IndexDelta.class.getSimpleName() + "[", "]")
+                .add((added ? "added " : "removed ") + key)
+                .add("path=" + path)
+                .add("type=" + type)
+                .add("value=" + (type == FragmentType.STRING ? new String(value, StandardCharsets.UTF_8) : Arrays.toString(value)))
+                .toString();
+    }
+}
@@ -0,0 +1,279 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.specification.Specification;
+import io.descoped.lds.api.specification.SpecificationElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Declares which leaf-nodes of which entities are indexed, and as which types, for providers that declare
+ * {@link RxPersistenceCapability#INDEX_DELTAS}. The bridge computes the index delta of every written document from
+ * the registry, and scans documents instead of calling find for paths that are not indexed.
+ */
+public class IndexRegistry {
+
+    static final Set<FragmentType> INDEXABLE_TYPES = Collections.unmodifiableSet(
+            EnumSet.of(FragmentType.STRING, FragmentType.NUMERIC, FragmentType.BOOLEAN, FragmentType.NULL));
+
+    private static final IndexRegistry ALL = new IndexRegistry(null);
+
+    // null when all leaf-nodes are indexed
+    private final Map<String, Map<String, IndexedPath>> pathsByEntity;
+
+    private IndexRegistry(Map<String, Map<String, IndexedPath>> pathsByEntity) {
+        this.pathsByEntity = pathsByEntity;
+    }
+
+    /**
+     * @return a registry that indexes every leaf-node of every entity with any indexable type.
+     */
+    public static IndexRegistry all() {
+        return ALL;
+    }
+
+    public static IndexRegistry of(Collection<IndexedPath> indexedPaths) {
+        Map<String, Map<String, IndexedPath>> pathsByEntity = new LinkedHashMap<>();
+        for (IndexedPath indexedPath : indexedPaths) {
+            Map<String, IndexedPath> paths = pathsByEntity.computeIfAbsent(indexedPath.entity(), entity -> new LinkedHashMap<>());
+            if (paths.putIfAbsent(indexedPath.serializedPath(), indexedPath) != null) {
+                throw new IllegalArgumentException("Path is indexed more than once: " + indexedPath);
+            }
+        }
+        return new IndexRegistry(pathsByEntity);
+    }
+
+    /**
+     * Indexes the leaf-nodes of all managed domains of the specification, as the types of their json types that are
+     * indexable: string, number or integer, boolean and null. Leaf-nodes of other types are not indexed.
+     */
+    public static IndexRegistry from(Specification specification) {
+        List<IndexedPath> indexedPaths = new ArrayList<>();
+        for (String entity : specification.getManagedDomains()) {
+            SpecificationElement entityElement = JsonNavigationPath.from("$").toSpecificationElement(specification, entity);
+            addLeafNodes(entity, entityElement, indexedPaths);
+        }
+        return of(indexedPaths);
+    }
+
+    /**
+     * Visits properties and array items depth first, unlike
+     * {@link io.descoped.lds.api.specification.SpecificationTraversal} which does not descend into array items.
+     */
+    private static void addLeafNodes(String entity, SpecificationElement element, List<IndexedPath> indexedPaths) {
+        if (element.getItems() != null) {
+            addLeafNodes(entity, element.getItems(), indexedPaths);
+            return;
+        }
+        if (element.getProperties() != null && !element.getProperties().isEmpty()) {
+            for (SpecificationElement child : element.getProperties().values()) {
+                addLeafNodes(entity, child, indexedPaths);
+            }
+            return;
+        }
+        Set<FragmentType> types = EnumSet.noneOf(FragmentType.class);
+        for (String jsonType : element.getJsonTypes()) {
+            switch (jsonType) {
+                case "string":
+                    types.add(FragmentType.STRING);
+                    break;
+                case "number":
+                case "integer":
+                    types.add(FragmentType.NUMERIC);
+                    break;
+                case "boolean":
+                    types.add(FragmentType.BOOLEAN);
+                    break;
+                case "null":
+                    types.add(FragmentType.NULL);
+                    break;
+            }
+        }
+        if (!types.isEmpty()) {
+            indexedPaths.add(new IndexedPath(entity, JsonNavigationPath.from(element), types));
+        }
+    }
+
+    /**
+     * @return whether every leaf-node of every entity is indexed.
+     */
+    public boolean indexesAll() {
+        return pathsByEntity == null;
+    }
+
+    /**
+     * @return the indexed paths of the entity, empty if {@link #indexesAll()}.
+     */
+    public Collection<IndexedPath> indexedPaths(String entity) {
+        if (pathsByEntity == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(pathsByEntity.getOrDefault(entity, Collections.emptyMap()).values());
+    }
+
+    /**
+     * @return whether values of the type at the index-unaware path of the entity are indexed.
+     */
+    public boolean isIndexed(String entity, JsonNavigationPath path, FragmentType type) {
+        if (pathsByEntity == null) {
+            return INDEXABLE_TYPES.contains(type);
+        }
+        IndexedPath indexedPath = pathsByEntity.getOrDefault(entity, Collections.emptyMap()).get(path.serialize());
+        return indexedPath != null && indexedPath.types().contains(type);
+    }
+
+    /**
+     * @return whether any leaf-node of the entity is indexed.
+     */
+    public boolean hasIndexedPaths(String entity) {
+        return pathsByEntity == null || pathsByEntity.containsKey(entity);
+    }
+
+    /**
+     * Computes the changes to the index when a document is written: the indexed values the previous version has and
+     * the written version does not are removed, and those the written version has and the previous does not are added.
+     * Values both versions have are left as they are.
+     *
+     * @param previous the latest version before the written version, or null if there is none or it is deleted.
+     * @param written  the written version.
+     * @return the removed values followed by the added values, all with the key of the written version.
+     */
+    public List<IndexDelta> delta(JsonDocument previous, JsonDocument written) {
+        DocumentKey key = written.key();
+        Set<IndexValue> previousValues = previous == null ? Collections.emptySet() : values(previous);
+        Set<IndexValue> writtenValues = values(written);
+        List<IndexDelta> delta = new ArrayList<>();
+        for (IndexValue value : previousValues) {
+            if (!writtenValues.contains(value)) {
+                delta.add(IndexDelta.removed(key, value.path, value.type, value.value));
+            }
+        }
+        for (IndexValue value : writtenValues) {
+            if (!previousValues.contains(value)) {
+                delta.add(IndexDelta.added(key, value.path, value.type, value.value));
+            }
+        }
+        return delta;
+    }
+
+    private Set<IndexValue> values(JsonDocument document) {
+        Set<IndexValue> values = new LinkedHashSet<>();
+        if (document.deleted()) {
+            return values;
+        }
+        if (pathsByEntity == null) {
+            forEachLeafNode("$", document.jackson(), (path, node) -> {
+                FragmentType type = typeOf(node);
+                if (type != null) {
+                    values.add(new IndexValue(path, type, valueOf(type, node)));
+                }
+            });
+            return values;
+        }
+        for (IndexedPath indexedPath : indexedPaths(document.key().entity())) {
+            document.traverseField(indexedPath.path(), (node, path) -> {
+                FragmentType type = typeOf(node);
+                if (type != null && indexedPath.types().contains(type)) {
+                    values.add(new IndexValue(indexedPath.serializedPath(), type, valueOf(type, node)));
+                }
+            });
+        }
+        return values;
+    }
+
+    /**
+     * Visits the leaf-nodes below the node depth first, with their index-unaware paths.
+     */
+    static void forEachLeafNode(String path, JsonNode node, BiConsumer<String, JsonNode> visit) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                forEachLeafNode(path + "." + field.getKey(), field.getValue(), visit);
+            }
+            return;
+        }
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                forEachLeafNode(path + "[]", item, visit);
+            }
+            return;
+        }
+        visit.accept(path, node);
+    }
+
+    /**
+     * @return the indexable type of the json value, or null if it is missing or not indexable.
+     */
+    static FragmentType typeOf(JsonNode node) {
+        if (node == null) {
+            return null;
+        } else if (node.isTextual()) {
+            return FragmentType.STRING;
+        } else if (node.isNumber()) {
+            return FragmentType.NUMERIC;
+        } else if (node.isBoolean()) {
+            return FragmentType.BOOLEAN;
+        } else if (node.isNull()) {
+            return FragmentType.NULL;
+        }
+        return null;
+    }
+
+    /**
+     * @return the value encoded the same way as the values of find queries.
+     */
+    static byte[] valueOf(FragmentType type, JsonNode node) {
+        switch (type) {
+            case STRING:
+                return RxJsonPersistenceBridge.findValue(type, node.textValue());
+            case NUMERIC:
+                return RxJsonPersistenceBridge.findValue(type, node.numberValue());
+            case BOOLEAN:
+                return RxJsonPersistenceBridge.findValue(type, node.booleanValue());
+            default:
+                return RxJsonPersistenceBridge.findValue(type, null);
+        }
+    }
+
+    private static final class IndexValue {
+        final String path;
+        final FragmentType type;
+        final byte[] value;
+
+        IndexValue(String path, FragmentType type, byte[] value) {
+            this.path = path;
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            IndexValue that = (IndexValue) o;
+            return path.equals(that.path) && type == that.type && Arrays.equals(value, that.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(path, type) + Arrays.hashCode(value);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * An index-unaware path of the leaf-nodes of an entity that are indexed, and the types of leaf values that are indexed
+ * at it, see {@link IndexRegistry}.
+ */
+public class IndexedPath {
+
+    private final String entity;
+    private final JsonNavigationPath path;
+    private final String serializedPath;
+    private final Set<FragmentType> types;
+
+    public IndexedPath(String entity, JsonNavigationPath path, Set<FragmentType> types) {
+        this.entity = Objects.requireNonNull(entity);
+        this.path = Objects.requireNonNull(path);
+        this.serializedPath = path.serialize();
+        this.types = Collections.unmodifiableSet(EnumSet.copyOf(types));
+        for (FragmentType type : this.types) {
+            if (!IndexRegistry.INDEXABLE_TYPES.contains(type)) {
+                throw new IllegalArgumentException("Values of type " + type + " cannot be indexed");
+            }
+        }
+    }
+
+    public String entity() {
+        return entity;
+    }
+
+    public JsonNavigationPath path() {
+        return path;
+    }
+
+    /**
+     * @return the path as given to {@link RxPersistence#find}.
+     */
+    public String serializedPath() {
+        return serializedPath;
+    }
+
+    /**
+     * @return STRING, NUMERIC, BOOLEAN and/or NULL.
+     */
+    public Set<FragmentType> types() {
+        return types;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IndexedPath that = (IndexedPath) o;
+        return entity.equals(that.entity) &&
+                serializedPath.equals(that.serializedPath) &&
+                types.equals(that.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(entity, serializedPath, types);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", IndexedPath.class.getSimpleName() + "[", "]")
+                .add("entity=" + entity)
+                .add("path=" + serializedPath)
+                .add("types=" + types)
+                .toString();
+    }
+}
@@ -0,0 +1,95 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * A change to the reverse-link index of a provider that declares {@link RxPersistenceCapability#LINK_INDEX}: a link
+ * <code>/targetEntity/targetId</code> at a path of a source document that the document has from the version of the
+ * key on, or that it no longer has from that version on. The index is keyed by target entity and id, so that the
+ * documents linking to a document can be looked up without a find per path.
+ */
+public class LinkDelta {
+
+    private final DocumentKey key;
+    private final String path;
+    private final String targetEntity;
+    private final String targetId;
+    private final boolean added;
+
+    private LinkDelta(DocumentKey key, String path, String targetEntity, String targetId, boolean added) {
+        this.key = key;
+        this.path = path;
+        this.targetEntity = targetEntity;
+        this.targetId = targetId;
+        this.added = added;
+    }
+
+    public static LinkDelta added(DocumentKey key, String path, String targetEntity, String targetId) {
+        return new LinkDelta(key, path, targetEntity, targetId, true);
+    }
+
+    public static LinkDelta removed(DocumentKey key, String path, String targetEntity, String targetId) {
+        return new LinkDelta(key, path, targetEntity, targetId, false);
+    }
+
+    /**
+     * @return the key of the written version of the source document.
+     */
+    public DocumentKey key() {
+        return key;
+    }
+
+    /**
+     * @return the index-unaware path of the link in the source document.
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return the entity of the linked document, in the namespace of the source document.
+     */
+    public String targetEntity() {
+        return targetEntity;
+    }
+
+    public String targetId() {
+        return targetId;
+    }
+
+    /**
+     * @return true if the link was added, false if it was removed.
+     */
+    public boolean added() {
+        return added;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LinkDelta that = (LinkDelta) o;
+        return added == that.added &&
+                key.equals(that.key) &&
+                path.equals(that.path) &&
+                targetEntity.equals(that.targetEntity) &&
+                targetId.equals(that.targetId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, path, targetEntity, targetId, added);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", LinkDelta.class.getSimpleName() + "[", "]")
+                .add((added ? "added " : "removed ") + key)
+                .add("path=" + path)
+                .add("target=/" + targetEntity + "/" + targetId)
+                .toString();
+    }
+}
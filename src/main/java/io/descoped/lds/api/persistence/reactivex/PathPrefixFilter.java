@@ -0,0 +1,56 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Matches the fragments at or below any of a set of navigation paths, ignoring array indices, e.g. the path
+ * <code>$.refs[]</code> matches the fragments of <code>$.refs[0]</code> and <code>$.refs[1].name</code>, but not those of
+ * <code>$.refsOld</code>. Delete markers always match, so that a projection of a deleted document is still seen as
+ * deleted.
+ */
+public class PathPrefixFilter implements Predicate<Fragment> {
+
+    final List<String> prefixes = new ArrayList<>();
+
+    public PathPrefixFilter(Collection<JsonNavigationPath> paths) {
+        for (JsonNavigationPath path : paths) {
+            prefixes.add(Fragment.computeIndexUnawarePath(path.serialize(), new ArrayList<>()));
+        }
+    }
+
+    /**
+     * The part of each path before its first array, a provider that keeps fragments ordered by path can serve a
+     * projection by scanning the paths starting with these and applying this filter to the result.
+     *
+     * @return the literal prefixes of the paths.
+     */
+    public List<String> scanPrefixes() {
+        List<String> scanPrefixes = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            int firstArray = prefix.indexOf("[]");
+            scanPrefixes.add(firstArray == -1 ? prefix : prefix.substring(0, firstArray));
+        }
+        return scanPrefixes;
+    }
+
+    @Override
+    public boolean test(Fragment fragment) {
+        if (fragment.isStreamingControl() || fragment.deleteMarker()) {
+            return true;
+        }
+        String path = Fragment.computeIndexUnawarePath(fragment.path(), new ArrayList<>());
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix) && (path.length() == prefix.length()
+                    || path.charAt(prefix.length()) == '.' || path.charAt(prefix.length()) == '[')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,13 +1,22 @@
 package io.descoped.lds.api.persistence.reactivex;
 
 import io.reactivex.Flowable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.internal.queue.SpscArrayQueue;
+import io.reactivex.internal.queue.SpscLinkedArrayQueue;
+import io.reactivex.internal.subscriptions.EmptySubscription;
+import io.reactivex.internal.subscriptions.SubscriptionHelper;
+import io.reactivex.internal.util.BackpressureHelper;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
@@ -21,6 +30,10 @@ public class RxGroupByTools {
      * The returned stream honors downstream back-pressure at the group-level, and will buffer all items in each group
      * until they are subscribed to and consumed. This allows more control over memory-usage than the built-in group-by
      * operations currently supported by RxJava.
+     * <p>
+     * Items are routed to groups on the thread that signals them or that requests more groups or items, no threads are
+     * created and nothing blocks. Each group can only be subscribed to once. Upstream errors are signalled to the
+     * current group and to the downstream, and cancelling the downstream signals an error to the current group.
      *
      * @param upstream         the upstream as a flow of upstream-items.
      * @param groupKeyFunction the function that will be applied to an upstream item to determine which group it
@@ -34,114 +47,365 @@ public class RxGroupByTools {
      * @return a flow of groups where each group is a separate subflow of upstream items.
      */
     public static <T, K> Flowable<MyGroupedFlowable<T, K>> groupByOrdered(final Flowable<? extends T> upstream, final Function<? super T, ? extends K> groupKeyFunction) {
-        final GroupedItemWrapper<T> groupCompleteItem = new GroupedItemWrapper<>((T) null);
-        final GroupedItemWrapper<T> cancelledItem = new GroupedItemWrapper<>((T) null);
+        return new FlowableGroupByOrdered<>(upstream, groupKeyFunction, Flowable.bufferSize());
+    }
 
-        final AtomicReference<K> groupKeyRef = new AtomicReference<>();
-        final Map<K, BlockingQueue<GroupedItemWrapper<T>>> itemsByGroup = new LinkedHashMap<>();
+    public static class MyGroupedFlowable<T, K> {
+        private final K groupKey;
+        private final Flowable<T> flowable;
 
-        return upstream.filter(item -> {
-            // Group by object determined by groupKeyFunction
-            K groupKey = groupKeyFunction.apply(item);
+        private MyGroupedFlowable(K groupKey, Flowable<T> flowable) {
+            this.groupKey = groupKey;
+            this.flowable = flowable;
+        }
 
-            if (groupKeyRef.get() == null) {
-                // very first upstream item, add item to new group
-                groupKeyRef.set(groupKey);
-                itemsByGroup.computeIfAbsent(groupKey, k -> new LinkedBlockingQueue<>()).add(new GroupedItemWrapper<>(item));
-                return true;
-            }
-            if (groupKey.equals(groupKeyRef.get())) {
-                // group already exists, add item to existing group
-                itemsByGroup.computeIfAbsent(groupKey, k -> new LinkedBlockingQueue<>()).add(new GroupedItemWrapper<>(item));
-                return false;
-            }
+        public K key() {
+            return groupKey;
+        }
+
+        public Flowable<T> flowable() {
+            return flowable;
+        }
+    }
+
+    /**
+     * Queue-drain implementation of {@link #groupByOrdered(Flowable, Function)}. All work happens on the threads that
+     * deliver upstream signals or downstream requests, nothing blocks and no threads are created.
+     */
+    static final class FlowableGroupByOrdered<T, K> extends Flowable<MyGroupedFlowable<T, K>> {
+        final Flowable<? extends T> upstream;
+        final Function<? super T, ? extends K> groupKeyFunction;
+        final int prefetch;
+
+        FlowableGroupByOrdered(Flowable<? extends T> upstream, Function<? super T, ? extends K> groupKeyFunction, int prefetch) {
+            this.upstream = upstream;
+            this.groupKeyFunction = groupKeyFunction;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        protected void subscribeActual(Subscriber<? super MyGroupedFlowable<T, K>> downstream) {
+            upstream.subscribe(new GroupByOrderedSubscriber<T, K>(downstream, groupKeyFunction, prefetch));
+        }
+    }
+
+    static final class GroupByOrderedSubscriber<T, K> extends AtomicInteger implements FlowableSubscriber<T>, Subscription {
+        final Subscriber<? super MyGroupedFlowable<T, K>> downstream;
+        final Function<? super T, ? extends K> groupKeyFunction;
+        final int prefetch;
+        final int limit;
+        final SpscArrayQueue<T> queue;
+        final AtomicLong requested = new AtomicLong();
+
+        Subscription upstream;
+        volatile boolean done;
+        Throwable error;
+        volatile boolean cancelled;
 
-            // new group, signal completion of previous group and add item to new group
-            itemsByGroup.get(groupKeyRef.get()).add(groupCompleteItem);
-            groupKeyRef.set(groupKey);
-            itemsByGroup.computeIfAbsent(groupKey, k -> new LinkedBlockingQueue<>()).add(new GroupedItemWrapper<>(item));
-            return true;
+        // only accessed from within drain()
+        long emitted;
+        int consumed;
+        K currentKey;
+        OrderedGroup<T> currentGroup;
+        T pendingItem;
+        K pendingKey;
 
-        }).doOnSubscribe(subscription -> {
-            groupKeyRef.set(null);
-            itemsByGroup.clear();
+        GroupByOrderedSubscriber(Subscriber<? super MyGroupedFlowable<T, K>> downstream, Function<? super T, ? extends K> groupKeyFunction, int prefetch) {
+            this.downstream = downstream;
+            this.groupKeyFunction = groupKeyFunction;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (SubscriptionHelper.validate(upstream, s)) {
+                upstream = s;
+                downstream.onSubscribe(this);
+                s.request(prefetch);
+            }
+        }
 
-        }).doOnComplete(() -> {
-            K groupKey = groupKeyRef.get();
-            if (groupKey == null) {
+        @Override
+        public void onNext(T item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new MissingBackpressureException("Upstream produced more items than requested"));
                 return;
             }
-            itemsByGroup.get(groupKey).put(groupCompleteItem);
+            drain();
+        }
 
-        }).doOnError(throwable -> {
-            K groupKey = groupKeyRef.get();
-            if (groupKey == null) {
+        @Override
+        public void onError(Throwable t) {
+            if (done) {
+                RxJavaPlugins.onError(t);
                 return;
             }
-            itemsByGroup.get(groupKey).put(new GroupedItemWrapper<>(throwable));
+            error = t;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                drain();
+            }
+        }
 
-        }).doOnCancel(() -> {
-            K groupKey = groupKeyRef.get();
-            if (groupKey == null) {
+        /**
+         * Routes queued upstream items to the current group. An item belonging to a different group completes the
+         * current group, but the new group is only emitted when there is downstream demand for it. Upstream items are
+         * requested as items are routed, so the current group can always be completed regardless of downstream demand.
+         */
+        void drain() {
+            if (getAndIncrement() != 0) {
                 return;
             }
-            itemsByGroup.get(groupKey).put(cancelledItem);
-
-        }).map(item -> {
-            final K groupKey = groupKeyRef.get();
-            final BlockingQueue<GroupedItemWrapper<T>> blockingQueue = itemsByGroup.get(groupKey);
-            Flowable<T> innerGroupFlow = Flowable.generate(
-                    () -> blockingQueue,
-                    (queue, emitter) -> {
-                        GroupedItemWrapper<T> wrapper = queue.take();
-                        if (wrapper == groupCompleteItem) {
-                            emitter.onComplete();
-                            return;
+            int missed = 1;
+            for (; ; ) {
+                for (; ; ) {
+                    if (cancelled) {
+                        queue.clear();
+                        pendingItem = null;
+                        if (currentGroup != null) {
+                            currentGroup.onError(new RuntimeException("cancelled"));
+                            currentGroup = null;
                         }
-                        if (wrapper == cancelledItem) {
-                            emitter.onError(new RuntimeException("cancelled"));
+                        return;
+                    }
+
+                    T item = pendingItem;
+                    K groupKey = pendingKey;
+                    if (item == null) {
+                        boolean d = done;
+                        item = queue.poll();
+                        if (item == null) {
+                            if (d) {
+                                terminate();
+                                return;
+                            }
+                            break;
                         }
-                        if (wrapper.throwable != null) {
-                            emitter.onError(wrapper.throwable);
+                        try {
+                            groupKey = Objects.requireNonNull(groupKeyFunction.apply(item), "groupKeyFunction returned a null key");
+                        } catch (Throwable t) {
+                            Exceptions.throwIfFatal(t);
+                            upstream.cancel();
+                            error = t;
+                            queue.clear();
+                            terminate();
+                            return;
                         }
-                        emitter.onNext(wrapper.item);
-                    },
-                    queue -> queue.clear()
-            );
-            return new MyGroupedFlowable<>(groupKey, innerGroupFlow.subscribeOn(Schedulers.newThread()));
-        });
-    }
+                    }
 
-    public static class MyGroupedFlowable<T, K> {
-        private final K groupKey;
-        private final Flowable<T> flowable;
+                    if (currentGroup != null && groupKey.equals(currentKey)) {
+                        // group already exists, add item to existing group
+                        pendingItem = null;
+                        pendingKey = null;
+                        currentGroup.onNext(item);
+                        replenish();
+                        continue;
+                    }
 
-        private MyGroupedFlowable(K groupKey, Flowable<T> flowable) {
-            this.groupKey = groupKey;
-            this.flowable = flowable;
+                    if (emitted == requested.get()) {
+                        // new group, but no demand for it yet
+                        pendingItem = item;
+                        pendingKey = groupKey;
+                        if (currentGroup != null) {
+                            currentGroup.onComplete();
+                            currentGroup = null;
+                        }
+                        break;
+                    }
+
+                    // new group, signal completion of previous group and add item to new group
+                    pendingItem = null;
+                    pendingKey = null;
+                    if (currentGroup != null) {
+                        currentGroup.onComplete();
+                    }
+                    currentKey = groupKey;
+                    currentGroup = new OrderedGroup<>(prefetch);
+                    emitted++;
+                    downstream.onNext(new MyGroupedFlowable<>(groupKey, currentGroup));
+                    currentGroup.onNext(item);
+                    replenish();
+                }
+
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
         }
 
-        public K key() {
-            return groupKey;
+        void replenish() {
+            if (++consumed == limit) {
+                consumed = 0;
+                upstream.request(limit);
+            }
         }
 
-        public Flowable<T> flowable() {
-            return flowable;
+        void terminate() {
+            OrderedGroup<T> group = currentGroup;
+            currentGroup = null;
+            Throwable e = error;
+            if (e != null) {
+                // signal downstream first, it will typically cancel the group it is consuming
+                downstream.onError(e);
+                if (group != null) {
+                    group.onError(e);
+                }
+            } else {
+                if (group != null) {
+                    group.onComplete();
+                }
+                downstream.onComplete();
+            }
         }
     }
 
-    private static class GroupedItemWrapper<T> {
-        final T item;
-        final Throwable throwable;
+    /**
+     * A single-subscriber group that buffers its items until they are requested by the subscriber.
+     */
+    static final class OrderedGroup<T> extends Flowable<T> implements Subscription {
+        final SpscLinkedArrayQueue<T> queue;
+        final AtomicBoolean once = new AtomicBoolean();
+        final AtomicReference<Subscriber<? super T>> downstream = new AtomicReference<>();
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger wip = new AtomicInteger();
+
+        volatile boolean done;
+        Throwable error;
+        volatile boolean cancelled;
+
+        OrderedGroup(int bufferSize) {
+            this.queue = new SpscLinkedArrayQueue<>(bufferSize);
+        }
 
-        GroupedItemWrapper(T item) {
-            this.item = item;
-            this.throwable = null;
+        @Override
+        protected void subscribeActual(Subscriber<? super T> subscriber) {
+            if (!once.compareAndSet(false, true)) {
+                EmptySubscription.error(new IllegalStateException("A group can only be subscribed to once"), subscriber);
+                return;
+            }
+            subscriber.onSubscribe(this);
+            downstream.lazySet(subscriber);
+            drain();
         }
 
-        GroupedItemWrapper(Throwable t) {
-            this.item = null;
-            this.throwable = t;
+        void onNext(T item) {
+            queue.offer(item);
+            drain();
+        }
+
+        void onError(Throwable t) {
+            error = t;
+            done = true;
+            drain();
+        }
+
+        void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                drain();
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            Subscriber<? super T> subscriber = downstream.get();
+            for (; ; ) {
+                if (cancelled) {
+                    // items routed to a cancelled group are discarded
+                    queue.clear();
+                    downstream.lazySet(null);
+                } else if (subscriber != null) {
+                    long r = requested.get();
+                    long e = 0L;
+                    while (e != r) {
+                        boolean d = done;
+                        T item = queue.poll();
+                        boolean empty = item == null;
+                        if (checkTerminated(d, empty, subscriber)) {
+                            return;
+                        }
+                        if (empty) {
+                            break;
+                        }
+                        subscriber.onNext(item);
+                        e++;
+                    }
+                    if (e == r && checkTerminated(done, queue.isEmpty(), subscriber)) {
+                        return;
+                    }
+                    if (e != 0L) {
+                        BackpressureHelper.produced(requested, e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+                if (subscriber == null) {
+                    subscriber = downstream.get();
+                }
+            }
+        }
+
+        boolean checkTerminated(boolean d, boolean empty, Subscriber<? super T> subscriber) {
+            if (cancelled) {
+                queue.clear();
+                downstream.lazySet(null);
+                return true;
+            }
+            if (d && empty) {
+                downstream.lazySet(null);
+                Throwable e = error;
+                if (e != null) {
+                    subscriber.onError(e);
+                } else {
+                    subscriber.onComplete();
+                }
+                return true;
+            }
+            return false;
         }
     }
 
@@ -5,6 +5,7 @@ import io.descoped.lds.api.persistence.PersistenceDeletePolicy;
 import io.descoped.lds.api.persistence.PersistenceException;
 import io.descoped.lds.api.persistence.Transaction;
 import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
 import io.descoped.lds.api.specification.Specification;
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
@@ -12,6 +13,8 @@ import io.reactivex.Maybe;
 import io.reactivex.Single;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Temporary interface
@@ -33,6 +36,23 @@ public interface RxJsonPersistence {
      */
     Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id);
 
+    /**
+     * Read the parts of a single {@link JsonDocument} at or below the given paths, the rest of the document is left
+     * out.
+     * <p>
+     * TODO: onError(PersistenceException) in case of persistence exception
+     *
+     * @param tx         The transaction to use.
+     * @param snapshot   Upper bound of the returned version
+     * @param ns         the name space
+     * @param entityName the entity name
+     * @param id         the entity id
+     * @param paths      the parts of the document to read
+     * @return a {@link Maybe<JsonDocument>} instance
+     */
+    Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id,
+                                     Collection<JsonNavigationPath> paths);
+
     /**
      * Read {@link JsonDocument}s.
      * <p>
@@ -162,6 +182,33 @@ public interface RxJsonPersistence {
     Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
                                         JsonNavigationPath path, String value, Range<String> range);
 
+    /**
+     * Finds the documents with a leaf-node at the path of the given type and value.
+     *
+     * @param type  one of {@link FragmentType#STRING}, {@link FragmentType#NUMERIC}, {@link FragmentType#BOOLEAN} or
+     *              {@link FragmentType#NULL}.
+     * @param value a String, Number or Boolean respectively, or null for {@link FragmentType#NULL}. Integral numbers
+     *              match regardless of their Java type, e.g. 42L matches the json value 42.
+     * @throws IllegalArgumentException if the type is not supported or the value does not match the type.
+     */
+    Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                        JsonNavigationPath path, FragmentType type, Object value, Range<String> range);
+
+    /**
+     * Finds the documents with a leaf-node at the path whose value is within the value range, e.g. numbers between two
+     * bounds or strings with a given prefix.
+     */
+    Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                        JsonNavigationPath path, ValueRange valueRange, Range<String> range);
+
+    /**
+     * Finds the documents that match all the given predicates.
+     *
+     * @param predicates at least one predicate.
+     */
+    Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                        List<FindPredicate> predicates, Range<String> range);
+
     /**
      * Clean up resources
      *
@@ -6,13 +6,16 @@ import io.descoped.lds.api.persistence.DocumentKey;
 import io.descoped.lds.api.persistence.PersistenceDeletePolicy;
 import io.descoped.lds.api.persistence.PersistenceException;
 import io.descoped.lds.api.persistence.Transaction;
-import io.descoped.lds.api.persistence.flattened.FlattenedDocument;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocumentLeafNode;
-import io.descoped.lds.api.persistence.json.FlattenedDocumentToJson;
+import io.descoped.lds.api.persistence.json.FragmentsToJson;
 import io.descoped.lds.api.persistence.json.JsonDocument;
-import io.descoped.lds.api.persistence.json.JsonToFlattenedDocument;
+import io.descoped.lds.api.persistence.json.JsonToFragments;
+import io.descoped.lds.api.persistence.streaming.EpochMicros;
 import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentComparators;
+import io.descoped.lds.api.persistence.streaming.FragmentDictionary;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.NumericType;
 import io.descoped.lds.api.specification.Specification;
 import io.descoped.lds.api.specification.SpecificationElement;
 import io.descoped.lds.api.specification.SpecificationTraversal;
@@ -21,19 +24,29 @@ import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
 
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static io.descoped.lds.api.persistence.reactivex.CacheInvalidatingTransaction.unwrap;
 import static java.util.Optional.ofNullable;
 
 /**
@@ -42,16 +55,97 @@ import static java.util.Optional.ofNullable;
 public class RxJsonPersistenceBridge implements RxJsonPersistence {
 
     private static final Pattern LINK_PATTERN = Pattern.compile("/(?<entity>[^/]*)/(?<id>[^/]*)");
+    /**
+     * Default approximate number of bytes of fragments a single query may buffer on the heap while sorting.
+     */
+    public static final long DEFAULT_SORT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Number of ids the bridge reads documents of with a single {@link RxPersistence#readMany} call, once it has
+     * resolved the ids of a query. Larger batches mean fewer provider calls, but up to this many documents may be read
+     * beyond the page a limited range asks for.
+     */
+    public static final int READ_MANY_BATCH_SIZE = 16;
+
     private final RxPersistence persistence;
     private final int fragmentSize;
+    private final long sortMemoryBudgetBytes;
+    private final Set<RxPersistenceCapability> capabilities;
+    private final SnapshotDocumentCache documentCache;
+    private final IndexRegistry indexRegistry;
 
     public RxJsonPersistenceBridge(RxPersistence persistence, int fragmentSize) {
+        this(persistence, fragmentSize, DEFAULT_SORT_MEMORY_BUDGET_BYTES);
+    }
+
+    /**
+     * @param sortMemoryBudgetBytes approximate number of bytes of fragments a single query may buffer on the heap while
+     *                              sorting, fragments beyond this are spilled to temporary files.
+     */
+    public RxJsonPersistenceBridge(RxPersistence persistence, int fragmentSize, long sortMemoryBudgetBytes) {
+        this(persistence, fragmentSize, sortMemoryBudgetBytes, null);
+    }
+
+    /**
+     * @param documentCache cache that {@link #readDocument(Transaction, ZonedDateTime, String, String, String)} is
+     *                      served from when possible, and that writes through this bridge invalidate. May be shared
+     *                      by all bridges of the process, or null for no caching.
+     */
+    public RxJsonPersistenceBridge(RxPersistence persistence, int fragmentSize, long sortMemoryBudgetBytes,
+                                   SnapshotDocumentCache documentCache) {
+        this(persistence, fragmentSize, sortMemoryBudgetBytes, documentCache, IndexRegistry.all());
+    }
+
+    /**
+     * @param indexRegistry the leaf-nodes that are indexed when the provider declares
+     *                      {@link RxPersistenceCapability#INDEX_DELTAS}, e.g. {@link IndexRegistry#from} the
+     *                      specification. Ignored by other providers, which index every leaf-node themselves.
+     */
+    public RxJsonPersistenceBridge(RxPersistence persistence, int fragmentSize, long sortMemoryBudgetBytes,
+                                   SnapshotDocumentCache documentCache, IndexRegistry indexRegistry) {
         this.persistence = Objects.requireNonNull(persistence);
         this.fragmentSize = fragmentSize;
+        this.sortMemoryBudgetBytes = sortMemoryBudgetBytes;
+        this.capabilities = persistence.capabilities();
+        this.documentCache = documentCache;
+        this.indexRegistry = Objects.requireNonNull(indexRegistry);
     }
 
-    static Maybe<JsonDocument> doReadDocument(Flowable<Fragment> fragments, int fragmentSize) {
-        return toDocuments(fragments, fragmentSize, false).firstElement();
+    /**
+     * Brings provider output into document order, or reverse document order if the range is backward. Output from a
+     * provider that declares the ordering capability of the operation, and that was given a range in the same
+     * direction, is streamed straight through, otherwise it is re-sorted.
+     */
+    Flowable<Fragment> ordered(Flowable<Fragment> fragments, RxPersistenceCapability ordering, Range<?> providerRange, Range<?> range) {
+        if (capabilities.contains(ordering) && providerRange.isBackward() == range.isBackward()) {
+            return range.isBackward() ? forwardWithinDocuments(fragments) : fragments;
+        }
+        return sorted(fragments, range);
+    }
+
+    /**
+     * Turns fragments in reverse {@link Fragment#compareTo(Fragment)} order into reverse document order, buffering
+     * one document at a time.
+     */
+    static Flowable<Fragment> forwardWithinDocuments(Flowable<Fragment> fragments) {
+        return RxGroupByTools.groupByOrdered(fragments, DocumentKey::from)
+                .concatMap(group -> group.flowable().toList().flattenAsFlowable(documentFragments -> {
+                    Collections.reverse(documentFragments);
+                    return documentFragments;
+                }));
+    }
+
+    /**
+     * Re-sorts provider output in document order, or reverse document order if the range is backward. The sort
+     * interns the fragments it buffers into a single {@link FragmentDictionary}.
+     */
+    Flowable<Fragment> sorted(Flowable<Fragment> fragments, Range<?> range) {
+        return RxSortTools.sorted(fragments, range.isBackward() ? FragmentComparators.REVERSE_DOCUMENTS : FragmentComparators.FORWARD,
+                sortMemoryBudgetBytes);
+    }
+
+    static Maybe<JsonDocument> doReadDocument(Flowable<Fragment> fragments) {
+        return toDocuments(fragments, false).firstElement();
     }
 
     /**
@@ -97,129 +191,352 @@ public class RxJsonPersistenceBridge implements RxJsonPersistence {
     /**
      * Convert a flowable of {@link Fragment}s to a flowable of {@link JsonDocument}.
      * <p>
-     * The received fragments must be ordered by id <strong>before</strong> it is ordered by path..
+     * The received fragments must be ordered by id <strong>before</strong> it is ordered by path, and the fragments of
+     * each path must be ordered by offset. Each document is assembled as its fragments arrive and emitted as soon as
+     * the first fragment of the next document (or the end of the stream) is observed.
      */
-    static Flowable<JsonDocument> toDocuments(Flowable<Fragment> fragmentFlowable, int fragmentSize, boolean includeDeleted) {
+    static Flowable<JsonDocument> toDocuments(Flowable<Fragment> fragmentFlowable, boolean includeDeleted) {
         return RxGroupByTools.groupByOrdered(
                 fragmentFlowable.takeWhile(fragment -> !fragment.isStreamingControl()),
                 fragment -> DocumentKey.from(fragment)
 
-        ).concatMap(group -> {
-            // For each group, create a FlattenedDocument.
+        ).concatMapSingle(group -> {
+            // For each group, assemble the json document directly from the fragments.
             return group.flowable()
-                    .toMultimap(Fragment::path)
-                    .map(map -> FlattenedDocument.decodeDocument(group.key(), map, fragmentSize))
-                    .toFlowable();
+                    .collect(() -> new FragmentsToJson(group.key()), FragmentsToJson::accept);
 
-        }).filter(flattenedDocument -> {
+        }).filter(assembler -> {
             // Filter out the deleted documents.
-            return includeDeleted || !flattenedDocument.deleted();
-
-        }).map(flattenedDocument -> {
-            // Convert to JsonDocument.
-            return new JsonDocument(
-                    flattenedDocument.key(),
-                    new FlattenedDocumentToJson(flattenedDocument).toJsonNode()
-            );
-        });
-    }
+            return includeDeleted || !assembler.deleted();
 
-    private static FlattenedDocument documentFromFragments(DocumentKey key, List<Fragment> fragments, int fragmentSize) {
-        Map<String, List<Fragment>> map = new LinkedHashMap<>();
-        for (Fragment fragment : fragments) {
-            map.computeIfAbsent(fragment.path(), path -> new ArrayList<>()).add(fragment);
-        }
-        return FlattenedDocument.decodeDocument(key, map, fragmentSize);
+        }).map(FragmentsToJson::toJsonDocument);
     }
 
-    static Flowable<JsonDocument> doReadDocuments(Flowable<Fragment> fragments, Range<String> range, int fragmentSize) {
-        Flowable<JsonDocument> documents = toDocuments(fragments, fragmentSize, false);
+    static Flowable<JsonDocument> doReadDocuments(Flowable<Fragment> fragments, Range<String> range) {
+        Flowable<JsonDocument> documents = toDocuments(fragments, false);
         return limit(documents, d -> d.key().id(), range);
     }
 
-    static Flowable<JsonDocument> doReadDocumentVersions(Flowable<Fragment> fragments, Range<ZonedDateTime> range, int fragmentSize) {
-        Flowable<JsonDocument> documents = toDocuments(fragments, fragmentSize, true);
-        // TODO: ZonedDateTime is a bad choice for API. Internal temporal values should be Instant.
-        Range<Instant> instantRange = Range.copy(range, zonedDateTime -> zonedDateTime.toInstant());
-        return limit(documents, document -> document.key().timestamp().toInstant(), instantRange);
+    static Flowable<JsonDocument> doReadDocumentVersions(Flowable<Fragment> fragments, Range<ZonedDateTime> range) {
+        Flowable<JsonDocument> documents = toDocuments(fragments, true);
+        // versions are compared as epoch microseconds, ZonedDateTime is only used at the API edge
+        Range<Long> versionRange = Range.copy(range, EpochMicros::of);
+        return limit(documents, document -> document.key().version(), versionRange);
     }
 
-    static Flowable<JsonDocument> doFindDocuments(Flowable<Fragment> fragments, Range<String> range, int fragmentSize) {
-        Flowable<JsonDocument> documents = toDocuments(fragments, fragmentSize, false);
+    static Flowable<JsonDocument> doFindDocuments(Flowable<Fragment> fragments, Predicate<JsonDocument> match, Range<String> range) {
+        Flowable<JsonDocument> documents = toDocuments(fragments, false).filter(match::test);
         return limit(documents, d -> d.key().id(), range);
     }
 
+    /**
+     * The range to give the provider: the range itself if the provider honors its limits, otherwise the range without
+     * limits, in which case only the bridge applies them.
+     */
+    <T> Range<T> providerRange(Range<T> range, RxPersistenceCapability limiting) {
+        return capabilities.contains(limiting) ? Range.copy(range) : Range.unlimited(range);
+    }
+
+    /**
+     * @return whether the provider can find values of the type at the path, i.e. that it indexes all paths or that the
+     * path is in the index registry.
+     */
+    boolean indexed(String entityName, JsonNavigationPath navigationPath, FragmentType type) {
+        return !capabilities.contains(RxPersistenceCapability.INDEX_DELTAS)
+                || indexRegistry.isIndexed(entityName, navigationPath, type);
+    }
+
+    /**
+     * Finds documents without a value index, by reading all documents of the entity and filtering them.
+     */
+    Flowable<JsonDocument> scanDocuments(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                         Predicate<JsonDocument> match, Range<String> range) {
+        Range<String> providerRange = Range.unlimited(range);
+        Flowable<Fragment> fragments = persistence.readAll(unwrap(tx), snapshot, namespace, entityName, providerRange);
+        fragments = ordered(fragments, RxPersistenceCapability.READ_ALL_ORDERED, providerRange, range);
+        return doFindDocuments(fragments, match, range);
+    }
+
     @Override
     public Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
-        Flowable<Fragment> fragments = persistence.read(tx, snapshot, ns, entityName, id);
-        return doReadDocument(fragments, fragmentSize);
+        if (documentCache == null || (tx instanceof CacheInvalidatingTransaction && ((CacheInvalidatingTransaction) tx).hasWritten())) {
+            // transactions that have written must see their own writes, and must not share them before commit
+            Flowable<Fragment> fragments = persistence.read(unwrap(tx), snapshot, ns, entityName, id);
+            return doReadDocument(fragments);
+        }
+        return Maybe.defer(() -> {
+            JsonDocument cached = documentCache.get(ns, entityName, id, snapshot);
+            if (cached != null) {
+                return Maybe.just(cached);
+            }
+            long generation = documentCache.generation();
+            boolean open = !snapshot.isBefore(SnapshotDocumentCache.LATEST);
+            Flowable<Fragment> fragments = persistence.read(unwrap(tx), snapshot, ns, entityName, id);
+            return doReadDocument(fragments)
+                    .doOnSuccess(document -> documentCache.put(document, snapshot, open, generation));
+        });
+    }
+
+    @Override
+    public Maybe<JsonDocument> readDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id,
+                                            Collection<JsonNavigationPath> paths) {
+        Flowable<Fragment> fragments = persistence.readPaths(unwrap(tx), snapshot, ns, entityName, id, paths);
+        return doReadDocument(fragments);
     }
 
     @Override
     public Flowable<JsonDocument> readDocuments(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, Range<String> range) {
-        Flowable<Fragment> fragments = persistence.readAll(tx, snapshot, ns, entityName, Range.unlimited(range));
+        Range<String> providerRange = providerRange(range, RxPersistenceCapability.READ_ALL_LIMITED);
+        Flowable<Fragment> fragments = persistence.readAll(unwrap(tx), snapshot, ns, entityName, providerRange);
 
-        // Resort.
-        fragments = range.isBackward()
-                ? fragments.sorted(Comparator.reverseOrder())
-                : fragments.sorted();
+        // Resort unless already ordered.
+        fragments = ordered(fragments, RxPersistenceCapability.READ_ALL_ORDERED, providerRange, range);
 
-        return doReadDocuments(fragments, range, fragmentSize);
+        return doReadDocuments(fragments, range);
     }
 
     @Override
     public Flowable<JsonDocument> readDocumentVersions(Transaction tx, String ns, String entityName, String id,
                                                        Range<ZonedDateTime> range) {
-        Flowable<Fragment> fragments = persistence.readVersions(tx, ns, entityName, id, Range.unlimited(range));
+        Range<ZonedDateTime> providerRange = providerRange(range, RxPersistenceCapability.READ_VERSIONS_LIMITED);
+        Flowable<Fragment> fragments = persistence.readVersions(unwrap(tx), ns, entityName, id, providerRange);
 
-        // Resort.
-        fragments = range.isBackward()
-                ? fragments.sorted(Comparator.reverseOrder())
-                : fragments.sorted();
+        // Resort unless already ordered.
+        fragments = ordered(fragments, RxPersistenceCapability.READ_VERSIONS_ORDERED, providerRange, range);
 
-        return doReadDocumentVersions(fragments, range, fragmentSize);
+        return doReadDocumentVersions(fragments, range);
     }
 
     @Override
     public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace,
                                                String entityName, JsonNavigationPath navigationPath, String value, Range<String> range) {
-        // TODO support stronger typing of value
-        Map<Integer, byte[]> valueByOffset = FlattenedDocumentLeafNode.valueByOffset(FragmentType.STRING, fragmentSize, value);
-        byte[] bytesValue = valueByOffset.get(0);
-        Flowable<Fragment> fragments = persistence.find(tx, snapshot, namespace, entityName, navigationPath.serialize(), bytesValue,
-                Range.unlimited(range));
-
-        // Resort.
-        fragments = range.isBackward()
-                ? fragments.sorted(Comparator.reverseOrder())
-                : fragments.sorted();
-
-        return doFindDocuments(fragments, range, fragmentSize).filter(document -> {
-            // Post filter since fragment based implementation can return false positive.
+        return findDocument(tx, snapshot, namespace, entityName, navigationPath, FragmentType.STRING, value, range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               JsonNavigationPath navigationPath, FragmentType type, Object value,
+                                               Range<String> range) {
+        byte[] bytesValue = findValue(type, value);
+        if (!indexed(entityName, navigationPath, type)) {
+            return scanDocuments(tx, snapshot, namespace, entityName,
+                    document -> matchesAny(document, navigationPath, type, value, bytesValue), range);
+        }
+        if (capabilities.contains(RxPersistenceCapability.FIND_EXACT)) {
+            Range<String> providerRange = providerRange(range, RxPersistenceCapability.FIND_LIMITED);
+            Flowable<Fragment> fragments = persistence.findExact(unwrap(tx), snapshot, namespace, entityName,
+                    navigationPath.serialize(), type, bytesValue, providerRange);
+            fragments = ordered(fragments, RxPersistenceCapability.FIND_ORDERED, providerRange, range);
+            return doFindDocuments(fragments, document -> true, range);
+        }
+
+        byte[] firstFragmentValue = bytesValue;
+        boolean singleFragment = true;
+        if (type == FragmentType.STRING) {
+            Map<Integer, byte[]> valueByOffset = FlattenedDocumentLeafNode.valueByOffset(FragmentType.STRING, fragmentSize, value);
+            firstFragmentValue = valueByOffset.get(0);
+            singleFragment = valueByOffset.size() == 1;
+        }
+        // a value spanning several fragments is matched on its first fragment only, so the provider cannot count matches
+        Range<String> providerRange = singleFragment
+                ? providerRange(range, RxPersistenceCapability.FIND_LIMITED)
+                : Range.unlimited(range);
+        Flowable<Fragment> fragments = persistence.find(unwrap(tx), snapshot, namespace, entityName, navigationPath.serialize(),
+                firstFragmentValue, providerRange);
+
+        // Resort unless already ordered.
+        fragments = ordered(fragments, RxPersistenceCapability.FIND_ORDERED, providerRange, range);
+
+        // Post filter since fragment based implementation can return false positive, e.g. a string with the same
+        // first fragment, or a value of another type with the same bytes.
+        return doFindDocuments(fragments, document -> matchesAny(document, navigationPath, type, value, bytesValue), range);
+    }
+
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               JsonNavigationPath navigationPath, ValueRange valueRange,
+                                               Range<String> range) {
+        if (capabilities.contains(RxPersistenceCapability.FIND_RANGE)
+                && indexed(entityName, navigationPath, valueRange.type())) {
+            Range<String> providerRange = providerRange(range, RxPersistenceCapability.FIND_LIMITED);
+            Flowable<Fragment> fragments = persistence.findRange(unwrap(tx), snapshot, namespace, entityName,
+                    navigationPath.serialize(), valueRange, providerRange);
+            fragments = ordered(fragments, RxPersistenceCapability.FIND_ORDERED, providerRange, range);
+            return doFindDocuments(fragments, document -> true, range);
+        }
+
+        // Without a value index, scan all documents of the entity and filter.
+        return scanDocuments(tx, snapshot, namespace, entityName, document -> {
             AtomicBoolean match = new AtomicBoolean(false);
             document.traverseField(navigationPath, (node, path) -> {
-                if (node.isTextual()) {
-                    boolean equals = node.textValue().equals(value);
-                    if (equals) {
-                        match.set(true);
-                    }
-                } else {
-                    // TODO support matching values of other types
+                if (valueRange.matches(node)) {
+                    match.set(true);
                 }
             });
-            if (match.get() == false) {
-                return false; // discard false-positive match from underlying persistence layer
+            return match.get();
+        }, range);
+    }
+
+    /**
+     * Evaluates each predicate with a find that only the ids of the matching documents are kept from, intersects the
+     * sorted id streams with a merge join, and only then reads the documents that are in all of them. The documents
+     * are checked against all predicates once read, as the provider may match values on their first fragment only.
+     */
+    @Override
+    public Flowable<JsonDocument> findDocument(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                               List<FindPredicate> predicates, Range<String> range) {
+        if (predicates.isEmpty()) {
+            throw new IllegalArgumentException("At least one predicate is required");
+        }
+        List<byte[]> bytesValues = new ArrayList<>();
+        for (FindPredicate predicate : predicates) {
+            bytesValues.add(findValue(predicate.type(), predicate.value()));
+        }
+        Predicate<JsonDocument> matchesAll = document -> {
+            for (int i = 0; i < predicates.size(); i++) {
+                FindPredicate predicate = predicates.get(i);
+                if (!matchesAny(document, predicate.path(), predicate.type(), predicate.value(), bytesValues.get(i))) {
+                    return false;
+                }
             }
             return true;
+        };
+        List<FindPredicate> indexedPredicates = new ArrayList<>();
+        List<byte[]> indexedBytesValues = new ArrayList<>();
+        for (int i = 0; i < predicates.size(); i++) {
+            FindPredicate predicate = predicates.get(i);
+            if (indexed(entityName, predicate.path(), predicate.type())) {
+                indexedPredicates.add(predicate);
+                indexedBytesValues.add(bytesValues.get(i));
+            }
+        }
+        if (indexedPredicates.isEmpty()) {
+            return scanDocuments(tx, snapshot, namespace, entityName, matchesAll, range);
+        }
+        // predicates on paths that are not indexed are only evaluated by the post filter
+        Comparator<String> idOrder = range.isBackward() ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        List<Flowable<String>> idStreams = new ArrayList<>();
+        for (int i = 0; i < indexedPredicates.size(); i++) {
+            idStreams.add(findIds(tx, snapshot, namespace, entityName, indexedPredicates.get(i), indexedBytesValues.get(i),
+                    range, idOrder));
+        }
+        Flowable<JsonDocument> documents = RxMergeJoinTools.intersectSorted(idStreams, idOrder)
+                .buffer(READ_MANY_BATCH_SIZE)
+                .concatMap(ids -> toDocuments(persistence.readMany(unwrap(tx), snapshot, namespace, entityName, ids), false))
+                .filter(matchesAll::test);
+        return limit(documents, d -> d.key().id(), range);
+    }
+
+    /**
+     * @return the distinct ids of the documents the provider finds for the predicate, in the given order.
+     */
+    private Flowable<String> findIds(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName,
+                                     FindPredicate predicate, byte[] bytesValue, Range<String> range,
+                                     Comparator<String> idOrder) {
+        // limits cannot be pushed down, as they apply to the intersection
+        Range<String> providerRange = Range.unlimited(range);
+        Flowable<Fragment> fragments;
+        if (capabilities.contains(RxPersistenceCapability.FIND_EXACT)) {
+            fragments = persistence.findExact(unwrap(tx), snapshot, namespace, entityName, predicate.path().serialize(),
+                    predicate.type(), bytesValue, providerRange);
+        } else {
+            byte[] firstFragmentValue = predicate.type() == FragmentType.STRING
+                    ? FlattenedDocumentLeafNode.valueByOffset(FragmentType.STRING, fragmentSize, predicate.value()).get(0)
+                    : bytesValue;
+            fragments = persistence.find(unwrap(tx), snapshot, namespace, entityName, predicate.path().serialize(),
+                    firstFragmentValue, providerRange);
+        }
+        Flowable<String> ids = fragments
+                .filter(fragment -> !fragment.isStreamingControl())
+                .map(Fragment::id);
+        if (capabilities.contains(RxPersistenceCapability.FIND_ORDERED) && providerRange.isBackward() == range.isBackward()) {
+            return ids.distinctUntilChanged();
+        }
+        return ids.distinct().sorted(idOrder);
+    }
+
+    /**
+     * @return the value as it is stored in fragments of the type.
+     * @throws IllegalArgumentException if the type is not supported by find or the value does not match the type.
+     */
+    static byte[] findValue(FragmentType type, Object value) {
+        switch (type) {
+            case STRING:
+                if (value instanceof String) {
+                    return ((String) value).getBytes(StandardCharsets.UTF_8);
+                }
+                break;
+            case NUMERIC:
+                if (value instanceof Number) {
+                    return NumericType.encode(NumericType.narrowed((Number) value));
+                }
+                break;
+            case BOOLEAN:
+                if (value instanceof Boolean) {
+                    return new byte[]{(byte) ((Boolean) value ? 1 : 0)};
+                }
+                break;
+            case NULL:
+                if (value == null) {
+                    return new byte[0];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Find is not supported for values of type " + type);
+        }
+        throw new IllegalArgumentException("Value " + value + " is not of type " + type);
+    }
+
+    /**
+     * @return whether any leaf-node of the document at the index-unaware path has the type and value.
+     */
+    static boolean matchesAny(JsonDocument document, JsonNavigationPath navigationPath, FragmentType type, Object value,
+                              byte[] bytesValue) {
+        AtomicBoolean match = new AtomicBoolean(false);
+        document.traverseField(navigationPath, (node, path) -> {
+            if (matches(node, type, value, bytesValue)) {
+                match.set(true);
+            }
         });
+        return match.get();
+    }
+
+    static boolean matches(JsonNode node, FragmentType type, Object value, byte[] bytesValue) {
+        if (node == null) {
+            return false;
+        }
+        switch (type) {
+            case STRING:
+                return node.isTextual() && node.textValue().equals(value);
+            case NUMERIC:
+                return node.isNumber() && Arrays.equals(NumericType.encode(NumericType.narrowed(node.numberValue())), bytesValue);
+            case BOOLEAN:
+                return node.isBoolean() && node.booleanValue() == (Boolean) value;
+            case NULL:
+                return node.isNull();
+            default:
+                return false;
+        }
     }
 
     @Override
     public Flowable<JsonDocument> readTargetDocuments(Transaction tx, ZonedDateTime snapshot, String ns,
                                                       String entityName, String id, JsonNavigationPath jsonNavigationPath,
                                                       String targetEntityName, Range<String> range) {
-        // TODO support reading only from relevant jsonPath in RxPersistence instead of reading entire document.
-        return readDocument(tx, snapshot, ns, entityName, id)
+        return targetIds(readDocument(tx, snapshot, ns, entityName, id, List.of(jsonNavigationPath)), jsonNavigationPath,
+                targetEntityName, range)
+                .toList()
+                .flatMapPublisher(targetIds -> toDocuments(
+                        persistence.readMany(unwrap(tx), snapshot, ns, targetEntityName, targetIds), false));
+    }
+
+    /**
+     * The ids of the documents of the target entity linked to from the path of the source document, in the order and
+     * within the limit of the range, without duplicates.
+     */
+    static Flowable<String> targetIds(Maybe<JsonDocument> source, JsonNavigationPath jsonNavigationPath,
+                                      String targetEntityName, Range<String> range) {
+        return source
                 .flattenAsFlowable(document -> {
                     List<String> links = new ArrayList<>();
                     document.traverseField(jsonNavigationPath, (node, path) -> {
@@ -236,48 +553,253 @@ public class RxJsonPersistenceBridge implements RxJsonPersistence {
                     return links;
                 })
                 .sorted((o1, o2) -> range.isBackward() ? o2.compareTo(o1) : o1.compareTo(o2))
-                .take(ofNullable(range).map(Range::getLimit).orElse(Integer.MAX_VALUE))
-                .concatMapMaybe(targetId -> readDocument(tx, snapshot, ns, targetEntityName, targetId));
+                .distinctUntilChanged()
+                .take(ofNullable(range).map(Range::getLimit).orElse(Integer.MAX_VALUE));
     }
 
     @Override
     public Flowable<JsonDocument> readSourceDocuments(Transaction tx, ZonedDateTime snapshot, String ns,
                                                       String entityName, String id, JsonNavigationPath parentPath,
                                                       String parentEntityName, Range<String> range) {
+        if (capabilities.contains(RxPersistenceCapability.LINK_INDEX)) {
+            // the ids come from the reverse-link index in the order and within the limits of the range
+            Flowable<String> sourceIds = persistence.findSourceIds(unwrap(tx), snapshot, ns, entityName, id, parentEntityName,
+                    parentPath.serialize(), Range.copy(range));
+            Flowable<JsonDocument> documents = sourceIds
+                    .buffer(READ_MANY_BATCH_SIZE)
+                    .concatMap(ids -> toDocuments(persistence.readMany(unwrap(tx), snapshot, ns, parentEntityName, ids), false));
+            return limit(documents, d -> d.key().id(), range);
+        }
+        String link = String.format("/%s/%s", entityName, id);
+        if (!indexed(parentEntityName, parentPath, FragmentType.STRING)) {
+            return scanDocuments(tx, snapshot, ns, parentEntityName,
+                    document -> matchesAny(document, parentPath, FragmentType.STRING, link, findValue(FragmentType.STRING, link)), range);
+        }
         // Uses find to implement back links.
-        byte[] idValue = String.format("/%s/%s", entityName, id).getBytes();
-        Flowable<Fragment> fragments = persistence.find(tx, snapshot, ns, parentEntityName, parentPath.serialize(),
+        byte[] idValue = link.getBytes();
+        Flowable<Fragment> fragments = persistence.find(unwrap(tx), snapshot, ns, parentEntityName, parentPath.serialize(),
                 idValue, range);
 
-        // Resort.
-        fragments = range.isBackward()
-                ? fragments.sorted(Comparator.reverseOrder())
-                : fragments.sorted();
+        // Resort unless already ordered.
+        fragments = ordered(fragments, RxPersistenceCapability.FIND_ORDERED, range, range);
 
-        return doReadDocuments(fragments, range, fragmentSize);
+        return doReadDocuments(fragments, range);
     }
 
     @Override
     public Completable createOrOverwrite(Transaction tx, Flowable<JsonDocument> documentFlowable, Specification specification) {
-        return persistence.createOrOverwrite(tx, documentFlowable.concatMap(document -> {
-            DocumentKey key = document.key();
-            JsonNode json = document.jackson();
-            JsonToFlattenedDocument converter = new JsonToFlattenedDocument(key.namespace(), key.entity(), key.id(),
-                    key.timestamp(), json, fragmentSize);
-            return Flowable.fromIterable(() -> converter.toDocument().fragmentIterator());
+        if (documentCache != null) {
+            // invalidate before writing, so that racing reads of the previous version are not cached, and again once
+            // the write has completed and when the transaction commits
+            List<DocumentKey> written = Collections.synchronizedList(new ArrayList<>());
+            Flowable<JsonDocument> invalidatingDocuments = documentFlowable.doOnNext(document -> {
+                DocumentKey key = document.key();
+                written.add(key);
+                invalidate(tx, key.namespace(), key.entity(), key.id());
+            });
+            return doCreateOrOverwrite(tx, invalidatingDocuments).doOnComplete(() -> {
+                synchronized (written) {
+                    written.forEach(key -> documentCache.invalidate(key.namespace(), key.entity(), key.id()));
+                }
+            });
+        }
+        return doCreateOrOverwrite(tx, documentFlowable);
+    }
+
+    private Completable doCreateOrOverwrite(Transaction tx, Flowable<JsonDocument> documentFlowable) {
+        boolean indexDeltas = capabilities.contains(RxPersistenceCapability.INDEX_DELTAS);
+        boolean linkIndex = capabilities.contains(RxPersistenceCapability.LINK_INDEX);
+        if (indexDeltas || linkIndex) {
+            return Completable.defer(() -> {
+                // the deltas are buffered until the fragments have been written, and so are the versions written by
+                // this stream, as the provider need not return them from reads before the write completes
+                List<IndexDelta> deltas = new ArrayList<>();
+                List<LinkDelta> linkDeltas = new ArrayList<>();
+                Map<DocumentKey, NavigableMap<Long, JsonDocument>> writtenVersions = new HashMap<>();
+                FragmentDictionary dictionary = new FragmentDictionary();
+                Flowable<Fragment> fragments = documentFlowable.concatMap(document -> {
+                    DocumentKey key = document.key();
+                    NavigableMap<Long, JsonDocument> written = writtenVersions.computeIfAbsent(
+                            new DocumentKey(key.namespace(), key.entity(), key.id(), 0L), k -> new TreeMap<>());
+                    Map.Entry<Long, JsonDocument> writtenPrevious = written.floorEntry(key.version());
+                    Map.Entry<Long, JsonDocument> writtenNext = written.higherEntry(key.version());
+                    // a stored version between the ones written by this stream must be read whole to be told apart
+                    // from a version that has none of the indexed paths
+                    boolean wholeDocument = linkIndex || writtenPrevious != null;
+                    return Single.zip(
+                            optional(previousVersion(tx, document, wholeDocument)),
+                            optional(nextVersion(tx, document, linkIndex)),
+                            (storedPrevious, storedNext) -> {
+                                JsonDocument previous = closest(storedPrevious.orElse(null), writtenPrevious, true);
+                                JsonDocument next = closest(storedNext.orElse(null), writtenNext, false);
+                                written.put(key.version(), document);
+                                // a version written before a later one also changes what the later version replaces
+                                if (indexDeltas) {
+                                    deltas.addAll(indexRegistry.delta(previous, document));
+                                    if (next != null) {
+                                        deltas.addAll(indexRegistry.delta(document, next));
+                                    }
+                                }
+                                if (linkIndex) {
+                                    linkDeltas.addAll(linkDelta(previous, document));
+                                    if (next != null) {
+                                        linkDeltas.addAll(linkDelta(document, next));
+                                    }
+                                }
+                                return document;
+                            }).flatMapPublisher(writtenDocument -> toFragments(writtenDocument, dictionary));
+                });
+                Completable write = persistence.createOrOverwrite(unwrap(tx), fragments);
+                if (indexDeltas) {
+                    write = write.andThen(Completable.defer(() -> persistence.updateIndex(unwrap(tx), Flowable.fromIterable(deltas))));
+                }
+                if (linkIndex) {
+                    write = write.andThen(Completable.defer(() -> persistence.updateLinks(unwrap(tx), Flowable.fromIterable(linkDeltas))));
+                }
+                return write;
+            });
+        }
+        return persistence.createOrOverwrite(unwrap(tx), Flowable.defer(() -> {
+            FragmentDictionary dictionary = new FragmentDictionary();
+            return documentFlowable.concatMap(document -> toFragments(document, dictionary));
         }));
     }
 
+    private Flowable<Fragment> toFragments(JsonDocument document, FragmentDictionary dictionary) {
+        DocumentKey key = document.key();
+        JsonNode json = document.jackson();
+        return Flowable.fromIterable(() -> new JsonToFragments(key, json, fragmentSize, dictionary));
+    }
+
+    /**
+     * Reads the latest version at or before the version of the document before the document is written, restricted to
+     * the indexed paths unless the whole document is needed.
+     *
+     * @return the previous version, which may be deleted, or nothing if there is none or none of its paths are needed.
+     */
+    private Maybe<JsonDocument> previousVersion(Transaction tx, JsonDocument document, boolean wholeDocument) {
+        DocumentKey key = document.key();
+        if (wholeDocument || indexRegistry.indexesAll()) {
+            return toDocuments(persistence.read(unwrap(tx), key.timestamp(), key.namespace(), key.entity(), key.id()), true)
+                    .firstElement();
+        }
+        if (!indexRegistry.hasIndexedPaths(key.entity())) {
+            return Maybe.empty();
+        }
+        List<JsonNavigationPath> paths = new ArrayList<>();
+        indexRegistry.indexedPaths(key.entity()).forEach(indexedPath -> paths.add(indexedPath.path()));
+        return toDocuments(persistence.readPaths(unwrap(tx), key.timestamp(), key.namespace(), key.entity(), key.id(), paths), true)
+                .firstElement();
+    }
+
+    /**
+     * Reads the earliest version after the version of the document before the document is written, when its index or
+     * links are needed.
+     *
+     * @return the next version, which may be deleted, or nothing if the document is the latest version or none of its
+     * paths are needed.
+     */
+    private Maybe<JsonDocument> nextVersion(Transaction tx, JsonDocument document, boolean wholeDocument) {
+        DocumentKey key = document.key();
+        if (!wholeDocument && !indexRegistry.hasIndexedPaths(key.entity())) {
+            return Maybe.empty();
+        }
+        return readDocumentVersions(tx, key.namespace(), key.entity(), key.id(), Range.firstAfter(1, key.timestamp()))
+                .firstElement();
+    }
+
+    private static Single<Optional<JsonDocument>> optional(Maybe<JsonDocument> document) {
+        return document.map(Optional::of).toSingle(Optional.empty());
+    }
+
+    /**
+     * Picks the version closest to the written version of a stored version and a version written earlier in the same
+     * stream, preferring the one written in the stream when they are the same version.
+     *
+     * @param before whether the versions are before the written version, or after it.
+     * @return the closest version, or null if there is neither.
+     */
+    private static JsonDocument closest(JsonDocument stored, Map.Entry<Long, JsonDocument> written, boolean before) {
+        if (written == null) {
+            return stored;
+        }
+        if (stored == null) {
+            return written.getValue();
+        }
+        long storedVersion = stored.key().version();
+        boolean storedIsCloser = before ? storedVersion > written.getKey() : storedVersion < written.getKey();
+        return storedIsCloser ? stored : written.getValue();
+    }
+
+    /**
+     * Computes the changes to the reverse-link index when a document is written, from the string leaf-nodes of the
+     * previous and the written version that are links, i.e. that match <code>/entity/id</code>.
+     *
+     * @param previous the latest version before the written version, or null if there is none or it is deleted.
+     * @return the removed links followed by the added links, all with the key of the written version.
+     */
+    static List<LinkDelta> linkDelta(JsonDocument previous, JsonDocument written) {
+        DocumentKey key = written.key();
+        // both sets are keyed by the written version so that they can be compared
+        Set<LinkDelta> previousLinks = previous == null ? Collections.emptySet() : links(previous, key);
+        Set<LinkDelta> writtenLinks = links(written, key);
+        List<LinkDelta> delta = new ArrayList<>();
+        for (LinkDelta link : previousLinks) {
+            if (!writtenLinks.contains(link)) {
+                delta.add(LinkDelta.removed(key, link.path(), link.targetEntity(), link.targetId()));
+            }
+        }
+        for (LinkDelta link : writtenLinks) {
+            if (!previousLinks.contains(link)) {
+                delta.add(link);
+            }
+        }
+        return delta;
+    }
+
+    private static Set<LinkDelta> links(JsonDocument document, DocumentKey key) {
+        Set<LinkDelta> links = new LinkedHashSet<>();
+        if (document.deleted()) {
+            return links;
+        }
+        IndexRegistry.forEachLeafNode("$", document.jackson(), (path, node) -> {
+            if (!node.isTextual()) {
+                return;
+            }
+            Matcher m = LINK_PATTERN.matcher(node.textValue());
+            if (m.matches()) {
+                links.add(LinkDelta.added(key, path, m.group("entity"), m.group("id")));
+            }
+        });
+        return links;
+    }
+
+    private void invalidate(Transaction tx, String ns, String entityName, String id) {
+        documentCache.invalidate(ns, entityName, id);
+        if (tx instanceof CacheInvalidatingTransaction) {
+            ((CacheInvalidatingTransaction) tx).written(ns, entityName, id);
+        }
+    }
+
+    private Completable invalidating(Completable write, Transaction tx, String ns, String entityName, String id) {
+        if (documentCache == null) {
+            return write;
+        }
+        return write
+                .doOnSubscribe(disposable -> invalidate(tx, ns, entityName, id))
+                .doOnComplete(() -> documentCache.invalidate(ns, entityName, id));
+    }
+
     @Override
     public Completable deleteDocument(Transaction tx, String ns, String entityName, String id, ZonedDateTime
             version, PersistenceDeletePolicy policy) {
-        return persistence.delete(tx, ns, entityName, id, version, policy);
+        return invalidating(persistence.delete(unwrap(tx), ns, entityName, id, version, policy), tx, ns, entityName, id);
     }
 
     @Override
     public Completable deleteAllDocumentVersions(Transaction tx, String ns, String entity, String
             id, PersistenceDeletePolicy policy) {
-        return persistence.deleteAllVersions(tx, ns, entity, id, policy);
+        return invalidating(persistence.deleteAllVersions(unwrap(tx), ns, entity, id, policy), tx, ns, entity, id);
     }
 
     @Override
@@ -286,31 +808,70 @@ public class RxJsonPersistenceBridge implements RxJsonPersistence {
         List<String> paths = new ArrayList<>();
         SpecificationElement entityElement = JsonNavigationPath.from("$").toSpecificationElement(specification, entity);
         SpecificationTraversal.depthFirstPreOrderFullTraversal(entityElement, (ancestors, element) -> paths.add(JsonNavigationPath.from(element).serialize()));
-        return persistence.deleteAllEntities(tx, namespace, entity, paths);
+        Completable delete = persistence.deleteAllEntities(unwrap(tx), namespace, entity, paths);
+        if (documentCache == null) {
+            return delete;
+        }
+        return delete
+                .doOnSubscribe(disposable -> {
+                    documentCache.invalidate(namespace, entity);
+                    if (tx instanceof CacheInvalidatingTransaction) {
+                        ((CacheInvalidatingTransaction) tx).written(namespace, entity);
+                    }
+                })
+                .doOnComplete(() -> documentCache.invalidate(namespace, entity));
     }
 
     @Override
     public Completable markDocumentDeleted(Transaction transaction, String ns, String entityName, String
             id, ZonedDateTime version, PersistenceDeletePolicy policy) {
-        return persistence.markDeleted(transaction, ns, entityName, id, version, policy);
+        return invalidating(persistence.markDeleted(unwrap(transaction), ns, entityName, id, version, policy), transaction, ns, entityName, id);
     }
 
     @Override
     public Single<Boolean> hasPrevious(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String
             id) {
-        return readDocuments(tx, snapshot, ns, entityName, Range.lastBefore(1, id)).isEmpty()
-                .map(wasEmpty -> !wasEmpty);
+        if (capabilities.contains(RxPersistenceCapability.KEYSET_PROBES)) {
+            return persistence.hasPrevious(unwrap(tx), snapshot, ns, entityName, id);
+        }
+        return anyLiveDocument(tx, snapshot, ns, entityName, Range.lastBefore(1, id));
     }
 
     @Override
     public Single<Boolean> hasNext(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, String id) {
-        return readDocuments(tx, snapshot, ns, entityName, Range.firstAfter(1, id)).isEmpty()
-                .map(wasEmpty -> !wasEmpty);
+        if (capabilities.contains(RxPersistenceCapability.KEYSET_PROBES)) {
+            return persistence.hasNext(unwrap(tx), snapshot, ns, entityName, id);
+        }
+        return anyLiveDocument(tx, snapshot, ns, entityName, Range.firstAfter(1, id));
+    }
+
+    /**
+     * Checks whether there is a document that is not marked deleted within the after and before bounds of the range,
+     * looking only at the keys and types of fragments and never decoding values. Output from a provider with ordered
+     * output is grouped as it streams and stops at the first live document, other output is reduced to one flag per
+     * document.
+     */
+    Single<Boolean> anyLiveDocument(Transaction tx, ZonedDateTime snapshot, String ns, String entityName, Range<String> range) {
+        Flowable<Fragment> fragments = persistence.readAll(unwrap(tx), snapshot, ns, entityName,
+                providerRange(range, RxPersistenceCapability.READ_ALL_LIMITED))
+                .takeWhile(fragment -> !fragment.isStreamingControl())
+                .filter(fragment -> (!range.hasAfter() || fragment.id().compareTo(range.getAfter()) > 0)
+                        && (!range.hasBefore() || fragment.id().compareTo(range.getBefore()) < 0));
+        if (capabilities.contains(RxPersistenceCapability.READ_ALL_ORDERED)) {
+            return RxGroupByTools.groupByOrdered(fragments, DocumentKey::from)
+                    .concatMapSingle(group -> group.flowable().any(Fragment::deleteMarker))
+                    .any(deleted -> !deleted);
+        }
+        return fragments
+                .collect(() -> new HashMap<DocumentKey, Boolean>(),
+                        (deletedByKey, fragment) -> deletedByKey.merge(DocumentKey.from(fragment), fragment.deleteMarker(), Boolean::logicalOr))
+                .map(deletedByKey -> deletedByKey.containsValue(Boolean.FALSE));
     }
 
     @Override
     public Transaction createTransaction(boolean readOnly) throws PersistenceException {
-        return persistence.createTransaction(readOnly);
+        Transaction tx = persistence.createTransaction(readOnly);
+        return documentCache == null || readOnly ? tx : new CacheInvalidatingTransaction(tx, documentCache);
     }
 
     @Override
@@ -0,0 +1,261 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.internal.queue.SpscArrayQueue;
+import io.reactivex.internal.subscriptions.SubscriptionHelper;
+import io.reactivex.internal.util.BackpressureHelper;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RxMergeJoinTools {
+
+    /**
+     * Intersects sorted streams with a merge join. Each upstream must be strictly ordered by the comparator, i.e.
+     * sorted and without duplicates, and the returned stream emits the items that are in all upstreams, in the same
+     * order.
+     * <p>
+     * The upstreams are consumed in lockstep: an upstream is only advanced past items that are smaller than the
+     * largest current item of all upstreams, so at most a prefetch window of each upstream is buffered. The returned
+     * stream completes as soon as any upstream completes, cancelling the others. Nothing blocks and no threads are
+     * created, items are joined on the thread that signals them or that requests more.
+     *
+     * @param sources    the sorted streams to intersect, at least one.
+     * @param comparator the order of the upstreams.
+     * @param <T>        the type of the items.
+     * @return the items that are in all upstreams.
+     */
+    public static <T> Flowable<T> intersectSorted(List<? extends Flowable<? extends T>> sources, Comparator<? super T> comparator) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required");
+        }
+        return new FlowableIntersectSorted<>(new ArrayList<>(sources), comparator, Flowable.bufferSize());
+    }
+
+    static final class FlowableIntersectSorted<T> extends Flowable<T> {
+        final List<Flowable<? extends T>> sources;
+        final Comparator<? super T> comparator;
+        final int prefetch;
+
+        FlowableIntersectSorted(List<Flowable<? extends T>> sources, Comparator<? super T> comparator, int prefetch) {
+            this.sources = sources;
+            this.comparator = comparator;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        protected void subscribeActual(Subscriber<? super T> s) {
+            JoinCoordinator<T> coordinator = new JoinCoordinator<>(s, sources.size(), comparator, prefetch);
+            s.onSubscribe(coordinator);
+            coordinator.subscribe(sources);
+        }
+    }
+
+    static final class JoinCoordinator<T> extends AtomicInteger implements Subscription {
+        final Subscriber<? super T> downstream;
+        final List<JoinInner<T>> inners = new ArrayList<>();
+        final Comparator<? super T> comparator;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        volatile boolean cancelled;
+
+        JoinCoordinator(Subscriber<? super T> downstream, int n, Comparator<? super T> comparator, int prefetch) {
+            this.downstream = downstream;
+            this.comparator = comparator;
+            for (int i = 0; i < n; i++) {
+                inners.add(new JoinInner<>(this, prefetch));
+            }
+        }
+
+        void subscribe(List<Flowable<? extends T>> sources) {
+            for (int i = 0; i < sources.size() && !cancelled; i++) {
+                sources.get(i).subscribe(inners.get(i));
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelAll();
+                if (getAndIncrement() == 0) {
+                    clearAll();
+                }
+            }
+        }
+
+        void onError(Throwable e) {
+            if (error.compareAndSet(null, e)) {
+                drain();
+            } else {
+                RxJavaPlugins.onError(e);
+            }
+        }
+
+        void cancelAll() {
+            for (JoinInner<T> inner : inners) {
+                inner.cancel();
+            }
+        }
+
+        void clearAll() {
+            for (JoinInner<T> inner : inners) {
+                inner.queue.clear();
+                inner.head = null;
+            }
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (; ; ) {
+                long r = requested.get();
+                long e = 0;
+                for (; ; ) {
+                    if (cancelled) {
+                        clearAll();
+                        return;
+                    }
+                    Throwable ex = error.get();
+                    if (ex != null) {
+                        cancelAll();
+                        clearAll();
+                        downstream.onError(ex);
+                        return;
+                    }
+                    T max = null;
+                    boolean allPresent = true;
+                    for (JoinInner<T> inner : inners) {
+                        if (inner.head == null) {
+                            boolean done = inner.done;
+                            inner.head = inner.queue.poll();
+                            if (inner.head == null) {
+                                if (done) {
+                                    // no more items in this upstream, so there can be no more items in all of them
+                                    cancelled = true;
+                                    cancelAll();
+                                    clearAll();
+                                    downstream.onComplete();
+                                    return;
+                                }
+                                allPresent = false;
+                                continue;
+                            }
+                        }
+                        if (max == null || comparator.compare(inner.head, max) > 0) {
+                            max = inner.head;
+                        }
+                    }
+                    if (!allPresent) {
+                        break;
+                    }
+                    boolean allEqual = true;
+                    for (JoinInner<T> inner : inners) {
+                        if (comparator.compare(inner.head, max) < 0) {
+                            inner.next();
+                            allEqual = false;
+                        }
+                    }
+                    if (!allEqual) {
+                        continue;
+                    }
+                    if (e == r) {
+                        break;
+                    }
+                    for (JoinInner<T> inner : inners) {
+                        inner.next();
+                    }
+                    downstream.onNext(max);
+                    e++;
+                }
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    static final class JoinInner<T> extends AtomicReference<Subscription> implements FlowableSubscriber<T> {
+        final JoinCoordinator<T> parent;
+        final SpscArrayQueue<T> queue;
+        final int prefetch;
+        final int limit;
+        volatile boolean done;
+        // the current item, only accessed by the drain loop
+        T head;
+        int consumed;
+
+        JoinInner(JoinCoordinator<T> parent, int prefetch) {
+            this.parent = parent;
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (SubscriptionHelper.setOnce(this, s)) {
+                s.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (!queue.offer(t)) {
+                SubscriptionHelper.cancel(this);
+                onError(new MissingBackpressureException("Queue is full"));
+                return;
+            }
+            parent.drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            parent.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        /**
+         * Drops the current item and replenishes the upstream once a part of the prefetch window is consumed.
+         */
+        void next() {
+            head = null;
+            if (++consumed == limit) {
+                consumed = 0;
+                get().request(limit);
+            }
+        }
+
+        void cancel() {
+            SubscriptionHelper.cancel(this);
+        }
+    }
+}
@@ -1,18 +1,50 @@
 package io.descoped.lds.api.persistence.reactivex;
 
+import io.descoped.lds.api.json.JsonNavigationPath;
 import io.descoped.lds.api.persistence.PersistenceDeletePolicy;
 import io.descoped.lds.api.persistence.PersistenceException;
 import io.descoped.lds.api.persistence.Transaction;
 import io.descoped.lds.api.persistence.TransactionFactory;
 import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.ValueHasher;
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 public interface RxPersistence {
 
+    /**
+     * Maximum number of concurrent reads of the default {@link #readMany} implementation.
+     */
+    int READ_MANY_CONCURRENCY = 16;
+
+    /**
+     * The optional guarantees this provider makes, see {@link RxPersistenceCapability}. Providers declare none by
+     * default.
+     *
+     * @return the capabilities of this provider.
+     */
+    default Set<RxPersistenceCapability> capabilities() {
+        return EnumSet.noneOf(RxPersistenceCapability.class);
+    }
+
+    /**
+     * The scheme this provider hashes values with when it indexes them for {@link #find}, see {@link ValueHasher}.
+     * Providers that let the scheme be configured must keep using the scheme their index was written with.
+     *
+     * @return {@link ValueHasher#SHA_1} by default.
+     */
+    default ValueHasher valueHasher() {
+        return ValueHasher.SHA_1;
+    }
+
     TransactionFactory transactionFactory() throws PersistenceException;
 
     Transaction createTransaction(boolean readOnly) throws PersistenceException;
@@ -22,6 +54,38 @@ public interface RxPersistence {
             Flowable<Fragment> fragments
     );
 
+    /**
+     * Applies the changes to the value index of documents that have been written with {@link #createOrOverwrite} in
+     * the same transaction. Only called by the bridge when the provider declares
+     * {@link RxPersistenceCapability#INDEX_DELTAS}.
+     * <p>
+     * The delta of a version is computed against the latest version at or before it when it was written, so that an
+     * added value is in the index from that version on, and a removed value up to but not including it. A value is
+     * added and removed at most once per version.
+     * <p>
+     * The default implementation ignores the deltas, as providers without a value index have nothing to update.
+     */
+    default Completable updateIndex(
+            Transaction tx,
+            Flowable<IndexDelta> deltas
+    ) {
+        return Completable.complete();
+    }
+
+    /**
+     * Applies the changes to the reverse-link index of documents that have been written with {@link #createOrOverwrite}
+     * in the same transaction, computed as described for {@link #updateIndex}. Only called by the bridge when the
+     * provider declares {@link RxPersistenceCapability#LINK_INDEX}.
+     * <p>
+     * The default implementation ignores the deltas, as providers without a reverse-link index have nothing to update.
+     */
+    default Completable updateLinks(
+            Transaction tx,
+            Flowable<LinkDelta> deltas
+    ) {
+        return Completable.complete();
+    }
+
     Flowable<Fragment> read(
             Transaction tx,
             ZonedDateTime snapshot,
@@ -30,6 +94,48 @@ public interface RxPersistence {
             String id
     );
 
+    /**
+     * Reads the latest version at the snapshot of a document, restricted to the fragments at or below the given
+     * paths, see {@link PathPrefixFilter}. Delete markers are always included.
+     * <p>
+     * The default implementation reads the whole document with {@link #read} and filters it. Providers that keep
+     * fragments ordered by path should override it with a scan of {@link PathPrefixFilter#scanPrefixes()}.
+     *
+     * @return the fragments of the document under the paths.
+     */
+    default Flowable<Fragment> readPaths(
+            Transaction tx,
+            ZonedDateTime snapshot,
+            String namespace,
+            String entity,
+            String id,
+            Collection<JsonNavigationPath> paths
+    ) {
+        PathPrefixFilter filter = new PathPrefixFilter(paths);
+        return read(tx, snapshot, namespace, entity, id).filter(filter::test);
+    }
+
+    /**
+     * Reads the latest version at the snapshot of each of the given documents in a single call. The fragments of each
+     * document are contiguous, documents are returned in the order of the given ids, and ids that have no document are
+     * skipped. The ids must be distinct.
+     * <p>
+     * The default implementation reads the documents with {@link #read} and at most {@link #READ_MANY_CONCURRENCY}
+     * reads in flight, keeping the order of the ids. Providers that can look up many keys at once should override it.
+     *
+     * @return the fragments of the documents.
+     */
+    default Flowable<Fragment> readMany(
+            Transaction tx,
+            ZonedDateTime snapshot,
+            String namespace,
+            String entity,
+            List<String> ids
+    ) {
+        return Flowable.fromIterable(ids)
+                .concatMapEager(id -> read(tx, snapshot, namespace, entity, id), READ_MANY_CONCURRENCY, Flowable.bufferSize());
+    }
+
     Flowable<Fragment> readVersions(
             Transaction tx,
             String namespace,
@@ -84,6 +190,74 @@ public interface RxPersistence {
             Range<String> range
     );
 
+    /**
+     * Finds the documents with a leaf-node at the index-unaware path of exactly the given type and value. Only called
+     * by the bridge when the provider declares {@link RxPersistenceCapability#FIND_EXACT}.
+     *
+     * @param value the whole value as it is stored in fragments of the type, i.e. all chunks of a string concatenated.
+     * @throws UnsupportedOperationException by the default implementation, providers that declare
+     *                                       {@link RxPersistenceCapability#FIND_EXACT} must override it.
+     */
+    default Flowable<Fragment> findExact(
+            Transaction transaction,
+            ZonedDateTime snapshot,
+            String namespace,
+            String entity,
+            String path,
+            FragmentType type,
+            byte[] value,
+            Range<String> range
+    ) {
+        throw new UnsupportedOperationException("findExact is not supported by this provider");
+    }
+
+    /**
+     * Finds the documents with a leaf-node at the index-unaware path whose value is of the type of the value range and
+     * within it, comparing the {@link io.descoped.lds.api.persistence.streaming.OrderedValueEncoding} key of the whole
+     * value with {@link ValueRange#test(byte[])}. Only called by the bridge when the provider declares
+     * {@link RxPersistenceCapability#FIND_RANGE}.
+     *
+     * @throws UnsupportedOperationException by the default implementation, providers that declare
+     *                                       {@link RxPersistenceCapability#FIND_RANGE} must override it.
+     */
+    default Flowable<Fragment> findRange(
+            Transaction transaction,
+            ZonedDateTime snapshot,
+            String namespace,
+            String entity,
+            String path,
+            ValueRange valueRange,
+            Range<String> range
+    ) {
+        throw new UnsupportedOperationException("findRange is not supported by this provider");
+    }
+
+    /**
+     * Looks up the ids of the documents of the source entity that link to the target document from the index-unaware
+     * path at the snapshot, from the reverse-link index. The ids are distinct and ordered by id, in reverse when the
+     * range is backward, and all bounds and limits of the range are honored. Only called by the bridge when the
+     * provider declares {@link RxPersistenceCapability#LINK_INDEX}.
+     *
+     * @throws UnsupportedOperationException by the default implementation, providers that declare
+     *                                       {@link RxPersistenceCapability#LINK_INDEX} must override it.
+     */
+    default Flowable<String> findSourceIds(
+            Transaction transaction,
+            ZonedDateTime snapshot,
+            String namespace,
+            String targetEntity,
+            String targetId,
+            String sourceEntity,
+            String path,
+            Range<String> range
+    ) {
+        throw new UnsupportedOperationException("findSourceIds is not supported by this provider");
+    }
+
+    /**
+     * Checks whether a document that is not marked deleted at the snapshot has an id before the given id. Only
+     * consulted by the bridge when the provider declares {@link RxPersistenceCapability#KEYSET_PROBES}.
+     */
     Single<Boolean> hasPrevious(
             Transaction tx,
             ZonedDateTime snapshot,
@@ -92,6 +266,10 @@ public interface RxPersistence {
             String id
     );
 
+    /**
+     * Checks whether a document that is not marked deleted at the snapshot has an id after the given id. Only
+     * consulted by the bridge when the provider declares {@link RxPersistenceCapability#KEYSET_PROBES}.
+     */
     Single<Boolean> hasNext(
             Transaction tx,
             ZonedDateTime snapshot,
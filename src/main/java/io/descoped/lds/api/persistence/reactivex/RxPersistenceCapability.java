@@ -0,0 +1,93 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.streaming.Fragment;
+
+/**
+ * Optional guarantees a {@link RxPersistence} provider can declare through {@link RxPersistence#capabilities()}.
+ * Consumers such as {@link RxJsonPersistenceBridge} use them to avoid work that the provider has already done.
+ */
+public enum RxPersistenceCapability {
+
+    /**
+     * {@link RxPersistence#readAll} returns fragments in {@link Fragment#compareTo(Fragment)} order, or in exactly the
+     * reverse of that order when the given range is backward.
+     */
+    READ_ALL_ORDERED,
+
+    /**
+     * {@link RxPersistence#readVersions} returns fragments in {@link Fragment#compareTo(Fragment)} order, or in
+     * exactly the reverse of that order when the given range is backward.
+     */
+    READ_VERSIONS_ORDERED,
+
+    /**
+     * {@link RxPersistence#find} returns fragments in {@link Fragment#compareTo(Fragment)} order, or in exactly the
+     * reverse of that order when the given range is backward.
+     */
+    FIND_ORDERED,
+
+    /**
+     * {@link RxPersistence#readAll} honors the first and last limits of the given range. A limit counts documents,
+     * i.e. groups of fragments with the same namespace, entity, id and version, and documents that are marked deleted
+     * are returned but not counted. The documents within the limit are those first in the direction of the range. The
+     * stream may end with a {@link Fragment#limited()} or {@link Fragment#notLimited()} streaming-control fragment to
+     * report whether documents beyond the limit were left out.
+     */
+    READ_ALL_LIMITED,
+
+    /**
+     * {@link RxPersistence#readVersions} honors the first and last limits of the given range as described for
+     * {@link #READ_ALL_LIMITED}, except that every version counts, including versions that are marked deleted.
+     */
+    READ_VERSIONS_LIMITED,
+
+    /**
+     * {@link RxPersistence#find} honors the first and last limits of the given range as described for
+     * {@link #READ_ALL_LIMITED}, counting only documents that match the value exactly.
+     */
+    FIND_LIMITED,
+
+    /**
+     * {@link RxPersistence#findExact} is supported. It matches the type and the whole value of leaf-nodes exactly, also
+     * for strings that span several fragments, e.g. by indexing the {@link RxPersistence#valueHasher()} hash of such
+     * values. Its results are not filtered further, and {@link #FIND_ORDERED} and {@link #FIND_LIMITED} apply to it as
+     * they do to {@link RxPersistence#find}.
+     */
+    FIND_EXACT,
+
+    /**
+     * {@link RxPersistence#findRange} is supported, and matches exactly as {@link #FIND_EXACT} describes.
+     * {@link #FIND_ORDERED} and {@link #FIND_LIMITED} apply to it as they do to {@link RxPersistence#find}.
+     */
+    FIND_RANGE,
+
+    /**
+     * The value index that {@link RxPersistence#find}, {@link RxPersistence#findExact} and
+     * {@link RxPersistence#findRange} answer from is maintained from the {@link IndexDelta}s given to
+     * {@link RxPersistence#updateIndex}, and not from the fragments given to {@link RxPersistence#createOrOverwrite}.
+     * The deltas of a write are given after its fragments and in the same transaction, and only cover the paths of the
+     * {@link IndexRegistry} of the bridge, which scans documents instead of calling find for other paths. Deletes are
+     * not given as deltas, the provider drops the index entries of the versions and documents it deletes itself.
+     * <p>
+     * A version written before a later version of the document is also given the deltas that the later version now
+     * makes, keyed by the later version. A version can thus be given deltas by more than one write, and the provider
+     * applies the deltas of a value in version order, each stating whether the value is in the index from that
+     * version on.
+     */
+    INDEX_DELTAS,
+
+    /**
+     * {@link RxPersistence#findSourceIds} is supported. The provider keeps a reverse-link index, keyed by target entity
+     * and id, from the {@link LinkDelta}s given to {@link RxPersistence#updateLinks}, which are given after the
+     * fragments of a write and in the same transaction. Deletes are not given as deltas, the provider drops the links
+     * of the versions and documents it deletes itself, and a version that is marked deleted has no links. As with
+     * {@link #INDEX_DELTAS}, writing a version before a later version also gives deltas keyed by the later version.
+     */
+    LINK_INDEX,
+
+    /**
+     * {@link RxPersistence#hasNext} and {@link RxPersistence#hasPrevious} answer from keys only, without reading
+     * document values, and agree with {@link RxPersistence#readAll}: documents marked deleted do not count.
+     */
+    KEYSET_PROBES
+}
@@ -0,0 +1,314 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentCodec;
+import io.descoped.lds.api.persistence.streaming.FragmentDictionary;
+import io.reactivex.Flowable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+public class RxSortTools {
+
+    /**
+     * Approximate heap usage of a fragment not counting its path and value.
+     */
+    static final long FRAGMENT_OVERHEAD_BYTES = 160;
+
+    /**
+     * Maximum number of runs merged at once. Runs are merged in tiers: once this many runs of the same level exist they
+     * are merged into a single run of the next level, so that every fragment is rewritten once per level and the
+     * number of levels grows with the logarithm of the number of spills.
+     */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Sorts the fragments of the upstream while keeping at most (approximately) the given number of bytes of fragments
+     * on the heap. When the budget is exceeded, the buffered fragments are sorted and spilled as a run to a temporary
+     * file. When the upstream completes, the runs are merged back and emitted as a stream. If the upstream fits within
+     * the budget, nothing is written to disk.
+     * <p>
+     * Temporary files are deleted when the returned stream terminates or is cancelled.
+     *
+     * @param upstream          the fragments to sort.
+     * @param comparator        the sort order.
+     * @param memoryBudgetBytes approximate number of bytes of fragments to buffer on the heap before spilling to disk.
+     * @return the sorted fragments.
+     */
+    public static Flowable<Fragment> sorted(Flowable<Fragment> upstream, Comparator<? super Fragment> comparator, long memoryBudgetBytes) {
+        return Flowable.using(
+                () -> new ExternalSort(comparator, memoryBudgetBytes),
+                sort -> upstream
+                        .collect(() -> sort, ExternalSort::add)
+                        .flatMapPublisher(s -> {
+                            Iterator<Fragment> sorted = s.sorted();
+                            return Flowable.fromIterable(() -> sorted);
+                        }),
+                ExternalSort::close
+        );
+    }
+
+    static long estimatedSize(Fragment fragment) {
+        long size = FRAGMENT_OVERHEAD_BYTES;
+        if (fragment.path() != null) {
+            size += 2L * fragment.path().length();
+        }
+        if (fragment.value() != null) {
+            size += fragment.value().length;
+        }
+        return size;
+    }
+
+    static class ExternalSort implements AutoCloseable {
+        final Comparator<? super Fragment> comparator;
+        final long memoryBudgetBytes;
+        final List<Fragment> buffer = new ArrayList<>();
+        final List<Path> runs = new ArrayList<>();
+        final Map<Path, Integer> runLevels = new HashMap<>();
+        final List<RunReader> readers = new ArrayList<>();
+        // shared by the buffered fragments and the readers of all runs, so that sorting and merging compare equal paths
+        // by reference
+        final FragmentDictionary dictionary = new FragmentDictionary();
+        ByteBuffer recordBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long bufferedBytes;
+        long writtenFragments;
+
+        ExternalSort(Comparator<? super Fragment> comparator, long memoryBudgetBytes) {
+            this.comparator = comparator;
+            this.memoryBudgetBytes = memoryBudgetBytes;
+        }
+
+        void add(Fragment fragment) throws IOException {
+            fragment = dictionary.intern(fragment);
+            buffer.add(fragment);
+            bufferedBytes += estimatedSize(fragment);
+            if (bufferedBytes > memoryBudgetBytes) {
+                spill();
+            }
+        }
+
+        void spill() throws IOException {
+            buffer.sort(comparator);
+            Path run = writeRun(buffer.iterator());
+            buffer.clear();
+            bufferedBytes = 0;
+            addRun(run, 0);
+        }
+
+        void addRun(Path run, int level) throws IOException {
+            runs.add(run);
+            runLevels.put(run, level);
+            List<Path> sameLevel = new ArrayList<>();
+            for (Path existing : runs) {
+                if (runLevels.get(existing) == level) {
+                    sameLevel.add(existing);
+                }
+            }
+            if (sameLevel.size() >= MAX_MERGE_WIDTH) {
+                addRun(merge(sameLevel), level + 1);
+            }
+        }
+
+        /**
+         * Merges the runs into a new run and deletes them, bounding the number of open files and read buffers.
+         */
+        Path merge(List<Path> mergedRuns) throws IOException {
+            List<Iterator<Fragment>> iterators = new ArrayList<>();
+            for (Path run : mergedRuns) {
+                iterators.add(openRun(run));
+            }
+            Path merged = writeRun(new MergeIterator(iterators, comparator));
+            closeReaders();
+            for (Path run : mergedRuns) {
+                runs.remove(run);
+                runLevels.remove(run);
+                Files.deleteIfExists(run);
+            }
+            return merged;
+        }
+
+        Iterator<Fragment> sorted() throws IOException {
+            buffer.sort(comparator);
+            if (runs.isEmpty()) {
+                return buffer.iterator();
+            }
+            while (runs.size() >= MAX_MERGE_WIDTH) {
+                // runs of different levels are left, merge the lowest ones so that they can be merged with the buffer
+                List<Path> lowest = new ArrayList<>(runs);
+                lowest.sort(Comparator.comparing(runLevels::get));
+                lowest = lowest.subList(0, MAX_MERGE_WIDTH);
+                int level = runLevels.get(lowest.get(lowest.size() - 1));
+                addRun(merge(new ArrayList<>(lowest)), level + 1);
+            }
+            List<Iterator<Fragment>> iterators = new ArrayList<>();
+            for (Path run : runs) {
+                iterators.add(openRun(run));
+            }
+            iterators.add(buffer.iterator());
+            return new MergeIterator(iterators, comparator);
+        }
+
+        Path writeRun(Iterator<Fragment> fragments) throws IOException {
+            Path run = Files.createTempFile("lds-fragments-", ".run");
+            runs.add(run); // deleted on close, also if writing fails
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+                FragmentCodec.Encoder encoder = new FragmentCodec.Encoder();
+                while (fragments.hasNext()) {
+                    Fragment fragment = fragments.next();
+                    recordBuffer.clear();
+                    while (!encoder.encode(fragment, recordBuffer)) {
+                        recordBuffer = ByteBuffer.allocate(recordBuffer.capacity() * 2);
+                    }
+                    out.writeInt(recordBuffer.position());
+                    out.write(recordBuffer.array(), 0, recordBuffer.position());
+                    writtenFragments++;
+                }
+                out.writeInt(-1);
+            }
+            runs.remove(runs.size() - 1);
+            return run;
+        }
+
+        Iterator<Fragment> openRun(Path run) throws IOException {
+            RunReader reader = new RunReader(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE)), dictionary);
+            readers.add(reader);
+            return reader;
+        }
+
+        void closeReaders() throws IOException {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+            readers.clear();
+        }
+
+        void deleteRuns() throws IOException {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            runLevels.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer.clear();
+            try {
+                closeReaders();
+            } finally {
+                deleteRuns();
+            }
+        }
+    }
+
+    /**
+     * Reads back a run of fragments written with {@link FragmentCodec}, each record preceded by its length and the run
+     * terminated by a length of -1.
+     */
+    static class RunReader implements Iterator<Fragment> {
+        final DataInputStream in;
+        final FragmentCodec.Decoder decoder;
+        ByteBuffer record = ByteBuffer.allocate(256);
+        Fragment next;
+        boolean done;
+
+        RunReader(DataInputStream in, FragmentDictionary dictionary) {
+            this.in = in;
+            this.decoder = new FragmentCodec.Decoder(dictionary);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    int length = in.readInt();
+                    if (length >= 0) {
+                        if (record.capacity() < length) {
+                            record = ByteBuffer.allocate(Math.max(length, 2 * record.capacity()));
+                        }
+                        in.readFully(record.array(), 0, length);
+                        record.clear().limit(length);
+                        next = decoder.decode(record);
+                    } else {
+                        done = true;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Fragment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Fragment fragment = next;
+            next = null;
+            return fragment;
+        }
+    }
+
+    /**
+     * Merges already sorted iterators into one sorted iterator.
+     */
+    static class MergeIterator implements Iterator<Fragment> {
+        final PriorityQueue<Head> heads;
+
+        MergeIterator(List<Iterator<Fragment>> iterators, Comparator<? super Fragment> comparator) {
+            heads = new PriorityQueue<>(Math.max(1, iterators.size()), (h1, h2) -> comparator.compare(h1.fragment, h2.fragment));
+            for (Iterator<Fragment> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Fragment next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Fragment fragment = head.fragment;
+            if (head.iterator.hasNext()) {
+                head.fragment = head.iterator.next();
+                heads.add(head);
+            }
+            return fragment;
+        }
+    }
+
+    static class Head {
+        Fragment fragment;
+        final Iterator<Fragment> iterator;
+
+        Head(Fragment fragment, Iterator<Fragment> iterator) {
+            this.fragment = fragment;
+            this.iterator = iterator;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.streaming.EpochMicros;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Process-wide cache of decoded documents, to be shared by the bridges of a process, see
+ * {@link RxJsonPersistenceBridge#RxJsonPersistenceBridge(RxPersistence, int, long, SnapshotDocumentCache)}. Each
+ * document is cached under its {@link DocumentKey} without version, together with the snapshots it is known to be the
+ * latest version at.
+ * <p>
+ * A document read at a snapshot is the latest version for all snapshots from its version up to that snapshot. A
+ * document read at {@link #LATEST} is the latest version of all, and so for all snapshots from its version on, until
+ * a write through a bridge using this cache invalidates it. This relies on all writes going through such bridges, but
+ * not on clocks: versions may be timestamped later than the time they are written. Transactions created by such a
+ * bridge invalidate what they wrote once more when they commit, and do not use the cache once they have written.
+ * <p>
+ * Jackson trees are mutable, so the cache keeps its own copy of every document it is given, and hands out a new copy
+ * on every hit. Callers own the documents they are given and may change them, such changes are never seen by the cache
+ * or by other readers.
+ * <p>
+ * The cache is bounded by the estimated heap size of the documents. When full, a new document is only admitted if it
+ * has been requested more often than the least recently used document it would evict (TinyLFU admission), so that
+ * one-off reads do not push out frequently read reference data.
+ * <p>
+ * Large caches are split into segments by key, each with its own lock, least-recently-used order and share of the
+ * weight, so that concurrent reads of different documents rarely wait for each other. The frequency sketch is updated
+ * outside of any lock, and documents are copied outside of the locks as well.
+ */
+public class SnapshotDocumentCache {
+
+    /**
+     * Snapshot to read the latest version of a document at, whatever its version. Documents read at this snapshot are
+     * cached for all snapshots from their version on, documents read at other snapshots only up to the snapshot.
+     */
+    public static final ZonedDateTime LATEST = ZonedDateTime.of(9999, 12, 31, 23, 59, 59, 999_999_000, ZoneOffset.UTC);
+
+    /**
+     * Maximum number of independently locked segments, see {@link #MIN_SEGMENT_WEIGHT_BYTES}.
+     */
+    static final int MAX_SEGMENTS = 16;
+
+    /**
+     * The cache is split into as many segments of at least this weight as allowed by {@link #MAX_SEGMENTS}, so that
+     * small caches stay a single segment and can admit documents of up to their whole weight.
+     */
+    static final long MIN_SEGMENT_WEIGHT_BYTES = 1 << 20;
+
+    final long maximumWeightBytes;
+    final Segment[] segments;
+    final FrequencySketch sketch;
+
+    /**
+     * Incremented on every invalidation, reads that started before an invalidation are not cached as they may have
+     * read data that is no longer current.
+     */
+    final AtomicLong generation = new AtomicLong();
+
+    final AtomicLong hitCount = new AtomicLong();
+    final AtomicLong missCount = new AtomicLong();
+    final AtomicLong evictionCount = new AtomicLong();
+    final AtomicLong rejectionCount = new AtomicLong();
+
+    /**
+     * @param maximumWeightBytes approximate maximum number of bytes of documents to keep on the heap.
+     */
+    public SnapshotDocumentCache(long maximumWeightBytes) {
+        this.maximumWeightBytes = maximumWeightBytes;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1 << 10, maximumWeightBytes >> 10)));
+        int segmentCount = (int) Math.min(MAX_SEGMENTS, Long.highestOneBit(Math.max(1, maximumWeightBytes / MIN_SEGMENT_WEIGHT_BYTES)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maximumWeightBytes / segmentCount);
+        }
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the number of read documents that were not admitted because the cache was full of more frequently read
+     * documents.
+     */
+    public long rejectionCount() {
+        return rejectionCount.get();
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} with the result of a read started now.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    Segment segment(DocumentKey key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * @return a copy of the latest version of the document at the snapshot, or null if it is not known.
+     */
+    JsonDocument get(String namespace, String entity, String id, ZonedDateTime snapshot) {
+        DocumentKey key = new DocumentKey(namespace, entity, id, EpochMicros.NONE);
+        sketch.increment(key.hashCode());
+        JsonDocument document = segment(key).get(key, EpochMicros.of(snapshot));
+        if (document != null) {
+            hitCount.incrementAndGet();
+            return copy(document);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a copy of a document read at a snapshot, unless the cache was invalidated since the read started.
+     *
+     * @param document   the document read.
+     * @param snapshot   the snapshot the document was read at.
+     * @param open       whether the document is also the latest version for all snapshots after the snapshot, i.e.
+     *                   it was read at {@link #LATEST}.
+     * @param generation the {@link #generation()} when the read started.
+     */
+    void put(JsonDocument document, ZonedDateTime snapshot, boolean open, long generation) {
+        if (generation != this.generation.get()) {
+            return;
+        }
+        DocumentKey key = new DocumentKey(document.key().namespace(), document.key().entity(), document.key().id(), EpochMicros.NONE);
+        long validThrough = open ? Long.MAX_VALUE : EpochMicros.of(snapshot);
+        segment(key).put(key, document, validThrough, generation);
+    }
+
+    void invalidate(String namespace, String entity, String id) {
+        generation.incrementAndGet();
+        DocumentKey key = new DocumentKey(namespace, entity, id, EpochMicros.NONE);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    void invalidate(String namespace, String entity) {
+        generation.incrementAndGet();
+        // one segment at a time, so that reads of other segments are not held up by the scan
+        for (Segment segment : segments) {
+            segment.removeIf(key -> namespace.equals(key.namespace()) && entity.equals(key.entity()));
+        }
+    }
+
+    static JsonDocument copy(JsonDocument document) {
+        JsonNode jackson = document.deleted() ? null : document.jackson().deepCopy();
+        return new JsonDocument(document.key(), jackson);
+    }
+
+    /**
+     * Part of the cache with its own lock, least-recently-used order and share of the maximum weight.
+     */
+    class Segment {
+        final long maximumWeightBytes;
+        final LinkedHashMap<DocumentKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long weight;
+
+        Segment(long maximumWeightBytes) {
+            this.maximumWeightBytes = maximumWeightBytes;
+        }
+
+        synchronized JsonDocument get(DocumentKey key, long snapshotVersion) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.document.key().version() <= snapshotVersion && snapshotVersion <= entry.validThrough) {
+                return entry.document;
+            }
+            return null;
+        }
+
+        void put(DocumentKey key, JsonDocument document, long validThrough, long generation) {
+            long documentWeight = estimatedWeight(document);
+            JsonDocument copy = documentWeight > maximumWeightBytes ? null : copy(document);
+            synchronized (this) {
+                // the generation is checked again under the lock, as invalidations of the key take it too
+                if (generation != SnapshotDocumentCache.this.generation.get()) {
+                    return;
+                }
+                Entry existing = entries.get(key);
+                if (existing != null && existing.document.key().version() == document.key().version()) {
+                    existing.validThrough = Math.max(existing.validThrough, validThrough);
+                    return;
+                }
+                if (copy == null) {
+                    rejectionCount.incrementAndGet();
+                    return;
+                }
+                if (existing != null) {
+                    remove(key);
+                }
+                int frequency = sketch.frequency(key.hashCode());
+                Iterator<Map.Entry<DocumentKey, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+                long freed = 0;
+                while (weight - freed + documentWeight > maximumWeightBytes) {
+                    Map.Entry<DocumentKey, Entry> victim = leastRecentlyUsed.next();
+                    if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                        rejectionCount.incrementAndGet();
+                        return;
+                    }
+                    freed += victim.getValue().weight;
+                }
+                while (weight + documentWeight > maximumWeightBytes) {
+                    Iterator<Map.Entry<DocumentKey, Entry>> eldest = entries.entrySet().iterator();
+                    weight -= eldest.next().getValue().weight;
+                    eldest.remove();
+                    evictionCount.incrementAndGet();
+                }
+                entries.put(key, new Entry(copy, validThrough, documentWeight));
+                weight += documentWeight;
+            }
+        }
+
+        synchronized void removeIf(Predicate<DocumentKey> predicate) {
+            Iterator<Map.Entry<DocumentKey, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<DocumentKey, Entry> entry = iterator.next();
+                if (predicate.test(entry.getKey())) {
+                    weight -= entry.getValue().weight;
+                    iterator.remove();
+                }
+            }
+        }
+
+        private void remove(DocumentKey key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+    }
+
+    /**
+     * Rough estimate of the heap used by a decoded document.
+     */
+    static long estimatedWeight(JsonDocument document) {
+        return 128 + estimatedWeight(document.jackson());
+    }
+
+    static long estimatedWeight(JsonNode node) {
+        if (node.isContainerNode()) {
+            long size = 48;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                size += 64 + 2L * field.getKey().length() + estimatedWeight(field.getValue());
+            }
+            for (int i = 0; node.isArray() && i < node.size(); i++) {
+                size += 8 + estimatedWeight(node.get(i));
+            }
+            return size;
+        }
+        if (node.isTextual()) {
+            return 56 + 2L * node.textValue().length();
+        }
+        return 24;
+    }
+
+    static class Entry {
+        final JsonDocument document;
+        long validThrough;
+        final long weight;
+
+        Entry(JsonDocument document, long validThrough, long weight) {
+            this.document = document;
+            this.validThrough = validThrough;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of how often keys are requested, with 4-bit counters that are halved periodically so that the
+     * frequencies follow recent usage.
+     * <p>
+     * Updated from all threads without synchronization, so that requests do not contend on it. Racing updates may be
+     * lost or a halving may be repeated, which only makes the frequencies a little less accurate.
+     */
+    static class FrequencySketch {
+        static final int DEPTH = 4;
+        static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        final byte[][] counters;
+        final int mask;
+        final int sampleSize;
+        int additions;
+
+        FrequencySketch(int width) {
+            int powerOfTwo = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+            counters = new byte[DEPTH][powerOfTwo];
+            mask = powerOfTwo - 1;
+            sampleSize = 10 * powerOfTwo;
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < 15) {
+                    counters[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        int index(int hash, int i) {
+            int h = (hash ^ (hash >>> 16)) * SEEDS[i];
+            return (h ^ (h >>> 15)) & mask;
+        }
+
+        void reset() {
+            for (byte[] row : counters) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.OrderedValueEncoding;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * A range of NUMERIC or STRING leaf values to find documents by, with bounds that are either inclusive or exclusive
+ * and that may be left out. The bounds are also available as {@link OrderedValueEncoding} keys, so that providers can
+ * answer a range or prefix with a single index range scan.
+ */
+public class ValueRange {
+
+    private final FragmentType type;
+    private final Object lower;
+    private final Object upper;
+    private final byte[] lowerKey;
+    private final boolean lowerInclusive;
+    private final byte[] upperKey;
+    private final boolean upperInclusive;
+    private final String prefix;
+
+    private ValueRange(FragmentType type, Object lower, byte[] lowerKey, boolean lowerInclusive, Object upper,
+                       byte[] upperKey, boolean upperInclusive, String prefix) {
+        this.type = type;
+        this.lower = lower;
+        this.lowerKey = lowerKey;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperKey = upperKey;
+        this.upperInclusive = upperInclusive;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param lower the lower bound, or null for no lower bound.
+     * @param upper the upper bound, or null for no upper bound.
+     */
+    public static ValueRange between(Number lower, boolean lowerInclusive, Number upper, boolean upperInclusive) {
+        return new ValueRange(FragmentType.NUMERIC,
+                lower, lower == null ? null : OrderedValueEncoding.encodeNumber(lower), lowerInclusive,
+                upper, upper == null ? null : OrderedValueEncoding.encodeNumber(upper), upperInclusive, null);
+    }
+
+    /**
+     * @param lower the lower bound, or null for no lower bound.
+     * @param upper the upper bound, or null for no upper bound.
+     */
+    public static ValueRange between(String lower, boolean lowerInclusive, String upper, boolean upperInclusive) {
+        return new ValueRange(FragmentType.STRING,
+                lower, lower == null ? null : OrderedValueEncoding.encodeString(lower), lowerInclusive,
+                upper, upper == null ? null : OrderedValueEncoding.encodeString(upper), upperInclusive, null);
+    }
+
+    public static ValueRange greaterThan(Number value) {
+        return between(value, false, null, false);
+    }
+
+    public static ValueRange atLeast(Number value) {
+        return between(value, true, null, false);
+    }
+
+    public static ValueRange lessThan(Number value) {
+        return between(null, false, value, false);
+    }
+
+    public static ValueRange atMost(Number value) {
+        return between(null, false, value, true);
+    }
+
+    public static ValueRange greaterThan(String value) {
+        return between(value, false, null, false);
+    }
+
+    public static ValueRange atLeast(String value) {
+        return between(value, true, null, false);
+    }
+
+    public static ValueRange lessThan(String value) {
+        return between(null, false, value, false);
+    }
+
+    public static ValueRange atMost(String value) {
+        return between(null, false, value, true);
+    }
+
+    /**
+     * @return the range of strings that start with the prefix.
+     */
+    public static ValueRange prefix(String prefix) {
+        byte[] lowerKey = OrderedValueEncoding.encodeString(prefix);
+        return new ValueRange(FragmentType.STRING, prefix, lowerKey, true, null,
+                OrderedValueEncoding.prefixEnd(lowerKey), false, prefix);
+    }
+
+    /**
+     * @return NUMERIC or STRING, only values of this type are in the range.
+     */
+    public FragmentType type() {
+        return type;
+    }
+
+    /**
+     * @return the key of the lower bound, or null if there is no lower bound.
+     */
+    public byte[] lowerKey() {
+        return lowerKey;
+    }
+
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    /**
+     * @return the key of the upper bound, or null if there is no upper bound.
+     */
+    public byte[] upperKey() {
+        return upperKey;
+    }
+
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    /**
+     * @return the prefix if this is a prefix range, otherwise null.
+     */
+    public String prefix() {
+        return prefix;
+    }
+
+    /**
+     * @param key the {@link OrderedValueEncoding} key of a value of the {@link #type()} of this range.
+     * @return whether the value is in this range.
+     */
+    public boolean test(byte[] key) {
+        if (lowerKey != null) {
+            int cmp = Arrays.compareUnsigned(key, lowerKey);
+            if (cmp < 0 || (cmp == 0 && !lowerInclusive)) {
+                return false;
+            }
+        }
+        if (upperKey != null) {
+            int cmp = Arrays.compareUnsigned(key, upperKey);
+            if (cmp > 0 || (cmp == 0 && !upperInclusive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the json value is of the type of this range and in the range.
+     */
+    public boolean matches(JsonNode node) {
+        if (node == null) {
+            return false;
+        }
+        if (type == FragmentType.NUMERIC) {
+            return node.isNumber() && test(OrderedValueEncoding.encodeNumber(node.numberValue()));
+        }
+        return node.isTextual() && test(OrderedValueEncoding.encodeString(node.textValue()));
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", ValueRange.class.getSimpleName() + "[", "]");
+        if (prefix != null) {
+            joiner.add("prefix='" + prefix + "'");
+        } else {
+            joiner.add("range=" + (lowerInclusive ? "[" : "(") + (lower == null ? "..." : lower) + ":"
+                    + (upper == null ? "..." : upper) + (upperInclusive ? "]" : ")"));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Versions are kept internally as the number of microseconds since the epoch in a primitive long, and only converted
+ * to and from {@link ZonedDateTime} at the edges of the API. Sub-microsecond precision and time-zones are not kept,
+ * converted versions are always in UTC.
+ */
+public final class EpochMicros {
+
+    /**
+     * Version of fragments and keys without a timestamp, e.g. streaming-control fragments.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private EpochMicros() {
+    }
+
+    /**
+     * @return the version of the timestamp, or {@link #NONE} if the timestamp is null.
+     */
+    public static long of(ZonedDateTime timestamp) {
+        if (timestamp == null) {
+            return NONE;
+        }
+        return of(timestamp.toInstant());
+    }
+
+    public static long of(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+    }
+
+    /**
+     * @return the version as a timestamp in UTC, or null if the version is {@link #NONE}.
+     */
+    public static ZonedDateTime toZonedDateTime(long epochMicros) {
+        if (epochMicros == NONE) {
+            return null;
+        }
+        return ZonedDateTime.ofInstant(toInstant(epochMicros), ZoneOffset.UTC);
+    }
+
+    public static Instant toInstant(long epochMicros) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000L), Math.floorMod(epochMicros, 1_000_000L) * 1000);
+    }
+}
@@ -1,7 +1,5 @@
 package io.descoped.lds.api.persistence.streaming;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -17,6 +15,20 @@ public class Fragment implements Comparable<Fragment> {
     private final static Pattern arrayIndexPattern = Pattern.compile("\\[([0-9]*)\\]");
     private final static Pattern noIndexPattern = Pattern.compile("\\[\\]");
 
+    /**
+     * @return a streaming-control fragment that ends a stream that was limited, i.e. more results were available.
+     */
+    public static Fragment limited() {
+        return new Fragment(true, LIMITED_CODE, null, null, null, null, null, null, 0, null);
+    }
+
+    /**
+     * @return a streaming-control fragment that ends a stream that was not limited, i.e. all results were streamed.
+     */
+    public static Fragment notLimited() {
+        return new Fragment(true, NOT_LIMITED_CODE, null, null, null, null, null, null, 0, null);
+    }
+
     public static String computeIndexUnawarePath(String path, List<Integer> indices) {
         StringBuilder sb = new StringBuilder();
         Matcher m = arrayIndexPattern.matcher(path);
@@ -51,12 +63,11 @@ public class Fragment implements Comparable<Fragment> {
         return sb.toString();
     }
 
+    /**
+     * @return the {@link ValueHasher#SHA_1} hash of the value.
+     */
     public static byte[] hashOf(byte[] value) {
-        try {
-            return MessageDigest.getInstance("SHA-1").digest(value);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        return ValueHasher.SHA_1.hash(value);
     }
 
     private final boolean streamingControl;
@@ -65,36 +76,64 @@ public class Fragment implements Comparable<Fragment> {
     private final String namespace;
     private final String entity;
     private final String id;
-    private final ZonedDateTime timestamp;
+    private final long version;
     private final String path;
     private final FragmentType fragmentType;
     private final long offset;
     private final byte[] value;
 
+    private final FragmentDictionary dictionary;
+    private final int pathSymbol;
+
     public Fragment(String namespace, String entity, String id, ZonedDateTime timestamp, String path, FragmentType fragmentType, final long offset, byte[] value) {
-        this.streamingControl = false;
-        this.controlCode = 0;
+        this(false, (short) 0, namespace, entity, id, EpochMicros.of(timestamp), path, fragmentType, offset, value);
+    }
+
+    public Fragment(String namespace, String entity, String id, long version, String path, FragmentType fragmentType, final long offset, byte[] value) {
+        this(false, (short) 0, namespace, entity, id, version, path, fragmentType, offset, value);
+    }
+
+    public Fragment(boolean streamingControl, short controlCode, String namespace, String entity, String id, ZonedDateTime timestamp, String path, FragmentType fragmentType, final long offset, byte[] value) {
+        this(streamingControl, controlCode, namespace, entity, id, EpochMicros.of(timestamp), path, fragmentType, offset, value);
+    }
+
+    /**
+     * @param version the version in microseconds since the epoch, see {@link EpochMicros}.
+     */
+    public Fragment(boolean streamingControl, short controlCode, String namespace, String entity, String id, long version, String path, FragmentType fragmentType, final long offset, byte[] value) {
+        this.streamingControl = streamingControl;
+        this.controlCode = controlCode;
         this.namespace = namespace;
         this.entity = entity;
         this.id = id;
-        this.timestamp = timestamp;
+        this.version = version;
         this.path = path;
         this.fragmentType = fragmentType;
         this.offset = offset;
         this.value = value;
+        this.dictionary = null;
+        this.pathSymbol = -1;
     }
 
-    public Fragment(boolean streamingControl, short controlCode, String namespace, String entity, String id, ZonedDateTime timestamp, String path, FragmentType fragmentType, final long offset, byte[] value) {
-        this.streamingControl = streamingControl;
-        this.controlCode = controlCode;
-        this.namespace = namespace;
-        this.entity = entity;
+    /**
+     * Creates a fragment that shares its namespace, entity and path with the other fragments created with the same
+     * dictionary.
+     *
+     * @param version the version in microseconds since the epoch, see {@link EpochMicros}.
+     */
+    public Fragment(FragmentDictionary dictionary, String namespace, String entity, String id, long version, String path, FragmentType fragmentType, final long offset, byte[] value) {
+        this.streamingControl = false;
+        this.controlCode = 0;
+        this.namespace = dictionary.intern(namespace);
+        this.entity = dictionary.intern(entity);
         this.id = id;
-        this.timestamp = timestamp;
-        this.path = path;
+        this.version = version;
+        this.pathSymbol = dictionary.symbol(path);
+        this.path = dictionary.string(pathSymbol);
         this.fragmentType = fragmentType;
         this.offset = offset;
         this.value = value;
+        this.dictionary = dictionary;
     }
 
     /**
@@ -132,6 +171,13 @@ public class Fragment implements Comparable<Fragment> {
         return controlCode == NOT_LIMITED_CODE;
     }
 
+    /**
+     * @return the streaming-control code, only meaningful if this is a streaming-control fragment.
+     */
+    public short controlCode() {
+        return controlCode;
+    }
+
     public boolean samePathAs(Fragment o) {
         if (this == o) return true;
         if (o == null) return false;
@@ -139,8 +185,15 @@ public class Fragment implements Comparable<Fragment> {
         return Objects.equals(namespace, fragment.namespace) &&
                 Objects.equals(entity, fragment.entity) &&
                 Objects.equals(id, fragment.id) &&
-                Objects.equals(timestamp, fragment.timestamp) &&
-                Objects.equals(path, fragment.path);
+                version == fragment.version &&
+                samePath(fragment);
+    }
+
+    private boolean samePath(Fragment o) {
+        if (dictionary != null && dictionary == o.dictionary) {
+            return pathSymbol == o.pathSymbol;
+        }
+        return Objects.equals(path, o.path);
     }
 
     public String namespace() {
@@ -155,14 +208,38 @@ public class Fragment implements Comparable<Fragment> {
         return id;
     }
 
+    /**
+     * @return the version as a timestamp in UTC, or null if this fragment has no version.
+     */
     public ZonedDateTime timestamp() {
-        return timestamp;
+        return EpochMicros.toZonedDateTime(version);
+    }
+
+    /**
+     * @return the version in microseconds since the epoch, or {@link EpochMicros#NONE} if this fragment has no version.
+     */
+    public long version() {
+        return version;
     }
 
     public String path() {
         return path;
     }
 
+    /**
+     * @return the dictionary this fragment was created with, or null if it was not created with a dictionary.
+     */
+    public FragmentDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the symbol of the path in the {@link #dictionary()}, or -1 if this fragment has no dictionary or no path.
+     */
+    public int pathSymbol() {
+        return pathSymbol;
+    }
+
     public FragmentType fragmentType() {
         return fragmentType;
     }
@@ -183,13 +260,20 @@ public class Fragment implements Comparable<Fragment> {
         return hashOf(value);
     }
 
+    /**
+     * @return the value hashed with the given scheme, for use as an index key.
+     */
+    public byte[] truncatedValue(ValueHasher hasher) {
+        return hasher.hash(value);
+    }
+
     @Override
     public String toString() {
         return "Fragment{" +
                 "namespace='" + namespace + '\'' +
                 ", entity='" + entity + '\'' +
                 ", id='" + id + '\'' +
-                ", timestamp=" + timestamp +
+                ", timestamp=" + timestamp() +
                 ", path='" + path + '\'' +
                 ", fragmentType=" + fragmentType +
                 ", offset=" + offset +
@@ -203,62 +287,26 @@ public class Fragment implements Comparable<Fragment> {
         if (o == null || getClass() != o.getClass()) return false;
         Fragment fragment = (Fragment) o;
         return offset == fragment.offset &&
+                version == fragment.version &&
                 Objects.equals(namespace, fragment.namespace) &&
                 Objects.equals(entity, fragment.entity) &&
                 Objects.equals(id, fragment.id) &&
-                Objects.equals(timestamp, fragment.timestamp) &&
-                Objects.equals(path, fragment.path) &&
+                samePath(fragment) &&
                 Arrays.equals(value, fragment.value);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(namespace, entity, id, timestamp, path, offset);
+        int result = Objects.hash(namespace, entity, id, version, path, offset);
         result = 31 * result + Arrays.hashCode(value);
         return result;
     }
 
+    /**
+     * Orders fragments as {@link FragmentComparators#FORWARD}.
+     */
     @Override
     public int compareTo(Fragment o) {
-        if (this == o) {
-            return 0;
-        }
-        if (streamingControl && o.streamingControl) {
-            return controlCode - o.controlCode;
-        } else if (streamingControl) {
-            return Integer.MAX_VALUE;
-        } else if (o.streamingControl) {
-            return Integer.MIN_VALUE;
-        }
-        int cmp;
-        cmp = namespace.compareTo(o.namespace);
-        if (cmp != 0) {
-            return cmp;
-        }
-        cmp = entity.compareTo(o.entity);
-        if (cmp != 0) {
-            return cmp;
-        }
-        cmp = id.compareTo(o.id);
-        if (cmp != 0) {
-            return cmp;
-        }
-        cmp = timestamp.compareTo(o.timestamp);
-        if (cmp != 0) {
-            return cmp;
-        }
-        cmp = path.compareTo(o.path);
-        if (cmp != 0) {
-            return cmp;
-        }
-        cmp = fragmentType.compareTo(o.fragmentType);
-        if (cmp != 0) {
-            return cmp;
-        }
-        long l = offset - o.offset;
-        if (l != 0) {
-            return (int) l;
-        }
-        return Arrays.compare(value, o.value);
+        return FragmentComparators.FORWARD.compare(this, o);
     }
 }
@@ -0,0 +1,374 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary layout of a sequence of fragments, for providers to store and ship fragments in. Each fragment is
+ * encoded relative to the one before it in the same sequence, so sequences in {@link Fragment#compareTo(Fragment)}
+ * order encode best:
+ * <ul>
+ * <li>a flags byte, telling which of namespace, entity, id and version are the same as in the previous fragment,
+ * which are then left out,</li>
+ * <li>namespace, entity and id as a varint length and UTF-8 bytes,</li>
+ * <li>the version as a zig-zag varint of microseconds since the epoch, see {@link EpochMicros},</li>
+ * <li>the path as the varint length of the prefix shared with the previous path, followed by the varint length and
+ * UTF-8 bytes of the rest,</li>
+ * <li>the {@link FragmentType} type-code byte, the offset as a varint, and the value as a varint length and the
+ * bytes.</li>
+ * </ul>
+ * Streaming-control fragments are encoded as the flags byte and the control code only. Missing (null) fields are
+ * encoded as length zero, with the lengths of present fields stored plus one.
+ * <p>
+ * A sequence must be decoded from its first fragment with a {@link Decoder} in the same
+ * order it was encoded with an {@link Encoder}.
+ */
+public class FragmentCodec {
+
+    static final int CONTROL = 0x01;
+    static final int SAME_NAMESPACE = 0x02;
+    static final int SAME_ENTITY = 0x04;
+    static final int SAME_ID = 0x08;
+    static final int SAME_VERSION = 0x10;
+    static final int NO_VERSION = 0x20;
+
+    static final byte NO_TYPE = (byte) 0xFF;
+
+    /**
+     * Encodes fragments directly into byte buffers, keeping the previous fragment to encode the next one against.
+     */
+    public static class Encoder {
+        private Fragment previous;
+        private byte[] previousPath = new byte[0];
+
+        /**
+         * Encodes the fragment at the position of the buffer.
+         *
+         * @return true if the fragment was encoded, or false if it did not fit in the remaining space of the buffer, in
+         * which case neither the buffer position nor the state of this encoder has changed.
+         */
+        public boolean encode(Fragment fragment, ByteBuffer buffer) {
+            int start = buffer.position();
+            try {
+                byte[] path = doEncode(fragment, buffer);
+                previous = fragment;
+                if (path != null) {
+                    previousPath = path;
+                }
+                return true;
+            } catch (BufferOverflowException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+
+        /**
+         * @return the encoded bytes of the fragment.
+         */
+        public byte[] encode(Fragment fragment) {
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            while (!encode(fragment, buffer)) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private byte[] doEncode(Fragment fragment, ByteBuffer buffer) {
+            if (fragment.isStreamingControl()) {
+                buffer.put((byte) CONTROL);
+                writeVarLong(buffer, fragment.controlCode());
+                return null;
+            }
+            Fragment prev = previous != null && !previous.isStreamingControl() ? previous : null;
+            long version = fragment.version();
+            int flags = 0;
+            if (prev != null && equal(prev.namespace(), fragment.namespace())) {
+                flags |= SAME_NAMESPACE;
+            }
+            if (prev != null && equal(prev.entity(), fragment.entity())) {
+                flags |= SAME_ENTITY;
+            }
+            if (prev != null && equal(prev.id(), fragment.id())) {
+                flags |= SAME_ID;
+            }
+            if (version == EpochMicros.NONE) {
+                flags |= NO_VERSION;
+            } else if (prev != null && version == prev.version()) {
+                flags |= SAME_VERSION;
+            }
+            buffer.put((byte) flags);
+            if ((flags & SAME_NAMESPACE) == 0) {
+                writeString(buffer, fragment.namespace());
+            }
+            if ((flags & SAME_ENTITY) == 0) {
+                writeString(buffer, fragment.entity());
+            }
+            if ((flags & SAME_ID) == 0) {
+                writeString(buffer, fragment.id());
+            }
+            if ((flags & (NO_VERSION | SAME_VERSION)) == 0) {
+                writeVarLong(buffer, zigZag(version));
+            }
+            byte[] path = null;
+            if (fragment.path() == null) {
+                writeVarLong(buffer, 0);
+                writeVarLong(buffer, 0);
+            } else {
+                path = prev != null && fragment.path().equals(prev.path()) ? previousPath : fragment.path().getBytes(StandardCharsets.UTF_8);
+                int shared = sharedPrefixLength(previousPath, path);
+                writeVarLong(buffer, shared);
+                writeVarLong(buffer, path.length - shared + 1);
+                buffer.put(path, shared, path.length - shared);
+            }
+            buffer.put(fragment.fragmentType() == null ? NO_TYPE : fragment.fragmentType().getTypeCode());
+            writeVarLong(buffer, fragment.offset());
+            writeBytes(buffer, fragment.value());
+            return path;
+        }
+    }
+
+    /**
+     * Decodes fragments directly from byte buffers, keeping the previous fragment to decode the next one against.
+     * Namespaces, entities and paths are shared through a {@link FragmentDictionary}.
+     * <p>
+     * {@link #decode(ByteBuffer)} returns each fragment as a {@link Fragment}, which owns a copy of its value.
+     * {@link #decodeView(ByteBuffer)} copies nothing but the strings that differ from the previous fragment: the fields
+     * of the fragment are read from this decoder instead, and its value is a view of the buffer. Consumers that only look
+     * at keys, paths and types, or that compare or decode values in place, should use the view. A path that differs
+     * from the previous one is still built as a new string before it is interned.
+     */
+    public static class Decoder {
+        private final FragmentDictionary dictionary;
+        private byte[] previousPath = new byte[0];
+
+        // the last decoded fragment
+        private boolean streamingControl = true;
+        private short controlCode;
+        private String namespace;
+        private String entity;
+        private String id;
+        private long version = EpochMicros.NONE;
+        private String path;
+        private FragmentType fragmentType;
+        private long offset;
+        private ByteBuffer value;
+
+        public Decoder() {
+            this(new FragmentDictionary());
+        }
+
+        /**
+         * @param dictionary the dictionary to share strings through, decoders of sequences that are compared with
+         *                   each other should share the same dictionary.
+         */
+        public Decoder(FragmentDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Decodes the fragment at the position of the buffer, and advances the position past it.
+         */
+        public Fragment decode(ByteBuffer buffer) {
+            decodeView(buffer);
+            if (streamingControl) {
+                return new Fragment(true, controlCode, null, null, null, EpochMicros.NONE, null, null, 0, null);
+            }
+            byte[] bytes = null;
+            if (value != null) {
+                bytes = new byte[value.remaining()];
+                value.duplicate().get(bytes);
+            }
+            return new Fragment(dictionary, namespace, entity, id, version, path, fragmentType, offset, bytes);
+        }
+
+        /**
+         * Decodes the fragment at the position of the buffer without copying its value, and advances the position past
+         * it. The fields of the fragment are available from this decoder until the next fragment is decoded.
+         */
+        public void decodeView(ByteBuffer buffer) {
+            int flags = buffer.get() & 0xFF;
+            if ((flags & CONTROL) != 0) {
+                controlCode = (short) readVarLong(buffer);
+                streamingControl = true;
+                namespace = null;
+                entity = null;
+                id = null;
+                version = EpochMicros.NONE;
+                path = null;
+                fragmentType = null;
+                offset = 0;
+                value = null;
+                return;
+            }
+            boolean afterControl = streamingControl;
+            streamingControl = false;
+            controlCode = 0;
+            if ((flags & SAME_NAMESPACE) == 0) {
+                namespace = dictionary.intern(readString(buffer));
+            }
+            if ((flags & SAME_ENTITY) == 0) {
+                entity = dictionary.intern(readString(buffer));
+            }
+            if ((flags & SAME_ID) == 0) {
+                id = readString(buffer);
+            }
+            if ((flags & NO_VERSION) != 0) {
+                version = EpochMicros.NONE;
+            } else if ((flags & SAME_VERSION) == 0) {
+                version = unZigZag(readVarLong(buffer));
+            }
+            int shared = (int) readVarLong(buffer);
+            int suffixLength = (int) readVarLong(buffer) - 1;
+            if (suffixLength < 0) {
+                path = null;
+            } else if (suffixLength > 0 || shared != previousPath.length || afterControl || path == null) {
+                byte[] pathBytes = Arrays.copyOf(previousPath, shared + suffixLength);
+                buffer.get(pathBytes, shared, suffixLength);
+                path = dictionary.intern(new String(pathBytes, StandardCharsets.UTF_8));
+                previousPath = pathBytes;
+            }
+            byte typeCode = buffer.get();
+            fragmentType = typeCode == NO_TYPE ? null : FragmentType.fromTypeCode(typeCode);
+            offset = readVarLong(buffer);
+            value = readSlice(buffer);
+        }
+
+        public boolean isStreamingControl() {
+            return streamingControl;
+        }
+
+        public short controlCode() {
+            return controlCode;
+        }
+
+        public String namespace() {
+            return namespace;
+        }
+
+        public String entity() {
+            return entity;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * @return the version in microseconds since the epoch, see {@link EpochMicros}.
+         */
+        public long version() {
+            return version;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public FragmentType fragmentType() {
+            return fragmentType;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * @return a read-only view of the value in the decoded buffer, or null if the fragment has no value. The view is
+         * only valid as long as the content of the buffer is not changed.
+         */
+        public ByteBuffer value() {
+            return value;
+        }
+    }
+
+    static boolean equal(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    static int sharedPrefixLength(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static void writeString(ByteBuffer buffer, String value) {
+        writeBytes(buffer, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = (int) readVarLong(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    static void writeBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            writeVarLong(buffer, 0);
+            return;
+        }
+        writeVarLong(buffer, value.length + 1L);
+        buffer.put(value);
+    }
+
+    static ByteBuffer readSlice(ByteBuffer buffer) {
+        int length = (int) readVarLong(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer slice = buffer.slice().asReadOnlyBuffer();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+}
@@ -0,0 +1,157 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Orderings of fragments. All of them order streaming-control fragments last, by control code, and only ever return
+ * -1, 0 or 1 so that they can safely be negated or reversed.
+ */
+public final class FragmentComparators {
+
+    /**
+     * Document order, the same as {@link Fragment#compareTo(Fragment)}: namespace, entity, id, version, path, type,
+     * offset and value.
+     */
+    public static final Comparator<Fragment> FORWARD = new Forward();
+
+    /**
+     * Orders documents in reverse, but keeps the fragments of each document in forward order so that the fragments of
+     * each path stay ordered by offset.
+     */
+    public static final Comparator<Fragment> REVERSE_DOCUMENTS = new ReverseDocuments();
+
+    /**
+     * Document order without comparing values, for fragments that are known to be unique by path and offset.
+     */
+    public static final Comparator<Fragment> KEY = new Key();
+
+    private FragmentComparators() {
+    }
+
+    /**
+     * Compares streaming-control fragments, which are ordered after all other fragments.
+     *
+     * @return the order of the fragments if at least one of them is a streaming-control fragment, or 2 if neither is.
+     */
+    static int compareControl(Fragment o1, Fragment o2) {
+        boolean control1 = o1.isStreamingControl();
+        boolean control2 = o2.isStreamingControl();
+        if (control1 && control2) {
+            return Integer.signum(Short.compare(o1.controlCode(), o2.controlCode()));
+        } else if (control1) {
+            return 1;
+        } else if (control2) {
+            return -1;
+        }
+        return 2;
+    }
+
+    /**
+     * Compares namespace, entity, id and version of fragments that are not streaming-control fragments.
+     */
+    static int compareDocument(Fragment o1, Fragment o2) {
+        int cmp = compareStrings(o1.namespace(), o2.namespace());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = compareStrings(o1.entity(), o2.entity());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = compareStrings(o1.id(), o2.id());
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(o1.version(), o2.version());
+    }
+
+    /**
+     * Compares path, type and offset of fragments of the same document.
+     */
+    static int compareWithinDocument(Fragment o1, Fragment o2) {
+        int cmp = compareStrings(o1.path(), o2.path());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.signum(o1.fragmentType().compareTo(o2.fragmentType()));
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(o1.offset(), o2.offset());
+    }
+
+    /**
+     * Strings shared through a {@link FragmentDictionary} are equal when they are the same instance, only strings that
+     * differ or that come from different dictionaries are compared character by character.
+     */
+    static int compareStrings(String s1, String s2) {
+        return s1 == s2 ? 0 : Integer.signum(s1.compareTo(s2));
+    }
+
+    static int compareValues(Fragment o1, Fragment o2) {
+        return Integer.signum(Arrays.compare(o1.value(), o2.value()));
+    }
+
+    static final class Forward implements Comparator<Fragment> {
+        @Override
+        public int compare(Fragment o1, Fragment o2) {
+            if (o1 == o2) {
+                return 0;
+            }
+            int cmp = compareControl(o1, o2);
+            if (cmp != 2) {
+                return cmp;
+            }
+            cmp = compareDocument(o1, o2);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = compareWithinDocument(o1, o2);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return compareValues(o1, o2);
+        }
+    }
+
+    static final class ReverseDocuments implements Comparator<Fragment> {
+        @Override
+        public int compare(Fragment o1, Fragment o2) {
+            if (o1 == o2) {
+                return 0;
+            }
+            int cmp = compareControl(o1, o2);
+            if (cmp != 2) {
+                return cmp;
+            }
+            cmp = compareDocument(o2, o1);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = compareWithinDocument(o1, o2);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return compareValues(o1, o2);
+        }
+    }
+
+    static final class Key implements Comparator<Fragment> {
+        @Override
+        public int compare(Fragment o1, Fragment o2) {
+            if (o1 == o2) {
+                return 0;
+            }
+            int cmp = compareControl(o1, o2);
+            if (cmp != 2) {
+                return cmp;
+            }
+            cmp = compareDocument(o1, o2);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return compareWithinDocument(o1, o2);
+        }
+    }
+}
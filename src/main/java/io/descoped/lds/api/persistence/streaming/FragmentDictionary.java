@@ -0,0 +1,78 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Symbol table of the namespaces, entities and paths of a stream of fragments. Each distinct string is kept once and
+ * assigned a small int symbol, so that fragments created with the same dictionary share their strings instead of
+ * holding a copy each, and can tell equal paths apart from different ones by comparing symbols.
+ * <p>
+ * Symbols are assigned in the order strings are first seen, they tell whether two strings are equal, not how they are
+ * ordered. A dictionary is meant to be used by a single stream at a time and is not thread-safe.
+ * <p>
+ * Fragments get a dictionary when they are created from json, decoded with {@link FragmentCodec.Decoder}, or
+ * buffered for re-sorting, where the many comparisons of equal paths make up for the copies. Provider output that is
+ * already in order is streamed into documents without a dictionary, as each fragment is compared only once or twice
+ * on the way and interning costs more than it saves.
+ */
+public class FragmentDictionary {
+
+    final Map<String, Integer> symbols = new HashMap<>();
+    final List<String> strings = new ArrayList<>();
+
+    /**
+     * @return the symbol of the string, assigning a new symbol if the string has not been seen before, or -1 if the
+     * string is null.
+     */
+    public int symbol(String string) {
+        if (string == null) {
+            return -1;
+        }
+        Integer symbol = symbols.get(string);
+        if (symbol == null) {
+            symbol = strings.size();
+            symbols.put(string, symbol);
+            strings.add(string);
+        }
+        return symbol;
+    }
+
+    /**
+     * @return the string of the symbol, or null if the symbol is -1.
+     */
+    public String string(int symbol) {
+        if (symbol == -1) {
+            return null;
+        }
+        return strings.get(symbol);
+    }
+
+    /**
+     * @return the instance kept by this dictionary that is equal to the string.
+     */
+    public String intern(String string) {
+        return string(symbol(string));
+    }
+
+    /**
+     * @return the fragment if it was created with this dictionary or is a streaming-control fragment, otherwise a copy
+     * of the fragment created with this dictionary.
+     */
+    public Fragment intern(Fragment fragment) {
+        if (fragment.dictionary() == this || fragment.isStreamingControl()) {
+            return fragment;
+        }
+        return new Fragment(this, fragment.namespace(), fragment.entity(), fragment.id(), fragment.version(),
+                fragment.path(), fragment.fragmentType(), fragment.offset(), fragment.value());
+    }
+
+    /**
+     * @return the number of distinct strings in this dictionary.
+     */
+    public int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,121 @@
+package io.descoped.lds.api.persistence.streaming;
+
+/**
+ * MurmurHash3 x64 128-bit with seed 0. The hash is the two 64-bit halves in little-endian byte order, the same bytes
+ * as other common implementations produce.
+ */
+class Murmur3ValueHasher implements ValueHasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    @Override
+    public String name() {
+        return "MURMUR3-128";
+    }
+
+    @Override
+    public byte[] hash(byte[] value) {
+        int length = value.length;
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(value, 16 * i);
+            long k2 = getLong(value, 16 * i + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = 16 * blocks;
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15:
+                k2 ^= (long) (value[tail + 14] & 0xff) << 48;
+            case 14:
+                k2 ^= (long) (value[tail + 13] & 0xff) << 40;
+            case 13:
+                k2 ^= (long) (value[tail + 12] & 0xff) << 32;
+            case 12:
+                k2 ^= (long) (value[tail + 11] & 0xff) << 24;
+            case 11:
+                k2 ^= (long) (value[tail + 10] & 0xff) << 16;
+            case 10:
+                k2 ^= (long) (value[tail + 9] & 0xff) << 8;
+            case 9:
+                k2 ^= value[tail + 8] & 0xff;
+                h2 ^= mixK2(k2);
+            case 8:
+                k1 ^= (long) (value[tail + 7] & 0xff) << 56;
+            case 7:
+                k1 ^= (long) (value[tail + 6] & 0xff) << 48;
+            case 6:
+                k1 ^= (long) (value[tail + 5] & 0xff) << 40;
+            case 5:
+                k1 ^= (long) (value[tail + 4] & 0xff) << 32;
+            case 4:
+                k1 ^= (long) (value[tail + 3] & 0xff) << 24;
+            case 3:
+                k1 ^= (long) (value[tail + 2] & 0xff) << 16;
+            case 2:
+                k1 ^= (long) (value[tail + 1] & 0xff) << 8;
+            case 1:
+                k1 ^= value[tail] & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        byte[] hash = new byte[16];
+        putLong(hash, 0, h1);
+        putLong(hash, 8, h2);
+        return hash;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
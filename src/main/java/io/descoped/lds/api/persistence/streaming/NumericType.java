@@ -0,0 +1,173 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The subtype of a {@link FragmentType#NUMERIC} value. A numeric fragment value is the type-code of the subtype
+ * followed by the number in binary form:
+ * <ul>
+ * <li>INT: 4 bytes, big-endian two's complement</li>
+ * <li>LONG: 8 bytes, big-endian two's complement</li>
+ * <li>BIG_INTEGER: big-endian two's complement of minimal length, as {@link BigInteger#toByteArray()}</li>
+ * <li>DOUBLE: 8 bytes, IEEE 754 as {@link Double#doubleToLongBits(double)}</li>
+ * <li>BIG_DECIMAL: 4 bytes scale followed by the unscaled value as BIG_INTEGER</li>
+ * </ul>
+ * Type-codes are control characters, so that values written as UTF-8 text by earlier versions, which always start
+ * with a digit, a sign or a letter, can still be decoded.
+ */
+public enum NumericType {
+    INT((byte) 1), LONG((byte) 2), BIG_INTEGER((byte) 3), DOUBLE((byte) 4), BIG_DECIMAL((byte) 5);
+
+    final byte typeCode;
+
+    NumericType(byte typeCode) {
+        this.typeCode = typeCode;
+    }
+
+    public byte getTypeCode() {
+        return typeCode;
+    }
+
+    public static NumericType fromTypeCode(byte typeCode) {
+        switch (typeCode) {
+            case 1:
+                return INT;
+            case 2:
+                return LONG;
+            case 3:
+                return BIG_INTEGER;
+            case 4:
+                return DOUBLE;
+            case 5:
+                return BIG_DECIMAL;
+        }
+        throw new IllegalArgumentException("typeCode not supported: " + typeCode);
+    }
+
+    /**
+     * @return the subtype of the number. Short and Byte are widened to INT, and Float to DOUBLE.
+     */
+    public static NumericType of(Number number) {
+        if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return INT;
+        } else if (number instanceof Long) {
+            return LONG;
+        } else if (number instanceof Double || number instanceof Float) {
+            return DOUBLE;
+        } else if (number instanceof BigInteger) {
+            return BIG_INTEGER;
+        } else if (number instanceof BigDecimal) {
+            return BIG_DECIMAL;
+        }
+        throw new IllegalArgumentException("Number type not supported: " + number.getClass().getName());
+    }
+
+    public static byte[] encode(Number number) {
+        switch (of(number)) {
+            case INT:
+                return ByteBuffer.allocate(5).put(INT.typeCode).putInt(number.intValue()).array();
+            case LONG:
+                return ByteBuffer.allocate(9).put(LONG.typeCode).putLong(number.longValue()).array();
+            case DOUBLE:
+                double doubleValue = number instanceof Float
+                        // the decimal representation of the float, not its binary expansion, e.g. 1.1 not 1.100000023841858
+                        ? Double.parseDouble(number.toString())
+                        : number.doubleValue();
+                return ByteBuffer.allocate(9).put(DOUBLE.typeCode).putDouble(doubleValue).array();
+            case BIG_INTEGER: {
+                byte[] unscaled = ((BigInteger) number).toByteArray();
+                return ByteBuffer.allocate(1 + unscaled.length).put(BIG_INTEGER.typeCode).put(unscaled).array();
+            }
+            case BIG_DECIMAL: {
+                BigDecimal bigDecimal = (BigDecimal) number;
+                byte[] unscaled = bigDecimal.unscaledValue().toByteArray();
+                return ByteBuffer.allocate(5 + unscaled.length).put(BIG_DECIMAL.typeCode).putInt(bigDecimal.scale()).put(unscaled).array();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param value a numeric fragment value, either binary or UTF-8 text as written by earlier versions.
+     * @return the number, as one of Integer, Long, BigInteger, Double or BigDecimal.
+     */
+    public static Number decode(byte[] value) {
+        if (value.length == 0) {
+            throw new IllegalArgumentException("Empty numeric value");
+        }
+        byte typeCode = value[0];
+        if (typeCode > BIG_DECIMAL.typeCode) {
+            return parse(new String(value, StandardCharsets.UTF_8));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value, 1, value.length - 1);
+        switch (fromTypeCode(typeCode)) {
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BIG_INTEGER:
+                return new BigInteger(Arrays.copyOfRange(value, 1, value.length));
+            case BIG_DECIMAL:
+                return new BigDecimal(new BigInteger(Arrays.copyOfRange(value, 5, value.length)), buffer.getInt());
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Narrows integral numbers the same way json numbers are when documents are parsed, so that equal integral values
+     * have the same encoding regardless of their Java type, e.g. 42L and the json value 42. Other numbers are returned
+     * as they are. Numbers are narrowed before they are encoded both when documents are written and when they are
+     * matched.
+     */
+    public static Number narrowed(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte
+                || number instanceof BigInteger) {
+            return parse(number.toString());
+        }
+        return number;
+    }
+
+    /**
+     * Parses the text of a json number into the narrowest of Integer, Long and BigInteger when integral, or into a
+     * Double otherwise. The form of the text decides the type, so no parse attempt is made that could fail.
+     */
+    public static Number parse(String text) {
+        int start = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+        boolean integral = start < text.length();
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                integral = false;
+                break;
+            }
+        }
+        if (!integral) {
+            return Double.valueOf(text);
+        }
+        int digits = text.length() - start;
+        if (digits <= 9) {
+            return Integer.parseInt(text);
+        }
+        if (digits <= 18) {
+            long longValue = Long.parseLong(text);
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                return (int) longValue;
+            }
+            return longValue;
+        }
+        BigInteger bigInteger = new BigInteger(text);
+        if (bigInteger.bitLength() < 32) {
+            return bigInteger.intValue();
+        }
+        if (bigInteger.bitLength() < 64) {
+            return bigInteger.longValue();
+        }
+        return bigInteger;
+    }
+}
@@ -0,0 +1,111 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Order-preserving encodings of leaf values, for providers to build index keys that can be range scanned. Keys compare
+ * as unsigned bytes, e.g. with {@link java.util.Arrays#compareUnsigned(byte[], byte[])}, in the order of the values
+ * they encode.
+ * <ul>
+ * <li>STRING: the UTF-8 bytes of the string, which orders strings by code point and keeps prefixes of strings as
+ * prefixes of keys.</li>
+ * <li>NUMERIC: numbers ordered by value regardless of their Java type, so that 1 and 1.0 have the same key. A class
+ * byte (-infinity, negative, zero, positive, +infinity, NaN) is followed, for negative and positive numbers, by the
+ * decimal exponent as 8 bytes and the decimal digits of the number one byte each, terminated by a zero byte. The
+ * bytes after the class byte are inverted for negative numbers.</li>
+ * </ul>
+ */
+public final class OrderedValueEncoding {
+
+    static final byte NEGATIVE_INFINITY = 0x00;
+    static final byte NEGATIVE = 0x01;
+    static final byte ZERO = 0x02;
+    static final byte POSITIVE = 0x03;
+    static final byte POSITIVE_INFINITY = 0x04;
+    static final byte NAN = 0x05;
+
+    private OrderedValueEncoding() {
+    }
+
+    /**
+     * Encodes the whole value of a leaf-node, i.e. all fragments of a string concatenated.
+     *
+     * @throws IllegalArgumentException if the type is neither STRING nor NUMERIC.
+     */
+    public static byte[] encode(FragmentType type, byte[] value) {
+        switch (type) {
+            case STRING:
+                return value;
+            case NUMERIC:
+                return encodeNumber(NumericType.decode(value));
+            default:
+                throw new IllegalArgumentException("No ordered encoding of values of type " + type);
+        }
+    }
+
+    public static byte[] encodeString(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] encodeNumber(Number number) {
+        BigDecimal decimal;
+        if (number instanceof Double || number instanceof Float) {
+            double doubleValue = number.doubleValue();
+            if (Double.isNaN(doubleValue)) {
+                return new byte[]{NAN};
+            } else if (doubleValue == Double.POSITIVE_INFINITY) {
+                return new byte[]{POSITIVE_INFINITY};
+            } else if (doubleValue == Double.NEGATIVE_INFINITY) {
+                return new byte[]{NEGATIVE_INFINITY};
+            }
+            // the decimal representation, the same as when the number was parsed from json
+            decimal = new BigDecimal(number.toString());
+        } else if (number instanceof BigDecimal) {
+            decimal = (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) number);
+        } else {
+            decimal = BigDecimal.valueOf(number.longValue());
+        }
+        int signum = decimal.signum();
+        if (signum == 0) {
+            return new byte[]{ZERO};
+        }
+        decimal = decimal.abs().stripTrailingZeros();
+        String digits = decimal.unscaledValue().toString();
+        // the number is 0.<digits> * 10^exponent, with a non-zero first digit
+        long exponent = (long) digits.length() - decimal.scale();
+        byte[] key = new byte[1 + 8 + digits.length() + 1];
+        key[0] = signum < 0 ? NEGATIVE : POSITIVE;
+        long biasedExponent = exponent ^ Long.MIN_VALUE;
+        for (int i = 0; i < 8; i++) {
+            key[1 + i] = (byte) (biasedExponent >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            key[9 + i] = (byte) (digits.charAt(i) - '0' + 1);
+        }
+        if (signum < 0) {
+            for (int i = 1; i < key.length; i++) {
+                key[i] = (byte) ~key[i];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the smallest key that is greater than all keys starting with the prefix, or null if there is none.
+     */
+    public static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] end = new byte[i + 1];
+                System.arraycopy(prefix, 0, end, 0, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 with one digest per thread, instead of looking up a new digest for every value.
+ */
+class Sha1ValueHasher implements ValueHasher {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    @Override
+    public String name() {
+        return "SHA-1";
+    }
+
+    @Override
+    public byte[] hash(byte[] value) {
+        // digest resets the digest for the next value
+        return DIGEST.get().digest(value);
+    }
+}
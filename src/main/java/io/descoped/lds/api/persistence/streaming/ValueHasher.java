@@ -0,0 +1,45 @@
+package io.descoped.lds.api.persistence.streaming;
+
+/**
+ * Hashes fragment values into fixed-size index keys, see {@link Fragment#truncatedValue(ValueHasher)}. Providers that
+ * index hashed values must hash the values they look up with {@code find} with the same scheme the index was written
+ * with, so the {@link #name()} of the scheme should be stored together with the index and resolved with
+ * {@link #forName(String)} when the provider is opened.
+ */
+public interface ValueHasher {
+
+    /**
+     * 20 byte SHA-1 digest, the scheme of {@link Fragment#truncatedValue()}.
+     */
+    ValueHasher SHA_1 = new Sha1ValueHasher();
+
+    /**
+     * 16 byte non-cryptographic 128-bit MurmurHash3 (x64 variant, seed 0), several times faster than SHA-1 and suitable
+     * for index keys where values are compared after the lookup.
+     */
+    ValueHasher MURMUR3_128 = new Murmur3ValueHasher();
+
+    /**
+     * @return the name that identifies this scheme.
+     */
+    String name();
+
+    /**
+     * @return the hash of the value.
+     */
+    byte[] hash(byte[] value);
+
+    /**
+     * @return the scheme with the given name.
+     * @throws IllegalArgumentException if there is no scheme with the name.
+     */
+    static ValueHasher forName(String name) {
+        if (SHA_1.name().equals(name)) {
+            return SHA_1;
+        }
+        if (MURMUR3_128.name().equals(name)) {
+            return MURMUR3_128;
+        }
+        throw new IllegalArgumentException("Unknown value hash scheme: " + name);
+    }
+}
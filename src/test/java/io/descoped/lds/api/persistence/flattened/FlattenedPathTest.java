@@ -0,0 +1,70 @@
+package io.descoped.lds.api.persistence.flattened;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FlattenedPathTest {
+
+    @Test
+    public void testParseFieldsAndArrayIndices() {
+        FlattenedPath path = FlattenedPath.of("$.name[12][3].first");
+        assertThat(path.size()).isEqualTo(4);
+        assertThat(path.isArrayIndex(0)).isFalse();
+        assertThat(path.name(0)).isEqualTo("name");
+        assertThat(path.isArrayIndex(1)).isTrue();
+        assertThat(path.index(1)).isEqualTo(12);
+        assertThat(path.index(2)).isEqualTo(3);
+        assertThat(path.name(3)).isEqualTo("first");
+        assertThat(path.index(3)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testParseSingleElementAndRoot() {
+        FlattenedPath path = FlattenedPath.of("firstname");
+        assertThat(path.size()).isEqualTo(1);
+        assertThat(path.name(0)).isEqualTo("firstname");
+        assertThat(FlattenedPath.of("$")).isSameAs(FlattenedPath.root());
+        assertThat(FlattenedPath.root().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testParsedPathsAreCached() {
+        FlattenedPath path = FlattenedPath.of("$.cached.path");
+        assertThat(FlattenedPath.of(new String("$.cached.path"))).isSameAs(path);
+    }
+
+    @Test
+    public void testCacheKeepsCachingAfterManyDistinctPaths() {
+        for (int i = 0; i < 4 * FlattenedPath.CACHE_SLOTS; i++) {
+            FlattenedPath.of("$.items[" + i + "].x");
+        }
+        FlattenedPath path = FlattenedPath.of("$.after.many");
+        assertThat(FlattenedPath.of(new String("$.after.many"))).isSameAs(path);
+    }
+
+    @Test
+    public void testBuiltPathEqualsParsedPath() {
+        FlattenedPath built = FlattenedPath.root().field(new String("name")).element(1).element(0).field("first");
+        FlattenedPath parsed = FlattenedPath.parse("$.name[1][0].first");
+        assertThat(built.path()).isEqualTo("$.name[1][0].first");
+        assertThat(built).isEqualTo(parsed);
+        assertThat(built.commonPrefixLength(parsed)).isEqualTo(4);
+    }
+
+    @Test
+    public void testCommonPrefixLength() {
+        FlattenedPath first = FlattenedPath.of("$.name[0].first");
+        assertThat(first.commonPrefixLength(FlattenedPath.of("$.name[0].last"))).isEqualTo(2);
+        assertThat(first.commonPrefixLength(FlattenedPath.of("$.name[1].first"))).isEqualTo(1);
+        assertThat(first.commonPrefixLength(FlattenedPath.of("$.other"))).isEqualTo(0);
+        assertThat(first.commonPrefixLength(FlattenedPath.of("$.name"))).isEqualTo(1);
+    }
+
+    @Test
+    public void testMalformedArrayIndex() {
+        assertThatThrownBy(() -> FlattenedPath.parse("$.a[x]")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FlattenedPath.parse("$.a[1")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
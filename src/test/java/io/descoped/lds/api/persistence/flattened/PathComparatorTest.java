@@ -123,4 +123,44 @@ public class PathComparatorTest {
                 "$.a[10].b[10]"
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSortNestedArrays() {
+        map.put("$.a[1][10]", "");
+        map.put("$.a[1][9]", "");
+        map.put("$.a[0][1]", "");
+        map.put("$.a[10][0]", "");
+
+        assertThat(map.keySet()).containsExactly(
+                "$.a[0][1]",
+                "$.a[1][9]",
+                "$.a[1][10]",
+                "$.a[10][0]"
+        );
+    }
+
+    @Test
+    public void testSortFewerElementsFirst() {
+        map.put("$.a.b", "");
+        map.put("$.b", "");
+        map.put("$.a[0]", "");
+        map.put("$.c", "");
+
+        assertThat(map.keySet()).containsExactly(
+                "$.b",
+                "$.c",
+                "$.a[0]",
+                "$.a.b"
+        );
+    }
+
+    @Test
+    public void testCompareLargeIndicesAndEqualPaths() {
+        PathComparator comparator = new PathComparator();
+
+        assertThat(comparator.compare("$.a[99999999999]", "$.a[100000000000]")).isNegative();
+        assertThat(comparator.compare("$.a[12]", "$.a[012]")).isZero();
+        assertThat(comparator.compare("$.a[3].b", "$.a[3].b")).isZero();
+        assertThat(comparator.compare("$.ab", "$.a")).isPositive();
+    }
+}
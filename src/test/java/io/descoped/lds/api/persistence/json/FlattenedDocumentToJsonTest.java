@@ -5,6 +5,7 @@ import io.descoped.lds.api.persistence.DocumentKey;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocument;
 import io.descoped.lds.api.persistence.flattened.FlattenedDocumentLeafNode;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import org.json.JSONException;
 import org.testng.annotations.Test;
 
 import java.time.ZoneId;
@@ -12,6 +13,9 @@ import java.time.ZonedDateTime;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static org.skyscreamer.jsonassert.JSONAssert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 public class FlattenedDocumentToJsonTest {
 
     @Test
@@ -28,4 +32,47 @@ public class FlattenedDocumentToJsonTest {
 
         System.out.printf("%s%n", JsonTools.toPrettyJson(document));
     }
+
+    @Test
+    public void thatNestedDocumentRoundTrips() throws JSONException {
+        String json = "{\"name\":[{\"first\":\"John\",\"last\":\"Smith\"},{\"first\":\"Jane\",\"last\":\"Doe\"}]," +
+                "\"matrix\":[[1,2],[3,[4,5]]],\"address\":{\"street\":\"Main\",\"geo\":{\"lat\":1.5,\"empty\":{}}},\"tags\":[]}";
+        assertEquals(json, JsonTools.toJson(roundTrip(json)), true);
+    }
+
+    @Test
+    public void thatNumbersRoundTripWithTheirType() {
+        String json = "{\"int\":42,\"long\":9223372036854775807,\"big\":92233720368547758070,\"double\":2.5,\"exponent\":1.0E-7,\"numbers\":[1,2.0]}";
+        JsonNode document = roundTrip(json);
+        assertTrue(document.get("int").isInt());
+        assertTrue(document.get("long").isLong());
+        assertTrue(document.get("big").isBigInteger());
+        assertTrue(document.get("double").isDouble());
+        assertTrue(document.get("numbers").get(1).isDouble());
+        assertTrue(JsonTools.toJsonNode(json).equals(document));
+    }
+
+    @Test
+    public void thatBooleanLeafValuesMayBeBooleansOrText() {
+        DocumentKey key = new DocumentKey("ns", "E", "1", ZonedDateTime.now(ZoneId.of("Etc/UTC")));
+        Map<String, FlattenedDocumentLeafNode> leafNodesByPath = new LinkedHashMap<>();
+        leafNodesByPath.put("$.boolean", new FlattenedDocumentLeafNode(key, "$.boolean", FragmentType.BOOLEAN, Boolean.TRUE, 64));
+        leafNodesByPath.put("$.text", new FlattenedDocumentLeafNode(key, "$.text", FragmentType.BOOLEAN, "true", 64));
+        FlattenedDocument flattenedDocument = new FlattenedDocument(key, leafNodesByPath, false);
+
+        JsonNode document = new FlattenedDocumentToJson(flattenedDocument).toJsonNode();
+
+        assertTrue(document.get("boolean").booleanValue());
+        assertTrue(document.get("text").booleanValue());
+    }
+
+    @Test
+    public void thatEmptyDocumentRoundTrips() throws JSONException {
+        assertEquals("{}", JsonTools.toJson(roundTrip("{}")), true);
+    }
+
+    private static JsonNode roundTrip(String json) {
+        FlattenedDocument flattenedDocument = new JsonToFlattenedDocument("ns", "E", "1", ZonedDateTime.now(ZoneId.of("Etc/UTC")), JsonTools.toJsonNode(json), 64).toDocument();
+        return new FlattenedDocumentToJson(flattenedDocument).toJsonNode();
+    }
 }
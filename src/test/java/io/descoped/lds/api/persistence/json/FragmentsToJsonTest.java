@@ -0,0 +1,78 @@
+package io.descoped.lds.api.persistence.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import org.json.JSONException;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.skyscreamer.jsonassert.JSONAssert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class FragmentsToJsonTest {
+
+    private static final DocumentKey KEY = new DocumentKey("ns", "E", "1", ZonedDateTime.now(ZoneId.of("Etc/UTC")));
+
+    private static JsonNode roundTrip(String json, int fragmentCapacity) {
+        JsonNode node = JsonTools.toJsonNode(json);
+        SortedSet<Fragment> fragments = new TreeSet<>();
+        new JsonToFlattenedDocument(KEY.namespace(), KEY.entity(), KEY.id(), KEY.timestamp(), node, fragmentCapacity)
+                .toDocument().fragmentIterator().forEachRemaining(fragments::add);
+        FragmentsToJson assembler = new FragmentsToJson(KEY);
+        fragments.forEach(assembler::accept);
+        assertFalse(assembler.deleted());
+        return assembler.toJsonNode();
+    }
+
+    @Test
+    public void thatAllLeafTypesAreAssembled() throws JSONException {
+        String json = "{\"s\":\"str\",\"i\":1,\"l\":12345678901,\"d\":1.5,\"t\":true,\"f\":false,\"n\":null," +
+                "\"ea\":[],\"eo\":{},\"o\":{\"a\":{\"b\":\"c\"}}}";
+
+        assertEquals(json, JsonTools.toJson(roundTrip(json, 64)), true);
+    }
+
+    @Test
+    public void thatArraysWithMoreThanTenElementsKeepTheirOrder() throws JSONException {
+        String json = "{\"values\":[0,1,2,3,4,5,6,7,8,9,10,11,12],\"objects\":[{\"a\":0},{\"a\":1},{\"a\":2},{\"a\":3}," +
+                "{\"a\":4},{\"a\":5},{\"a\":6},{\"a\":7},{\"a\":8},{\"a\":9},{\"a\":10},{\"a\":11}]}";
+
+        assertEquals(json, JsonTools.toJson(roundTrip(json, 64)), true);
+    }
+
+    @Test
+    public void thatArraysInArrayElementsAreAssembled() throws JSONException {
+        String json = "{\"rows\":[{\"row\":[1,2]},{\"row\":[3,{\"x\":[4,5]}]},{\"row\":[]},{\"row\":[{\"x\":null}]}]}";
+
+        assertEquals(json, JsonTools.toJson(roundTrip(json, 64)), true);
+    }
+
+    @Test
+    public void thatNestedArraysAreAssembled() throws JSONException {
+        String json = "{\"matrix\":[[1,2],[3,[4,5]],[],[{\"x\":null}]]}";
+
+        assertEquals(json, JsonTools.toJson(roundTrip(json, 64)), true);
+    }
+
+    @Test
+    public void thatStringSpanningSeveralFragmentsIsDecoded() throws JSONException {
+        String json = "{\"text\":\"Blåbærsyltetøy på skiver, æøå ÆØÅ\",\"other\":\"value\"}";
+
+        assertEquals(json, JsonTools.toJson(roundTrip(json, 3)), true);
+    }
+
+    @Test
+    public void thatDeleteMarkerMarksDocumentAsDeleted() {
+        FragmentsToJson assembler = new FragmentsToJson(KEY);
+        assembler.accept(new Fragment(KEY.namespace(), KEY.entity(), KEY.id(), KEY.timestamp(), "$", FragmentType.DELETED, 0, new byte[0]));
+
+        assertTrue(assembler.deleted());
+    }
+}
@@ -0,0 +1,68 @@
+package io.descoped.lds.api.persistence.json;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonToFragmentsTest {
+
+    private static final DocumentKey KEY = new DocumentKey("ns", "E", "1", ZonedDateTime.now(ZoneId.of("Etc/UTC")));
+
+    private static void assertSameFragmentsInSortedOrder(String json, int fragmentCapacity) {
+        SortedSet<Fragment> expected = new TreeSet<>();
+        new JsonToFlattenedDocument(KEY.namespace(), KEY.entity(), KEY.id(), KEY.timestamp(), JsonTools.toJsonNode(json), fragmentCapacity)
+                .toDocument().fragmentIterator().forEachRemaining(expected::add);
+        List<Fragment> actual = new ArrayList<>();
+        new JsonToFragments(KEY, JsonTools.toJsonNode(json), fragmentCapacity).forEachRemaining(actual::add);
+        assertThat(actual).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void thatAllLeafTypesAreProduced() {
+        assertSameFragmentsInSortedOrder("{\"s\":\"str\",\"i\":1,\"l\":12345678901,\"d\":1.5,\"t\":true,\"f\":false,\"n\":null," +
+                "\"ea\":[],\"eo\":{},\"o\":{\"a\":{\"b\":\"c\"}}}", 64);
+    }
+
+    @Test
+    public void thatFieldsAreOrderedAsTheirPaths() {
+        assertSameFragmentsInSortedOrder("{\"a\":{\"x\":1},\"a-b\":2,\"a b\":{\"y\":3},\"a[\":4,\"b\":[1,2],\"b.\":5,\"B\":6}", 64);
+    }
+
+    @Test
+    public void thatArrayElementsAreOrderedAsTheirPaths() {
+        assertSameFragmentsInSortedOrder("{\"a\":[0,1,2,3,4,5,6,7,8,9,{\"x\":10},[11,12],12,13,14,15,16,17,18,19,20,21]}", 64);
+    }
+
+    @Test
+    public void thatStringsAreChunkedAsLeafNodesAre() {
+        assertSameFragmentsInSortedOrder("{\"ascii\":\"0123456789abcdefghij\",\"multibyte\":\"æøå€ and more\"}", 3);
+        // four byte characters need a capacity of at least four
+        String json = "{\"ascii\":\"0123456789abcdefghij\",\"multibyte\":\"æøå€𝄞 and more\",\"empty\":\"\"}";
+        assertSameFragmentsInSortedOrder(json, 4);
+        assertSameFragmentsInSortedOrder(json, 20);
+        assertSameFragmentsInSortedOrder(json, 8 * 1024);
+    }
+
+    @Test
+    public void thatEmptyDocumentIsProduced() {
+        assertSameFragmentsInSortedOrder("{}", 64);
+    }
+
+    @Test
+    public void thatFragmentsAreProducedLazily() {
+        JsonToFragments fragments = new JsonToFragments(KEY, JsonTools.toJsonNode("{\"a\":\"first\",\"b\":\"second\"}"), 64);
+        assertThat(fragments.next().path()).isEqualTo("$.a");
+        assertThat(fragments.hasNext()).isTrue();
+        assertThat(fragments.next().path()).isEqualTo("$.b");
+        assertThat(fragments.hasNext()).isFalse();
+    }
+}
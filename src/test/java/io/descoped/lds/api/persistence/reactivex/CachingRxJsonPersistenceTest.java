@@ -0,0 +1,177 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.Transaction;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.json.JsonTools;
+import io.descoped.lds.api.specification.Specification;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import org.testng.annotations.Test;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.time.ZonedDateTime.parse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingRxJsonPersistenceTest {
+
+    static final ZonedDateTime SNAPSHOT = parse("2001-01-01T00:00:00.000Z");
+
+    private static JsonDocument document(String entity, String id, String json) {
+        return new JsonDocument(new DocumentKey("ns", entity, id, parse("2000-01-01T00:00:00.000Z")), JsonTools.toJsonNode(json));
+    }
+
+    private static InMemoryRxPersistence populatedPersistence() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        List<JsonDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            documents.add(document("entity", "id" + i, "{\"name\":\"n" + i + "\"}"));
+        }
+        documents.add(document("source", "s1", "{\"refs\":[\"/entity/id1\",\"/entity/id2\",\"/entity/id1\"]}"));
+        new RxJsonPersistenceBridge(persistence, 8).createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+        persistence.readCount.set(0);
+        return persistence;
+    }
+
+    @Test
+    public void thatRepeatedReadsAreServedFromCache() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.REQUEST, 100);
+
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue()).isEqualTo("n1");
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue()).isEqualTo("n1");
+        assertThat(cache.readDocument(null, parse("2002-01-01T00:00:00.000Z"), "ns", "entity", "id1").blockingGet()).isNotNull();
+        assertThat(persistence.readCount.get()).isEqualTo(2);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(2);
+
+        // targets already read are served from the cache, as is a second read of the same source
+        assertThat(cache.readTargetDocuments(null, SNAPSHOT, "ns", "source", "s1", JsonNavigationPath.from("$", "refs", "[]"),
+                "entity", Range.first(10)).map(d -> d.key().id()).toList().blockingGet()).containsExactly("id1", "id2");
+        assertThat(cache.readTargetDocuments(null, SNAPSHOT, "ns", "source", "s1", JsonNavigationPath.from("$", "refs", "[]"),
+                "entity", Range.first(10)).map(d -> d.key().id()).toList().blockingGet()).containsExactly("id1", "id2");
+        assertThat(persistence.readCount.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void thatLeastRecentlyUsedEntriesAreEvicted() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.REQUEST, 2);
+
+        for (String id : List.of("id1", "id2", "id1", "id3", "id1", "id2")) {
+            cache.readDocument(null, SNAPSHOT, "ns", "entity", id).blockingGet();
+        }
+        assertThat(cache.missCount()).isEqualTo(4);
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatTransactionsDoNotShareEntries() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.TRANSACTION, 100);
+        Transaction tx1 = cache.createTransaction(true);
+        Transaction tx2 = cache.createTransaction(true);
+
+        cache.readDocument(tx1, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.readDocument(tx1, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.readDocument(tx2, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        assertThat(persistence.readCount.get()).isEqualTo(2);
+        assertThat(cache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void thatTransactionCachesEndWithTheTransaction() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.TRANSACTION, 100);
+        Transaction committed = cache.createTransaction(true);
+        Transaction cancelled = cache.createTransaction(true);
+
+        cache.readDocument(committed, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.readDocument(cancelled, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        committed.commit().join();
+        cancelled.cancel().join();
+        cache.readDocument(committed, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.readDocument(cancelled, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        assertThat(persistence.readCount.get()).isEqualTo(4);
+
+        // reads without a transaction of this instance are not cached in this scope
+        cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        assertThat(persistence.readCount.get()).isEqualTo(6);
+        assertThat(cache.hitCount()).isZero();
+    }
+
+    @Test
+    public void thatWritesInvalidateEntries() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.REQUEST, 100);
+
+        cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.createOrOverwrite(null, document("entity", "id1", "{\"name\":\"changed\"}"), null).blockingAwait();
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo("changed");
+
+        cache.markDocumentDeleted(null, "ns", "entity", "id1", parse("2000-06-01T00:00:00.000Z"), null).blockingAwait();
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").isEmpty().blockingGet()).isTrue();
+        assertThat(cache.hitCount()).isZero();
+    }
+
+    @Test
+    public void thatReadersCannotChangeEachOthersDocuments() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.REQUEST, 100);
+
+        JsonDocument first = cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        String name = first.jackson().get("name").textValue();
+        ((ObjectNode) first.jackson()).put("name", "changed by the first reader");
+        JsonDocument second = cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        assertThat(second.jackson().get("name").textValue()).isEqualTo(name);
+        ((ObjectNode) second.jackson()).put("name", "changed by the second reader");
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo(name);
+        assertThat(persistence.readCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void thatReadsWhileWritingDoNotStayCached() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence[] cache = new CachingRxJsonPersistence[1];
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 8) {
+            @Override
+            public Completable createOrOverwrite(Transaction tx, Flowable<JsonDocument> documentFlowable, Specification specification) {
+                // a read of the same key after the cache was invalidated, but before the document is written
+                return super.createOrOverwrite(tx, documentFlowable.doOnNext(document ->
+                        cache[0].readDocument(tx, SNAPSHOT, "ns", "entity", "id1").blockingGet()), specification);
+            }
+        };
+        cache[0] = new CachingRxJsonPersistence(bridge, CachingRxJsonPersistence.Scope.REQUEST, 100);
+
+        cache[0].createOrOverwrite(null, document("entity", "id1", "{\"name\":\"changed\"}"), null).blockingAwait();
+        assertThat(cache[0].readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo("changed");
+    }
+
+    @Test
+    public void thatDeletesInvalidateEntries() {
+        InMemoryRxPersistence persistence = populatedPersistence();
+        CachingRxJsonPersistence cache = new CachingRxJsonPersistence(new RxJsonPersistenceBridge(persistence, 8),
+                CachingRxJsonPersistence.Scope.REQUEST, 100);
+
+        cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").blockingGet();
+        cache.markDocumentDeleted(null, "ns", "entity", "id1", parse("2000-06-01T00:00:00.000Z"), null).blockingAwait();
+        assertThat(cache.readDocument(null, SNAPSHOT, "ns", "entity", "id1").isEmpty().blockingGet()).isTrue();
+        assertThat(cache.hitCount()).isZero();
+    }
+}
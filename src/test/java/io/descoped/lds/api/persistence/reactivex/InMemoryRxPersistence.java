@@ -0,0 +1,385 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.PersistenceDeletePolicy;
+import io.descoped.lds.api.persistence.PersistenceException;
+import io.descoped.lds.api.persistence.Transaction;
+import io.descoped.lds.api.persistence.TransactionFactory;
+import io.descoped.lds.api.persistence.TransactionStatistics;
+import io.descoped.lds.api.persistence.streaming.EpochMicros;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.persistence.streaming.OrderedValueEncoding;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+import java.io.ByteArrayOutputStream;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal in-memory provider used to test the bridge. Fragments are kept in {@link Fragment#compareTo(Fragment)}
+ * order. Reads honor the declared ordering capabilities, and when scrambled all other reads return fragments in
+ * exactly the reverse of that order.
+ */
+class InMemoryRxPersistence implements RxPersistence {
+
+    final NavigableSet<Fragment> fragments = new ConcurrentSkipListSet<>();
+    final AtomicInteger readCount = new AtomicInteger();
+    final AtomicInteger emittedCount = new AtomicInteger();
+    final List<IndexDelta> indexDeltas = Collections.synchronizedList(new ArrayList<>());
+    final List<String> findPaths = Collections.synchronizedList(new ArrayList<>());
+    final List<LinkDelta> linkDeltas = Collections.synchronizedList(new ArrayList<>());
+    final boolean scrambled;
+    final Set<RxPersistenceCapability> capabilities;
+
+    InMemoryRxPersistence(boolean scrambled, RxPersistenceCapability... capabilities) {
+        this.scrambled = scrambled;
+        this.capabilities = EnumSet.noneOf(RxPersistenceCapability.class);
+        this.capabilities.addAll(Arrays.asList(capabilities));
+    }
+
+    @Override
+    public Set<RxPersistenceCapability> capabilities() {
+        return capabilities;
+    }
+
+    @Override
+    public TransactionFactory transactionFactory() throws PersistenceException {
+        return new TransactionFactory() {
+            @Override
+            public Transaction createTransaction(boolean readOnly) throws PersistenceException {
+                return InMemoryRxPersistence.this.createTransaction(readOnly);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public Transaction createTransaction(boolean readOnly) throws PersistenceException {
+        return new Transaction() {
+            @Override
+            public CompletableFuture<TransactionStatistics> commit() {
+                return CompletableFuture.completedFuture(new TransactionStatistics());
+            }
+
+            @Override
+            public CompletableFuture<TransactionStatistics> cancel() {
+                return CompletableFuture.completedFuture(new TransactionStatistics());
+            }
+        };
+    }
+
+    @Override
+    public Completable createOrOverwrite(Transaction tx, Flowable<Fragment> fragments) {
+        Set<DocumentKey> written = new HashSet<>();
+        return fragments.doOnNext(fragment -> {
+            DocumentKey key = DocumentKey.from(fragment);
+            if (written.add(key)) {
+                this.fragments.removeIf(f -> key.equals(DocumentKey.from(f)));
+            }
+            this.fragments.add(fragment);
+        }).ignoreElements();
+    }
+
+    @Override
+    public Completable updateIndex(Transaction tx, Flowable<IndexDelta> deltas) {
+        return deltas.doOnNext(indexDeltas::add).ignoreElements();
+    }
+
+    @Override
+    public Completable updateLinks(Transaction tx, Flowable<LinkDelta> deltas) {
+        return deltas.doOnNext(linkDeltas::add).ignoreElements();
+    }
+
+    @Override
+    public Flowable<Fragment> read(Transaction tx, ZonedDateTime snapshot, String namespace, String entity, String id) {
+        return output(() -> {
+            List<Fragment> result = new ArrayList<>();
+            latestVersions(snapshot, namespace, entity, i -> i.equals(id)).values().forEach(result::addAll);
+            return result;
+        }, null, null, null);
+    }
+
+    @Override
+    public Flowable<Fragment> readVersions(Transaction tx, String namespace, String entity, String id, Range<ZonedDateTime> range) {
+        return output(() -> fragments.stream()
+                .filter(f -> namespace.equals(f.namespace()) && entity.equals(f.entity()) && id.equals(f.id()))
+                .filter(f -> !range.hasAfter() || f.version() > EpochMicros.of(range.getAfter()))
+                .filter(f -> !range.hasBefore() || f.version() < EpochMicros.of(range.getBefore()))
+                .collect(Collectors.toList()), RxPersistenceCapability.READ_VERSIONS_ORDERED, RxPersistenceCapability.READ_VERSIONS_LIMITED, range);
+    }
+
+    @Override
+    public Completable delete(Transaction transaction, String namespace, String entity, String id, ZonedDateTime version, PersistenceDeletePolicy policy) {
+        return Completable.fromAction(() -> fragments.removeIf(f -> namespace.equals(f.namespace()) && entity.equals(f.entity())
+                && id.equals(f.id()) && EpochMicros.of(version) == f.version()));
+    }
+
+    @Override
+    public Completable deleteAllVersions(Transaction transaction, String namespace, String entity, String id, PersistenceDeletePolicy policy) {
+        return Completable.fromAction(() -> fragments.removeIf(f -> namespace.equals(f.namespace()) && entity.equals(f.entity())
+                && id.equals(f.id())));
+    }
+
+    @Override
+    public Completable deleteAllEntities(Transaction tx, String namespace, String entity, Iterable<String> paths) {
+        return Completable.fromAction(() -> fragments.removeIf(f -> namespace.equals(f.namespace()) && entity.equals(f.entity())));
+    }
+
+    @Override
+    public Completable markDeleted(Transaction transaction, String namespace, String entity, String id, ZonedDateTime version, PersistenceDeletePolicy policy) {
+        return Completable.fromAction(() -> fragments.add(new Fragment(namespace, entity, id, version, "$", FragmentType.DELETED, 0, new byte[0])));
+    }
+
+    @Override
+    public Flowable<Fragment> readAll(Transaction transaction, ZonedDateTime snapshot, String namespace, String entity, Range<String> range) {
+        return output(() -> {
+            List<Fragment> result = new ArrayList<>();
+            latestVersions(snapshot, namespace, entity, idInRange(range)).values().forEach(result::addAll);
+            return result;
+        }, RxPersistenceCapability.READ_ALL_ORDERED, RxPersistenceCapability.READ_ALL_LIMITED, range);
+    }
+
+    @Override
+    public Flowable<Fragment> find(Transaction transaction, ZonedDateTime snapshot, String namespace, String entity, String path, byte[] value, Range<String> range) {
+        findPaths.add(path);
+        return output(() -> {
+            List<Fragment> result = new ArrayList<>();
+            for (List<Fragment> document : latestVersions(snapshot, namespace, entity, idInRange(range)).values()) {
+                boolean match = document.stream().anyMatch(f -> f.offset() == 0
+                        && path.equals(Fragment.computeIndexUnawarePath(f.path(), new ArrayList<>()))
+                        && Arrays.equals(value, f.value()));
+                if (match) {
+                    result.addAll(document);
+                }
+            }
+            return result;
+        }, RxPersistenceCapability.FIND_ORDERED, RxPersistenceCapability.FIND_LIMITED, range);
+    }
+
+    @Override
+    public Flowable<Fragment> findExact(Transaction transaction, ZonedDateTime snapshot, String namespace, String entity, String path,
+                                        FragmentType type, byte[] value, Range<String> range) {
+        findPaths.add(path);
+        return output(() -> {
+            List<Fragment> result = new ArrayList<>();
+            if (capabilities.contains(RxPersistenceCapability.INDEX_DELTAS)) {
+                // answered from the index alone, as a provider with an index would
+                Set<String> indexedIds = indexedIds(snapshot, namespace, entity, path, type, value);
+                latestVersions(snapshot, namespace, entity, idInRange(range).and(indexedIds::contains)).values().forEach(result::addAll);
+                return result;
+            }
+            for (List<Fragment> document : latestVersions(snapshot, namespace, entity, idInRange(range)).values()) {
+                Map<String, ByteArrayOutputStream> valueByPath = new LinkedHashMap<>();
+                document.stream()
+                        .filter(f -> type == f.fragmentType() && path.equals(Fragment.computeIndexUnawarePath(f.path(), new ArrayList<>())))
+                        .forEach(f -> valueByPath.computeIfAbsent(f.path(), p -> new ByteArrayOutputStream()).writeBytes(f.value()));
+                if (valueByPath.values().stream().anyMatch(v -> Arrays.equals(value, v.toByteArray()))) {
+                    result.addAll(document);
+                }
+            }
+            return result;
+        }, RxPersistenceCapability.FIND_ORDERED, RxPersistenceCapability.FIND_LIMITED, range);
+    }
+
+    @Override
+    public Flowable<Fragment> findRange(Transaction transaction, ZonedDateTime snapshot, String namespace, String entity, String path,
+                                        ValueRange valueRange, Range<String> range) {
+        findPaths.add(path);
+        return output(() -> {
+            List<Fragment> result = new ArrayList<>();
+            for (List<Fragment> document : latestVersions(snapshot, namespace, entity, idInRange(range)).values()) {
+                Map<String, ByteArrayOutputStream> valueByPath = new LinkedHashMap<>();
+                document.stream()
+                        .filter(f -> valueRange.type() == f.fragmentType() && path.equals(Fragment.computeIndexUnawarePath(f.path(), new ArrayList<>())))
+                        .forEach(f -> valueByPath.computeIfAbsent(f.path(), p -> new ByteArrayOutputStream()).writeBytes(f.value()));
+                if (valueByPath.values().stream().anyMatch(v -> valueRange.test(OrderedValueEncoding.encode(valueRange.type(), v.toByteArray())))) {
+                    result.addAll(document);
+                }
+            }
+            return result;
+        }, RxPersistenceCapability.FIND_ORDERED, RxPersistenceCapability.FIND_LIMITED, range);
+    }
+
+    /**
+     * @return the ids of the documents that have the value at the snapshot according to the index deltas.
+     */
+    private Set<String> indexedIds(ZonedDateTime snapshot, String namespace, String entity, String path, FragmentType type, byte[] value) {
+        long snapshotVersion = EpochMicros.of(snapshot);
+        // the latest change at the snapshot of the value in each document
+        Map<String, IndexDelta> latestById = new TreeMap<>();
+        synchronized (indexDeltas) {
+            for (IndexDelta delta : indexDeltas) {
+                DocumentKey key = delta.key();
+                if (namespace.equals(key.namespace()) && entity.equals(key.entity()) && path.equals(delta.path())
+                        && type == delta.type() && Arrays.equals(value, delta.value()) && key.version() <= snapshotVersion) {
+                    latestById.merge(key.id(), delta, (d1, d2) -> d2.key().version() >= d1.key().version() ? d2 : d1);
+                }
+            }
+        }
+        return latestById.values().stream()
+                .filter(IndexDelta::added)
+                .map(delta -> delta.key().id())
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Flowable<String> findSourceIds(Transaction transaction, ZonedDateTime snapshot, String namespace, String targetEntity,
+                                          String targetId, String sourceEntity, String path, Range<String> range) {
+        return Flowable.defer(() -> {
+            long snapshotVersion = EpochMicros.of(snapshot);
+            // the latest change at the snapshot of the link from each source document
+            Map<String, LinkDelta> latestById = new TreeMap<>();
+            synchronized (linkDeltas) {
+                for (LinkDelta delta : linkDeltas) {
+                    DocumentKey key = delta.key();
+                    if (namespace.equals(key.namespace()) && sourceEntity.equals(key.entity()) && path.equals(delta.path())
+                            && targetEntity.equals(delta.targetEntity()) && targetId.equals(delta.targetId())
+                            && key.version() <= snapshotVersion) {
+                        latestById.merge(key.id(), delta, (d1, d2) -> d2.key().version() >= d1.key().version() ? d2 : d1);
+                    }
+                }
+            }
+            List<String> liveIds = liveIds(snapshot, namespace, sourceEntity);
+            List<String> ids = latestById.values().stream()
+                    .filter(LinkDelta::added)
+                    .map(delta -> delta.key().id())
+                    .filter(idInRange(range))
+                    .filter(liveIds::contains)
+                    .collect(Collectors.toList());
+            if (range.isBackward()) {
+                Collections.reverse(ids);
+            }
+            if (range.isLimited() && ids.size() > range.getLimit()) {
+                ids = ids.subList(0, range.getLimit());
+            }
+            return Flowable.fromIterable(ids);
+        });
+    }
+
+    @Override
+    public Single<Boolean> hasPrevious(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName, String id) {
+        return Single.fromCallable(() -> liveIds(snapshot, namespace, entityName).stream().anyMatch(i -> i.compareTo(id) < 0));
+    }
+
+    @Override
+    public Single<Boolean> hasNext(Transaction tx, ZonedDateTime snapshot, String namespace, String entityName, String id) {
+        return Single.fromCallable(() -> liveIds(snapshot, namespace, entityName).stream().anyMatch(i -> i.compareTo(id) > 0));
+    }
+
+    @Override
+    public void close() throws PersistenceException {
+    }
+
+    private Flowable<Fragment> output(Callable<List<Fragment>> query, RxPersistenceCapability ordering,
+                                      RxPersistenceCapability limiting, Range<?> range) {
+        return Flowable.defer(() -> {
+            readCount.incrementAndGet();
+            List<Fragment> result = new ArrayList<>(query.call());
+            Fragment control = null;
+            if (limiting != null && capabilities.contains(limiting) && range.isLimited()) {
+                boolean more = limit(result, range, limiting == RxPersistenceCapability.READ_VERSIONS_LIMITED);
+                control = more ? Fragment.limited() : Fragment.notLimited();
+            }
+            if (ordering != null && capabilities.contains(ordering)) {
+                if (range.isBackward()) {
+                    Collections.reverse(result);
+                }
+            } else if (scrambled) {
+                Collections.reverse(result);
+            }
+            if (control != null) {
+                result.add(control);
+            }
+            return Flowable.fromIterable(result).doOnNext(fragment -> emittedCount.incrementAndGet());
+        });
+    }
+
+    /**
+     * Keeps the documents within the limit of the range, counted in the direction of the range.
+     *
+     * @return whether documents beyond the limit were left out.
+     */
+    private static boolean limit(List<Fragment> sortedFragments, Range<?> range, boolean countDeleted) {
+        Map<DocumentKey, List<Fragment>> documents = new LinkedHashMap<>();
+        for (Fragment fragment : sortedFragments) {
+            documents.computeIfAbsent(DocumentKey.from(fragment), key -> new ArrayList<>()).add(fragment);
+        }
+        List<List<Fragment>> inRangeDirection = new ArrayList<>(documents.values());
+        if (range.isBackward()) {
+            Collections.reverse(inRangeDirection);
+        }
+        sortedFragments.clear();
+        int count = 0;
+        for (List<Fragment> document : inRangeDirection) {
+            boolean counted = countDeleted || document.stream().noneMatch(Fragment::deleteMarker);
+            if (counted && count == range.getLimit()) {
+                sortedFragments.sort(null);
+                return true;
+            }
+            sortedFragments.addAll(document);
+            if (counted) {
+                count++;
+            }
+        }
+        sortedFragments.sort(null);
+        return false;
+    }
+
+    private static Predicate<String> idInRange(Range<String> range) {
+        return id -> (!range.hasAfter() || id.compareTo(range.getAfter()) > 0)
+                && (!range.hasBefore() || id.compareTo(range.getBefore()) < 0);
+    }
+
+    /**
+     * @return the fragments of the latest version at the snapshot of each matching id, including deleted documents.
+     */
+    private Map<String, List<Fragment>> latestVersions(ZonedDateTime snapshot, String namespace, String entity, Predicate<String> idFilter) {
+        Map<String, List<Fragment>> documentById = new LinkedHashMap<>();
+        Map<String, Long> versionById = new LinkedHashMap<>();
+        long snapshotVersion = EpochMicros.of(snapshot);
+        for (Fragment fragment : fragments) {
+            if (!namespace.equals(fragment.namespace()) || !entity.equals(fragment.entity()) || !idFilter.test(fragment.id())
+                    || fragment.version() > snapshotVersion) {
+                continue;
+            }
+            Long version = versionById.get(fragment.id());
+            if (version == null || fragment.version() > version) {
+                versionById.put(fragment.id(), fragment.version());
+                documentById.put(fragment.id(), new ArrayList<>());
+            }
+            if (fragment.version() == versionById.get(fragment.id())) {
+                documentById.get(fragment.id()).add(fragment);
+            }
+        }
+        return documentById;
+    }
+
+    private List<String> liveIds(ZonedDateTime snapshot, String namespace, String entity) {
+        return latestVersions(snapshot, namespace, entity, id -> true).entrySet().stream()
+                .filter(e -> e.getValue().stream().noneMatch(Fragment::deleteMarker))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
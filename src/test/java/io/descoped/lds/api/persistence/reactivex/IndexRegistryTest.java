@@ -0,0 +1,157 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.json.JsonTools;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.descoped.lds.api.specification.Specification;
+import io.descoped.lds.api.specification.SpecificationElement;
+import io.descoped.lds.api.specification.SpecificationElementType;
+import io.descoped.lds.api.specification.SpecificationValidator;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.time.ZonedDateTime.parse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexRegistryTest {
+
+    @Test
+    public void thatLeafNodesOfManagedDomainsAreIndexedAsTheirJsonTypes() {
+        TestElement root = new TestElement("root", SpecificationElementType.ROOT, Set.of("object"));
+        TestElement person = root.add(new TestElement("Person", SpecificationElementType.MANAGED, Set.of("object")));
+        person.add(new TestElement("name", SpecificationElementType.EMBEDDED, Set.of("string")));
+        person.add(new TestElement("age", SpecificationElementType.EMBEDDED, Set.of("integer", "null")));
+        TestElement address = person.add(new TestElement("address", SpecificationElementType.EMBEDDED, Set.of("object")));
+        address.add(new TestElement("city", SpecificationElementType.EMBEDDED, Set.of("string")));
+        TestElement friends = person.add(new TestElement("friends", SpecificationElementType.REF, Set.of("array")));
+        friends.items(new TestElement("friends", SpecificationElementType.REF, Set.of("string")));
+        person.add(new TestElement("empty", SpecificationElementType.EMBEDDED, Set.of("object")));
+
+        IndexRegistry registry = IndexRegistry.from(new Specification() {
+            @Override
+            public SpecificationElement getRootElement() {
+                return root;
+            }
+
+            @Override
+            public Set<String> getManagedDomains() {
+                return Set.of("Person");
+            }
+        });
+
+        assertThat(registry.indexesAll()).isFalse();
+        assertThat(registry.indexedPaths("Person")).containsExactly(
+                new IndexedPath("Person", JsonNavigationPath.from("$", "name"), EnumSet.of(FragmentType.STRING)),
+                new IndexedPath("Person", JsonNavigationPath.from("$", "age"), EnumSet.of(FragmentType.NUMERIC, FragmentType.NULL)),
+                new IndexedPath("Person", JsonNavigationPath.from("$", "address", "city"), EnumSet.of(FragmentType.STRING)),
+                new IndexedPath("Person", JsonNavigationPath.from("$", "friends", "[]"), EnumSet.of(FragmentType.STRING)));
+        assertThat(registry.isIndexed("Person", JsonNavigationPath.from("$.friends[]"), FragmentType.STRING)).isTrue();
+        assertThat(registry.isIndexed("Person", JsonNavigationPath.from("$.age"), FragmentType.STRING)).isFalse();
+        assertThat(registry.isIndexed("Person", JsonNavigationPath.from("$.empty"), FragmentType.STRING)).isFalse();
+        assertThat(registry.hasIndexedPaths("Address")).isFalse();
+    }
+
+    @Test
+    public void thatDeltaOfAllLeafNodesOnlyHasChangedValues() {
+        DocumentKey previousKey = new DocumentKey("ns", "Person", "p1", parse("2000-01-01T00:00:00.000Z"));
+        DocumentKey key = new DocumentKey("ns", "Person", "p1", parse("2001-01-01T00:00:00.000Z"));
+        JsonDocument previous = new JsonDocument(previousKey, JsonTools.toJsonNode(
+                "{\"name\":\"a\",\"tags\":[\"x\",\"y\"],\"address\":{\"city\":\"Oslo\"},\"active\":true}"));
+        JsonDocument written = new JsonDocument(key, JsonTools.toJsonNode(
+                "{\"name\":\"a\",\"tags\":[\"y\"],\"address\":{\"city\":\"Bergen\"},\"active\":true,\"age\":null}"));
+
+        List<IndexDelta> delta = IndexRegistry.all().delta(previous, written);
+
+        assertThat(delta).containsExactly(
+                IndexDelta.removed(key, "$.tags[]", FragmentType.STRING, "x".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.removed(key, "$.address.city", FragmentType.STRING, "Oslo".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.added(key, "$.address.city", FragmentType.STRING, "Bergen".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.added(key, "$.age", FragmentType.NULL, new byte[0]));
+        assertThat(IndexRegistry.all().delta(null, previous)).hasSize(5).allMatch(IndexDelta::added);
+    }
+
+    static class TestElement implements SpecificationElement {
+        final String name;
+        final SpecificationElementType type;
+        final Set<String> jsonTypes;
+        final Map<String, SpecificationElement> properties = new LinkedHashMap<>();
+        TestElement parent;
+        TestElement items;
+
+        TestElement(String name, SpecificationElementType type, Set<String> jsonTypes) {
+            this.name = name;
+            this.type = type;
+            this.jsonTypes = jsonTypes;
+        }
+
+        TestElement add(TestElement child) {
+            child.parent = this;
+            properties.put(child.name, child);
+            return child;
+        }
+
+        void items(TestElement items) {
+            items.parent = this;
+            this.items = items;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return null;
+        }
+
+        @Override
+        public SpecificationElement getParent() {
+            return parent;
+        }
+
+        @Override
+        public SpecificationElementType getSpecificationElementType() {
+            return type;
+        }
+
+        @Override
+        public Set<String> getJsonTypes() {
+            return jsonTypes;
+        }
+
+        @Override
+        public List<SpecificationValidator> getValidators() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Set<String> getRefTypes() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Map<String, SpecificationElement> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public SpecificationElement getItems() {
+            return items;
+        }
+
+        @Override
+        public Set<String> getRequired() {
+            return Collections.emptySet();
+        }
+    }
+}
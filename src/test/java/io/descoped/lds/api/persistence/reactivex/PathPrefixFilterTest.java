@@ -0,0 +1,43 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.json.JsonNavigationPath;
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static java.time.ZonedDateTime.parse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PathPrefixFilterTest {
+
+    private static Fragment fragment(String path, FragmentType type) {
+        return new Fragment("ns", "entity", "id", parse("2000-01-01T00:00:00.000Z"), path, type, 0, new byte[0]);
+    }
+
+    @Test
+    public void thatPathsAndTheirSubTreesMatch() {
+        PathPrefixFilter filter = new PathPrefixFilter(List.of(
+                JsonNavigationPath.from("$.refs[]"),
+                JsonNavigationPath.from("$.name")
+        ));
+        assertThat(filter.test(fragment("$.refs[0]", FragmentType.STRING))).isTrue();
+        assertThat(filter.test(fragment("$.refs[12].link", FragmentType.STRING))).isTrue();
+        assertThat(filter.test(fragment("$.name", FragmentType.STRING))).isTrue();
+        assertThat(filter.test(fragment("$.name.first", FragmentType.STRING))).isTrue();
+        assertThat(filter.test(fragment("$.names", FragmentType.STRING))).isFalse();
+        assertThat(filter.test(fragment("$.refsOld[0]", FragmentType.STRING))).isFalse();
+        assertThat(filter.test(fragment("$.blob", FragmentType.STRING))).isFalse();
+        assertThat(filter.test(fragment("$", FragmentType.DELETED))).isTrue();
+    }
+
+    @Test
+    public void thatScanPrefixesStopAtFirstArray() {
+        PathPrefixFilter filter = new PathPrefixFilter(List.of(
+                JsonNavigationPath.from("$.a.refs[].link"),
+                JsonNavigationPath.from("$.name")
+        ));
+        assertThat(filter.scanPrefixes()).containsExactly("$.a.refs", "$.name");
+    }
+}
@@ -0,0 +1,107 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxGroupByToolsTest {
+
+    private static Flowable<List<Integer>> groupByTens(Flowable<Integer> upstream) {
+        return RxGroupByTools.groupByOrdered(upstream, i -> i / 10)
+                .concatMapSingle(group -> group.flowable().toList());
+    }
+
+    @Test
+    public void thatOrderedGroupsAreEmittedWithAllTheirItems() {
+        List<List<Integer>> groups = groupByTens(Flowable.just(1, 2, 11, 12, 13, 21, 31, 32)).toList().blockingGet();
+
+        assertThat(groups).containsExactly(List.of(1, 2), List.of(11, 12, 13), List.of(21), List.of(31, 32));
+    }
+
+    @Test
+    public void thatGroupKeysAreExposed() {
+        List<Integer> keys = RxGroupByTools.groupByOrdered(Flowable.just(1, 2, 11, 21), i -> i / 10)
+                .concatMapSingle(group -> group.flowable().count().map(count -> group.key()))
+                .toList().blockingGet();
+
+        assertThat(keys).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void thatManyGroupsAreDrainedOnTheCallerThreadWithoutCreatingThreads() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        long groups = RxGroupByTools.groupByOrdered(Flowable.range(0, 100_000), i -> i / 10)
+                .concatMap(group -> group.flowable().doOnNext(i -> threads.add(Thread.currentThread())))
+                .count().blockingGet();
+
+        assertThat(groups).isEqualTo(100_000);
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    public void thatGroupsAreOnlyEmittedWhenRequested() {
+        TestSubscriber<RxGroupByTools.MyGroupedFlowable<Integer, Integer>> subscriber =
+                RxGroupByTools.groupByOrdered(Flowable.just(1, 2, 11, 21), (Integer i) -> i / 10).test(0);
+
+        subscriber.assertNoValues();
+        subscriber.requestMore(1);
+        subscriber.assertValueCount(1);
+        subscriber.values().get(0).flowable().test().assertResult(1, 2);
+
+        subscriber.requestMore(2);
+        subscriber.assertValueCount(3).assertComplete();
+    }
+
+    @Test
+    public void thatUpstreamErrorIsSignalledToCurrentGroupAndDownstream() {
+        RuntimeException failure = new RuntimeException("failure");
+        TestSubscriber<List<Integer>> subscriber = groupByTens(Flowable.just(1, 2, 11).concatWith(Flowable.error(failure))).test();
+
+        subscriber.assertValues(List.of(1, 2)).assertError(failure);
+    }
+
+    @Test
+    public void thatCancellingDownstreamCancelsUpstream() {
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        TestSubscriber<List<Integer>> subscriber = groupByTens(Flowable.range(0, 1000)
+                .doOnCancel(() -> upstreamCancelled.set(true)))
+                .take(2)
+                .test();
+
+        subscriber.assertResult(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), List.of(10, 11, 12, 13, 14, 15, 16, 17, 18, 19));
+        assertThat(upstreamCancelled).isTrue();
+    }
+
+    @Test
+    public void thatCancellingDownstreamSignalsErrorToCurrentGroup() {
+        PublishProcessor<Integer> upstream = PublishProcessor.create();
+        TestSubscriber<RxGroupByTools.MyGroupedFlowable<Integer, Integer>> subscriber =
+                RxGroupByTools.groupByOrdered(upstream, (Integer i) -> i / 10).test(1);
+        upstream.onNext(1);
+        upstream.onNext(2);
+        TestSubscriber<Integer> groupSubscriber = subscriber.values().get(0).flowable().test();
+
+        subscriber.cancel();
+
+        groupSubscriber.assertValues(1, 2).assertError(RuntimeException.class);
+        assertThat(upstream.hasSubscribers()).isFalse();
+    }
+
+    @Test
+    public void thatGroupCanOnlyBeSubscribedOnce() {
+        TestSubscriber<RxGroupByTools.MyGroupedFlowable<Integer, Integer>> subscriber =
+                RxGroupByTools.groupByOrdered(Flowable.just(1, 2), (Integer i) -> i / 10).test();
+        RxGroupByTools.MyGroupedFlowable<Integer, Integer> group = subscriber.values().get(0);
+
+        group.flowable().test().assertResult(1, 2);
+        group.flowable().test().assertError(IllegalStateException.class);
+    }
+}
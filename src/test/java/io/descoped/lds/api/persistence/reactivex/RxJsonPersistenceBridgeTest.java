@@ -3,12 +3,15 @@ package io.descoped.lds.api.persistence.reactivex;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.descoped.lds.api.json.JsonNavigationPath;
 import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.Transaction;
 import io.descoped.lds.api.persistence.json.JsonDocument;
 import io.descoped.lds.api.persistence.json.JsonToFlattenedDocument;
 import io.descoped.lds.api.persistence.json.JsonTools;
 import io.descoped.lds.api.persistence.streaming.Fragment;
 import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import org.assertj.core.api.Condition;
@@ -17,8 +20,14 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -27,6 +36,7 @@ import static io.descoped.lds.api.persistence.reactivex.RxJsonPersistenceBridge.
 import static io.descoped.lds.api.persistence.reactivex.RxJsonPersistenceBridge.doReadDocuments;
 import static java.time.ZonedDateTime.parse;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class RxJsonPersistenceBridgeTest {
 
@@ -70,7 +80,7 @@ public class RxJsonPersistenceBridgeTest {
         createFragments(document, capacity).forEachRemaining(fragments::add);
         Flowable<Fragment> fragmentFlowable = Flowable.fromIterable(fragments);
 
-        Maybe<JsonDocument> map = doReadDocument(fragmentFlowable, capacity);
+        Maybe<JsonDocument> map = doReadDocument(fragmentFlowable);
         assertThat(map.blockingGet()).is(thatIsEqualTo(document));
     }
 
@@ -89,7 +99,7 @@ public class RxJsonPersistenceBridgeTest {
                 .thenComparing(JsonDocument::jackson, (o1, o2) -> isSimilar(o1, o2) ? 0 : -1);
 
         Flowable<JsonDocument> betweenThreeAndNine = doReadDocuments(fragmentFlowable,
-                Range.between("id03", "id09"), capacity);
+                Range.between("id03", "id09"));
         assertThat(betweenThreeAndNine.blockingIterable())
                 .usingElementComparator(byKeyAndJsonValue)
                 .containsExactly(
@@ -101,6 +111,477 @@ public class RxJsonPersistenceBridgeTest {
                 );
     }
 
+    @Test
+    public void testReadDocumentsBackwardWithSpilledSort() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(true);
+        // small fragments and sort budget so that strings span several fragments and the sort spills to disk
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        List<JsonDocument> documents = new ArrayList<>();
+        for (int i = 1; i < 12; i++) {
+            documents.add(createDocument(String.format("id%02d", i)));
+        }
+        bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+
+        Comparator<JsonDocument> byKeyAndJsonValue = Comparator
+                .comparing(JsonDocument::key, (o1, o2) -> o1.equals(o2) ? 0 : -1)
+                .thenComparing(JsonDocument::jackson, (o1, o2) -> isSimilar(o1, o2) ? 0 : -1);
+
+        Flowable<JsonDocument> lastThree = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.last(3));
+        assertThat(lastThree.blockingIterable())
+                .usingElementComparator(byKeyAndJsonValue)
+                .containsExactly(
+                        createDocument("id11"),
+                        createDocument("id10"),
+                        createDocument("id09")
+                );
+    }
+
+    @Test
+    public void testOrderedProviderOutputIsStreamedThrough() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(true, RxPersistenceCapability.READ_ALL_ORDERED);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 11);
+
+        Flowable<JsonDocument> firstTwo = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.first(2));
+        assertThat(firstTwo.blockingIterable())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id01"), createDocument("id02"));
+        // reading stopped early rather than consuming and sorting the whole entity
+        assertThat(persistence.emittedCount.get()).isLessThan(persistence.fragments.size() / 2);
+    }
+
+    @Test
+    public void testOrderedProviderOutputIsStreamedThroughBackward() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.READ_ALL_ORDERED);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 11);
+
+        Flowable<JsonDocument> lastThreeBefore = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.lastBefore(3, "id10"));
+        assertThat(lastThreeBefore.blockingIterable())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id09"), createDocument("id08"), createDocument("id07"));
+
+        // the provider is not told the direction of a plain last-range, so its output is re-sorted
+        Flowable<JsonDocument> lastTwo = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.last(2));
+        assertThat(lastTwo.blockingIterable())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id11"), createDocument("id10"));
+    }
+
+    @Test
+    public void testLimitsArePushedDownToProvider() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(true, RxPersistenceCapability.READ_ALL_LIMITED);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 11);
+        bridge.deleteDocument(null, "ns", "entity", "id02", parse("2000-01-01T00:00:00.000Z"), null).blockingAwait();
+        persistence.markDeleted(null, "ns", "entity", "id03", parse("2000-01-02T00:00:00.000Z"), null).blockingAwait();
+        persistence.emittedCount.set(0);
+
+        Flowable<JsonDocument> firstTwo = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.first(2));
+        assertThat(firstTwo.toList().blockingGet())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id01"), createDocument("id04"));
+        // two documents, a delete marker and a streaming-control fragment
+        int fragmentsPerDocument = (persistence.fragments.size() - 1) / 10;
+        assertThat(persistence.emittedCount.get()).isEqualTo(2 * fragmentsPerDocument + 2);
+
+        Flowable<JsonDocument> lastThree = bridge.readDocuments(null, parse("2001-01-01T00:00:00.000Z"), "ns", "entity",
+                Range.last(3));
+        assertThat(lastThree.blockingIterable())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id11"), createDocument("id10"), createDocument("id09"));
+    }
+
+    @Test
+    public void testHasNextAndHasPreviousIgnoreDeletedDocuments() {
+        List<InMemoryRxPersistence> providers = List.of(
+                new InMemoryRxPersistence(true),
+                new InMemoryRxPersistence(true, RxPersistenceCapability.READ_ALL_LIMITED),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.READ_ALL_ORDERED, RxPersistenceCapability.READ_ALL_LIMITED)
+        );
+        for (InMemoryRxPersistence persistence : providers) {
+            RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+            writeDocuments(bridge, 5);
+            persistence.markDeleted(null, "ns", "entity", "id01", parse("2000-01-02T00:00:00.000Z"), null).blockingAwait();
+            persistence.markDeleted(null, "ns", "entity", "id05", parse("2000-01-02T00:00:00.000Z"), null).blockingAwait();
+            ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+
+            assertThat(bridge.hasPrevious(null, snapshot, "ns", "entity", "id02").blockingGet()).isFalse();
+            assertThat(bridge.hasPrevious(null, snapshot, "ns", "entity", "id03").blockingGet()).isTrue();
+            assertThat(bridge.hasNext(null, snapshot, "ns", "entity", "id03").blockingGet()).isTrue();
+            assertThat(bridge.hasNext(null, snapshot, "ns", "entity", "id04").blockingGet()).isFalse();
+            // before the delete markers, the documents are still there
+            ZonedDateTime beforeDelete = parse("2000-01-01T12:00:00.000Z");
+            assertThat(bridge.hasPrevious(null, beforeDelete, "ns", "entity", "id02").blockingGet()).isTrue();
+            assertThat(bridge.hasNext(null, beforeDelete, "ns", "entity", "id04").blockingGet()).isTrue();
+        }
+    }
+
+    @Test
+    public void testKeysetProbesAreDelegatedToProvider() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.KEYSET_PROBES);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 3);
+        ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+
+        assertThat(bridge.hasPrevious(null, snapshot, "ns", "entity", "id01").blockingGet()).isFalse();
+        assertThat(bridge.hasNext(null, snapshot, "ns", "entity", "id01").blockingGet()).isTrue();
+        assertThat(bridge.hasNext(null, snapshot, "ns", "entity", "id03").blockingGet()).isFalse();
+        assertThat(persistence.readCount.get()).isZero();
+    }
+
+    @Test
+    public void testReadTargetDocumentsKeepsOrderOfLinks() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 11);
+        persistence.markDeleted(null, "ns", "entity", "id05", parse("2000-01-02T00:00:00.000Z"), null).blockingAwait();
+        ObjectNode source = mapper.createObjectNode();
+        ArrayNode refs = source.putArray("refs");
+        for (String id : List.of("id09", "id02", "id05", "id11", "missing", "id02", "id07")) {
+            refs.add("/entity/" + id);
+        }
+        refs.add("/other/id01");
+        bridge.createOrOverwrite(null, new JsonDocument(
+                new DocumentKey("ns", "source", "s1", parse("2000-01-01T00:00:00.000Z")), source), null).blockingAwait();
+        ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+        JsonNavigationPath refsPath = JsonNavigationPath.from("$", "refs", "[]");
+
+        assertThat(bridge.readTargetDocuments(null, snapshot, "ns", "source", "s1", refsPath, "entity", Range.first(4))
+                .toList().blockingGet())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id02"), createDocument("id07"), createDocument("id09"));
+        assertThat(bridge.readTargetDocuments(null, snapshot, "ns", "source", "s1", refsPath, "entity", Range.last(3))
+                .toList().blockingGet())
+                .usingElementComparator(byKeyAndJsonValue())
+                .containsExactly(createDocument("id11"), createDocument("id09"));
+    }
+
+    @Test
+    public void testReadDocumentRestrictedToPaths() throws JSONException {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        writeDocuments(bridge, 2);
+        persistence.markDeleted(null, "ns", "entity", "id02", parse("2000-01-02T00:00:00.000Z"), null).blockingAwait();
+        ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+        List<JsonNavigationPath> paths = List.of(JsonNavigationPath.from("$.anArray[].objectId"), JsonNavigationPath.from("$.aTrue"));
+
+        JsonDocument projection = bridge.readDocument(null, snapshot, "ns", "entity", "id01", paths).blockingGet();
+        JSONAssert.assertEquals("{\"aTrue\":true,\"anArray\":[{\"objectId\":\"id01\"},{\"objectId\":\"id01\"}]}",
+                JsonTools.toJson(projection.jackson()), true);
+        assertThat(bridge.readDocument(null, snapshot, "ns", "entity", "id02", paths).isEmpty().blockingGet()).isTrue();
+    }
+
+    @Test
+    public void testTypedFindMatchesTypeAndWholeValue() {
+        List<InMemoryRxPersistence> providers = List.of(
+                new InMemoryRxPersistence(true),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.FIND_EXACT, RxPersistenceCapability.FIND_ORDERED,
+                        RxPersistenceCapability.FIND_LIMITED)
+        );
+        for (InMemoryRxPersistence persistence : providers) {
+            RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+            List<JsonDocument> documents = new ArrayList<>();
+            documents.add(codeDocument("p1", "{\"code\":1,\"flag\":true,\"name\":\"abcdefgh-1\"}"));
+            documents.add(codeDocument("p2", "{\"code\":2,\"flag\":false,\"name\":\"abcdefgh-2\"}"));
+            documents.add(codeDocument("p3", "{\"code\":null,\"flag\":true,\"name\":\"abcdefgh\"}"));
+            documents.add(codeDocument("p4", "{\"code\":\"2\",\"flag\":\"true\",\"name\":\"2\"}"));
+            bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+            ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+            JsonNavigationPath code = JsonNavigationPath.from("$", "code");
+            JsonNavigationPath flag = JsonNavigationPath.from("$", "flag");
+            JsonNavigationPath name = JsonNavigationPath.from("$", "name");
+
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code, FragmentType.NUMERIC, 2L, Range.first(10))))
+                    .containsExactly("p2");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code, FragmentType.STRING, "2", Range.first(10))))
+                    .containsExactly("p4");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code, FragmentType.NULL, null, Range.first(10))))
+                    .containsExactly("p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", flag, FragmentType.BOOLEAN, true, Range.first(10))))
+                    .containsExactly("p1", "p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", flag, FragmentType.BOOLEAN, true, Range.last(1))))
+                    .containsExactly("p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", name, "abcdefgh-2", Range.first(10))))
+                    .containsExactly("p2");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", name, "abcdefgh", Range.first(10))))
+                    .containsExactly("p3");
+            assertThatThrownBy(() -> bridge.findDocument(null, snapshot, "ns", "coded", code, FragmentType.NUMERIC, "2", Range.first(10)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void testTypedFindMatchesIntegralsRegardlessOfJavaType() {
+        List<InMemoryRxPersistence> providers = List.of(
+                new InMemoryRxPersistence(true),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.FIND_EXACT),
+                // the path is not indexed, so documents are scanned
+                new InMemoryRxPersistence(false, RxPersistenceCapability.INDEX_DELTAS)
+        );
+        for (InMemoryRxPersistence persistence : providers) {
+            RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048, null, IndexRegistry.of(List.of()));
+            List<JsonDocument> documents = new ArrayList<>();
+            ObjectNode longCode = mapper.createObjectNode();
+            longCode.put("code", 42L);
+            documents.add(new JsonDocument(new DocumentKey("ns", "coded", "p1", parse("2000-01-01T00:00:00.000Z")), longCode));
+            ObjectNode bigIntegerCode = mapper.createObjectNode();
+            bigIntegerCode.put("code", BigInteger.valueOf(42));
+            documents.add(new JsonDocument(new DocumentKey("ns", "coded", "p2", parse("2000-01-01T00:00:00.000Z")), bigIntegerCode));
+            documents.add(codeDocument("p3", "{\"code\":42}"));
+            documents.add(codeDocument("p4", "{\"code\":42.0}"));
+            bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+            ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+            JsonNavigationPath code = JsonNavigationPath.from("$", "code");
+
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code, FragmentType.NUMERIC, 42, Range.first(10))))
+                    .containsExactly("p1", "p2", "p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded",
+                    List.of(FindPredicate.of(code, FragmentType.NUMERIC, 42)), Range.first(10))))
+                    .containsExactly("p1", "p2", "p3");
+            if (persistence.capabilities.contains(RxPersistenceCapability.INDEX_DELTAS)) {
+                assertThat(persistence.findPaths).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    public void testFindByValueRangeAndPrefix() {
+        List<InMemoryRxPersistence> providers = List.of(
+                new InMemoryRxPersistence(true),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.FIND_RANGE, RxPersistenceCapability.FIND_ORDERED,
+                        RxPersistenceCapability.FIND_LIMITED)
+        );
+        for (InMemoryRxPersistence persistence : providers) {
+            RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+            List<JsonDocument> documents = new ArrayList<>();
+            documents.add(codeDocument("p1", "{\"code\":1,\"name\":\"Norway\"}"));
+            documents.add(codeDocument("p2", "{\"code\":2.5,\"name\":\"Normandy\"}"));
+            documents.add(codeDocument("p3", "{\"code\":30000000000,\"name\":\"Sweden\"}"));
+            documents.add(codeDocument("p4", "{\"code\":\"2\",\"name\":\"Nor\"}"));
+            documents.add(codeDocument("p5", "{\"code\":-7,\"other\":{\"name\":\"Norway\"}}"));
+            bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+            ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+            JsonNavigationPath code = JsonNavigationPath.from("$", "code");
+            JsonNavigationPath name = JsonNavigationPath.from("$", "name");
+
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code,
+                    ValueRange.between(1.0, false, 3L, true), Range.first(10)))).containsExactly("p2");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code,
+                    ValueRange.atLeast(1), Range.first(10)))).containsExactly("p1", "p2", "p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code,
+                    ValueRange.lessThan(2), Range.first(10)))).containsExactly("p1", "p5");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", code,
+                    ValueRange.atLeast(1), Range.last(1)))).containsExactly("p3");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", name,
+                    ValueRange.prefix("Nor"), Range.first(10)))).containsExactly("p1", "p2", "p4");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", name,
+                    ValueRange.prefix("Norw"), Range.first(10)))).containsExactly("p1");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", name,
+                    ValueRange.between("Normandy", false, "Sweden", false), Range.first(10)))).containsExactly("p1");
+        }
+    }
+
+    @Test
+    public void testFindWithSeveralPredicates() {
+        // documents are read with read(), which must not be scrambled for strings spanning several fragments
+        List<InMemoryRxPersistence> providers = List.of(
+                new InMemoryRxPersistence(false),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.FIND_ORDERED),
+                new InMemoryRxPersistence(false, RxPersistenceCapability.FIND_EXACT, RxPersistenceCapability.FIND_ORDERED,
+                        RxPersistenceCapability.FIND_LIMITED)
+        );
+        for (InMemoryRxPersistence persistence : providers) {
+            RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+            List<JsonDocument> documents = new ArrayList<>();
+            documents.add(codeDocument("p1", "{\"country\":\"Norway\",\"code\":1,\"tags\":[\"a\",\"b\"]}"));
+            documents.add(codeDocument("p2", "{\"country\":\"Norway\",\"code\":2,\"tags\":[\"b\"]}"));
+            documents.add(codeDocument("p3", "{\"country\":\"Sweden\",\"code\":1,\"tags\":[\"b\"]}"));
+            documents.add(codeDocument("p4", "{\"country\":\"Norway\",\"code\":1,\"tags\":[\"b\",\"c\"]}"));
+            documents.add(codeDocument("p5", "{\"country\":\"Norwayy\",\"code\":1,\"tags\":[\"b\"]}"));
+            bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+            ZonedDateTime snapshot = parse("2001-01-01T00:00:00.000Z");
+            List<FindPredicate> predicates = List.of(
+                    FindPredicate.of(JsonNavigationPath.from("$", "country"), "Norway"),
+                    FindPredicate.of(JsonNavigationPath.from("$", "code"), FragmentType.NUMERIC, 1),
+                    FindPredicate.of(JsonNavigationPath.from("$", "tags", "[]"), "b"));
+
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", predicates, Range.first(10))))
+                    .containsExactly("p1", "p4");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", predicates, Range.last(1))))
+                    .containsExactly("p4");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", predicates, Range.firstAfter(5, "p1"))))
+                    .containsExactly("p4");
+            assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", List.of(predicates.get(1)), Range.first(10))))
+                    .containsExactly("p1", "p3", "p4", "p5");
+        }
+    }
+
+    @Test
+    public void testIndexDeltasOfChangedIndexedValuesOnly() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.INDEX_DELTAS);
+        IndexRegistry indexRegistry = IndexRegistry.of(List.of(
+                new IndexedPath("coded", JsonNavigationPath.from("$", "country"), EnumSet.of(FragmentType.STRING)),
+                new IndexedPath("coded", JsonNavigationPath.from("$", "code"), EnumSet.of(FragmentType.NUMERIC)),
+                new IndexedPath("coded", JsonNavigationPath.from("$", "tags", "[]"), EnumSet.of(FragmentType.STRING))));
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048, null, indexRegistry);
+
+        DocumentKey first = new DocumentKey("ns", "coded", "p1", parse("2000-01-01T00:00:00.000Z"));
+        bridge.createOrOverwrite(null, Flowable.just(new JsonDocument(first, JsonTools.toJsonNode(
+                "{\"country\":\"Norway\",\"code\":1,\"tags\":[\"a\",\"b\"],\"note\":\"x\"}"))), null).blockingAwait();
+        assertThat(persistence.indexDeltas).containsExactlyInAnyOrder(
+                IndexDelta.added(first, "$.country", FragmentType.STRING, "Norway".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.added(first, "$.code", FragmentType.NUMERIC, RxJsonPersistenceBridge.findValue(FragmentType.NUMERIC, 1)),
+                IndexDelta.added(first, "$.tags[]", FragmentType.STRING, "a".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.added(first, "$.tags[]", FragmentType.STRING, "b".getBytes(StandardCharsets.UTF_8)));
+
+        persistence.indexDeltas.clear();
+        DocumentKey second = new DocumentKey("ns", "coded", "p1", parse("2001-01-01T00:00:00.000Z"));
+        bridge.createOrOverwrite(null, Flowable.just(new JsonDocument(second, JsonTools.toJsonNode(
+                "{\"country\":\"Norway\",\"code\":2,\"tags\":[\"b\",\"c\"],\"note\":\"y\"}"))), null).blockingAwait();
+        assertThat(persistence.indexDeltas).containsExactlyInAnyOrder(
+                IndexDelta.removed(second, "$.code", FragmentType.NUMERIC, RxJsonPersistenceBridge.findValue(FragmentType.NUMERIC, 1)),
+                IndexDelta.removed(second, "$.tags[]", FragmentType.STRING, "a".getBytes(StandardCharsets.UTF_8)),
+                IndexDelta.added(second, "$.code", FragmentType.NUMERIC, RxJsonPersistenceBridge.findValue(FragmentType.NUMERIC, 2)),
+                IndexDelta.added(second, "$.tags[]", FragmentType.STRING, "c".getBytes(StandardCharsets.UTF_8)));
+
+        // paths that are not indexed are scanned instead of found
+        ZonedDateTime snapshot = parse("2002-01-01T00:00:00.000Z");
+        assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", JsonNavigationPath.from("$", "note"), "y", Range.first(10))))
+                .containsExactly("p1");
+        assertThat(foundIds(bridge.findDocument(null, snapshot, "ns", "coded", JsonNavigationPath.from("$", "country"), "Norway", Range.first(10))))
+                .containsExactly("p1");
+        assertThat(persistence.findPaths).containsExactly("$.country");
+    }
+
+    @Test
+    public void testSourceDocumentsFromReverseLinkIndex() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.LINK_INDEX);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048);
+        List<JsonDocument> documents = new ArrayList<>();
+        documents.add(codeDocument("s1", "{\"friends\":[\"/Person/a\",\"/Person/b\"],\"name\":\"/Person/b\"}"));
+        documents.add(codeDocument("s2", "{\"friends\":[\"/Person/b\"]}"));
+        documents.add(codeDocument("s3", "{\"friends\":[\"/Other/b\"]}"));
+        documents.add(codeDocument("s4", "{\"friends\":[\"/Person/b\"]}"));
+        bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+
+        DocumentKey second = new DocumentKey("ns", "coded", "s1", parse("2001-01-01T00:00:00.000Z"));
+        bridge.createOrOverwrite(null, Flowable.just(new JsonDocument(second, JsonTools.toJsonNode(
+                "{\"friends\":[\"/Person/a\"],\"name\":\"/Person/b\"}"))), null).blockingAwait();
+        assertThat(persistence.linkDeltas).contains(LinkDelta.removed(second, "$.friends[]", "Person", "b"));
+        assertThat(persistence.linkDeltas).doesNotContain(LinkDelta.added(second, "$.friends[]", "Person", "a"));
+
+        JsonNavigationPath friends = JsonNavigationPath.from("$", "friends", "[]");
+        ZonedDateTime before = parse("2000-06-01T00:00:00.000Z");
+        ZonedDateTime after = parse("2002-01-01T00:00:00.000Z");
+        assertThat(foundIds(bridge.readSourceDocuments(null, before, "ns", "Person", "b", friends, "coded", Range.first(10))))
+                .containsExactly("s1", "s2", "s4");
+        assertThat(foundIds(bridge.readSourceDocuments(null, before, "ns", "Person", "b", friends, "coded", Range.last(2))))
+                .containsExactly("s4", "s2");
+        assertThat(foundIds(bridge.readSourceDocuments(null, after, "ns", "Person", "b", friends, "coded", Range.firstAfter(1, "s1"))))
+                .containsExactly("s2");
+        assertThat(foundIds(bridge.readSourceDocuments(null, after, "ns", "Person", "b", JsonNavigationPath.from("$", "name"),
+                "coded", Range.first(10))))
+                .containsExactly("s1");
+        // the back links were looked up without a find
+        assertThat(persistence.findPaths).isEmpty();
+    }
+
+    @Test
+    public void testIndexAndLinksOfVersionWrittenBetweenVersions() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.INDEX_DELTAS,
+                RxPersistenceCapability.FIND_EXACT, RxPersistenceCapability.LINK_INDEX);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048, null, countryIndex());
+        bridge.createOrOverwrite(null, Flowable.just(
+                versionDocument("2000-01-01T00:00:00.000Z", "{\"country\":\"Norway\",\"friend\":\"/Person/a\"}"),
+                versionDocument("2002-01-01T00:00:00.000Z", "{\"country\":\"Norway\",\"friend\":\"/Person/a\"}")), null).blockingAwait();
+        bridge.createOrOverwrite(null, Flowable.just(
+                versionDocument("2001-01-01T00:00:00.000Z", "{\"country\":\"Sweden\",\"friend\":\"/Person/b\"}")), null).blockingAwait();
+
+        assertVersionsFound(bridge);
+        JsonNavigationPath friend = JsonNavigationPath.from("$", "friend");
+        ZonedDateTime between = parse("2001-06-01T00:00:00.000Z");
+        ZonedDateTime after = parse("2003-01-01T00:00:00.000Z");
+        assertThat(foundIds(bridge.readSourceDocuments(null, between, "ns", "Person", "a", friend, "coded", Range.first(10)))).isEmpty();
+        assertThat(foundIds(bridge.readSourceDocuments(null, between, "ns", "Person", "b", friend, "coded", Range.first(10))))
+                .containsExactly("p1");
+        assertThat(foundIds(bridge.readSourceDocuments(null, after, "ns", "Person", "a", friend, "coded", Range.first(10))))
+                .containsExactly("p1");
+        assertThat(foundIds(bridge.readSourceDocuments(null, after, "ns", "Person", "b", friend, "coded", Range.first(10)))).isEmpty();
+    }
+
+    @Test
+    public void testIndexOfVersionsWrittenInOneStream() {
+        // the provider writes the stream once it has all of it, so reads during the stream do not see its versions
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false, RxPersistenceCapability.INDEX_DELTAS,
+                RxPersistenceCapability.FIND_EXACT) {
+            @Override
+            public Completable createOrOverwrite(Transaction tx, Flowable<Fragment> fragments) {
+                return fragments.toList().flatMapCompletable(list -> super.createOrOverwrite(tx, Flowable.fromIterable(list)));
+            }
+        };
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 4, 2048, null, countryIndex());
+        bridge.createOrOverwrite(null, Flowable.just(
+                versionDocument("2002-01-01T00:00:00.000Z", "{\"country\":\"Norway\"}"),
+                versionDocument("2000-01-01T00:00:00.000Z", "{\"country\":\"Norway\"}"),
+                versionDocument("2001-01-01T00:00:00.000Z", "{\"country\":\"Sweden\"}")), null).blockingAwait();
+
+        assertVersionsFound(bridge);
+    }
+
+    private static IndexRegistry countryIndex() {
+        return IndexRegistry.of(List.of(
+                new IndexedPath("coded", JsonNavigationPath.from("$", "country"), EnumSet.of(FragmentType.STRING))));
+    }
+
+    private static JsonDocument versionDocument(String version, String json) {
+        return new JsonDocument(new DocumentKey("ns", "coded", "p1", parse(version)), JsonTools.toJsonNode(json));
+    }
+
+    /**
+     * Asserts that the index of p1 has Norway before and after the version from 2001, and Sweden only at that version.
+     */
+    private static void assertVersionsFound(RxJsonPersistenceBridge bridge) {
+        JsonNavigationPath country = JsonNavigationPath.from("$", "country");
+        for (String snapshot : List.of("2000-06-01T00:00:00.000Z", "2001-06-01T00:00:00.000Z", "2003-01-01T00:00:00.000Z")) {
+            boolean between = snapshot.startsWith("2001");
+            assertThat(foundIds(bridge.findDocument(null, parse(snapshot), "ns", "coded", country, "Norway", Range.first(10))))
+                    .as("Norway at %s", snapshot)
+                    .isEqualTo(between ? List.of() : List.of("p1"));
+            assertThat(foundIds(bridge.findDocument(null, parse(snapshot), "ns", "coded", country, "Sweden", Range.first(10))))
+                    .as("Sweden at %s", snapshot)
+                    .isEqualTo(between ? List.of("p1") : List.of());
+        }
+    }
+
+    private static JsonDocument codeDocument(String id, String json) {
+        return new JsonDocument(new DocumentKey("ns", "coded", id, parse("2000-01-01T00:00:00.000Z")), JsonTools.toJsonNode(json));
+    }
+
+    private static List<String> foundIds(Flowable<JsonDocument> documents) {
+        List<String> ids = new ArrayList<>();
+        documents.blockingForEach(document -> ids.add(document.key().id()));
+        return ids;
+    }
+
+    private void writeDocuments(RxJsonPersistenceBridge bridge, int n) {
+        List<JsonDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            documents.add(createDocument(String.format("id%02d", i)));
+        }
+        bridge.createOrOverwrite(null, Flowable.fromIterable(documents), null).blockingAwait();
+    }
+
+    private static Comparator<JsonDocument> byKeyAndJsonValue() {
+        return Comparator
+                .comparing(JsonDocument::key, (o1, o2) -> o1.equals(o2) ? 0 : -1)
+                .thenComparing(JsonDocument::jackson, (o1, o2) -> isSimilar(o1, o2) ? 0 : -1);
+    }
 
     private JsonDocument createDocument(String id) {
         return new JsonDocument(
@@ -0,0 +1,75 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxMergeJoinToolsTest {
+
+    @Test
+    public void thatItemsInAllSourcesAreEmittedInOrder() {
+        List<Integer> result = RxMergeJoinTools.intersectSorted(List.of(
+                Flowable.just(1, 2, 3, 5, 8, 13, 21),
+                Flowable.fromArray(2, 3, 4, 5, 6, 7, 8, 9, 10, 21, 22),
+                Flowable.just(0, 3, 8, 21)
+        ), Comparator.<Integer>naturalOrder()).toList().blockingGet();
+
+        assertThat(result).containsExactly(3, 8, 21);
+    }
+
+    @Test
+    public void thatReverseOrderedSourcesAreJoined() {
+        List<String> result = RxMergeJoinTools.intersectSorted(List.of(
+                Flowable.just("d", "c", "b"),
+                Flowable.just("e", "c", "a")
+        ), Comparator.<String>reverseOrder()).toList().blockingGet();
+
+        assertThat(result).containsExactly("c");
+    }
+
+    @Test
+    public void thatLargeSourcesAreJoinedWithBackpressure() {
+        Flowable<Integer> evens = Flowable.range(0, 100_000).map(i -> 2 * i);
+        Flowable<Integer> multiplesOfThree = Flowable.range(0, 100_000).map(i -> 3 * i);
+        TestSubscriber<Integer> subscriber = RxMergeJoinTools.intersectSorted(List.of(evens, multiplesOfThree),
+                Comparator.<Integer>naturalOrder()).test(0);
+
+        subscriber.assertNoValues();
+        subscriber.request(2);
+        subscriber.assertValues(0, 6);
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.assertComplete();
+        assertThat(subscriber.valueCount()).isEqualTo(33_334);
+    }
+
+    @Test
+    public void thatJoinCompletesAndCancelsOthersWhenOneSourceCompletes() {
+        PublishProcessor<Integer> open = PublishProcessor.create();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        TestSubscriber<Integer> subscriber = RxMergeJoinTools.intersectSorted(List.of(
+                open.doOnCancel(() -> cancelled.set(true)),
+                Flowable.just(1, 2)
+        ), Comparator.<Integer>naturalOrder()).test();
+
+        open.onNext(1);
+        subscriber.assertValues(1);
+        open.onNext(3);
+        subscriber.assertComplete();
+        assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    public void thatErrorsAreSignalled() {
+        RxMergeJoinTools.intersectSorted(List.of(
+                Flowable.just(1, 2),
+                Flowable.<Integer>error(new IllegalStateException("boom"))
+        ), Comparator.<Integer>naturalOrder()).test().assertError(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,130 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import io.descoped.lds.api.persistence.streaming.Fragment;
+import io.descoped.lds.api.persistence.streaming.FragmentType;
+import io.reactivex.Flowable;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxSortToolsTest {
+
+    private static List<Fragment> randomFragments(int n) {
+        Random random = new Random(n);
+        ZonedDateTime timestamp = ZonedDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Oslo"));
+        List<Fragment> fragments = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String id = String.format("id%03d", random.nextInt(50));
+            String path = "$.p" + random.nextInt(20);
+            byte[] value = ("v" + random.nextInt(1000)).getBytes(StandardCharsets.UTF_8);
+            fragments.add(new Fragment("ns", "E", id, timestamp.plusSeconds(random.nextInt(3)), path, FragmentType.STRING, random.nextInt(3), value));
+        }
+        return fragments;
+    }
+
+    private static List<Fragment> sortedCopy(List<Fragment> fragments, Comparator<? super Fragment> comparator) {
+        List<Fragment> sorted = new ArrayList<>(fragments);
+        sorted.sort(comparator);
+        return sorted;
+    }
+
+    @Test
+    public void thatFragmentsWithinBudgetAreSortedInMemory() throws IOException {
+        List<Fragment> fragments = randomFragments(500);
+        try (RxSortTools.ExternalSort sort = new RxSortTools.ExternalSort(Comparator.naturalOrder(), Long.MAX_VALUE)) {
+            for (Fragment fragment : fragments) {
+                sort.add(fragment);
+            }
+            assertThat(sort.runs).isEmpty();
+            List<Fragment> result = new ArrayList<>();
+            sort.sorted().forEachRemaining(result::add);
+            assertThat(result).containsExactlyElementsOf(sortedCopy(fragments, Comparator.naturalOrder()));
+        }
+    }
+
+    @Test
+    public void thatSpilledRunsAreMergedInOrder() {
+        List<Fragment> fragments = randomFragments(2000);
+        List<Fragment> result = RxSortTools.sorted(Flowable.fromIterable(fragments), Comparator.naturalOrder(), 10_000)
+                .toList().blockingGet();
+        assertThat(result).containsExactlyElementsOf(sortedCopy(fragments, Comparator.naturalOrder()));
+        // buffered and spilled fragments share the dictionary of the sort
+        assertThat(result).extracting(Fragment::dictionary).doesNotContainNull().containsOnly(result.get(0).dictionary());
+    }
+
+    @Test
+    public void thatManyRunsAreMergedInSteps() {
+        List<Fragment> fragments = randomFragments(3 * RxSortTools.MAX_MERGE_WIDTH + 7);
+        Comparator<Fragment> reverse = Comparator.reverseOrder();
+        List<Fragment> result = RxSortTools.sorted(Flowable.fromIterable(fragments), reverse, 1)
+                .toList().blockingGet();
+        assertThat(result).containsExactlyElementsOf(sortedCopy(fragments, reverse));
+    }
+
+    @Test
+    public void thatRunsAreMergedInTiers() throws IOException {
+        int n = RxSortTools.MAX_MERGE_WIDTH * RxSortTools.MAX_MERGE_WIDTH + 5;
+        List<Fragment> fragments = randomFragments(n);
+        try (RxSortTools.ExternalSort sort = new RxSortTools.ExternalSort(Comparator.naturalOrder(), 1)) {
+            for (Fragment fragment : fragments) {
+                sort.add(fragment);
+            }
+            // each fragment is written once as a spilled run and once per merge level above it
+            assertThat(sort.writtenFragments).isLessThanOrEqualTo(3L * n);
+            assertThat(sort.runs.size()).isLessThan(2 * RxSortTools.MAX_MERGE_WIDTH);
+            List<Fragment> result = new ArrayList<>();
+            sort.sorted().forEachRemaining(result::add);
+            assertThat(result).containsExactlyElementsOf(sortedCopy(fragments, Comparator.naturalOrder()));
+        }
+    }
+
+    @Test
+    public void thatTemporaryFilesAreDeletedOnClose() throws IOException {
+        List<Path> runs;
+        try (RxSortTools.ExternalSort sort = new RxSortTools.ExternalSort(Comparator.naturalOrder(), 1000)) {
+            for (Fragment fragment : randomFragments(100)) {
+                sort.add(fragment);
+            }
+            runs = new ArrayList<>(sort.runs);
+            assertThat(runs).isNotEmpty();
+            Iterator<Fragment> iterator = sort.sorted();
+            iterator.next();
+            assertThat(runs).allMatch(Files::exists);
+        }
+        assertThat(runs).noneMatch(Files::exists);
+    }
+
+    @Test
+    public void thatFragmentsRoundTripThroughRunFormat() throws IOException {
+        ZonedDateTime timestamp = ZonedDateTime.of(2019, 10, 27, 2, 30, 0, 123456789, ZoneId.of("Europe/Oslo")).plusHours(1);
+        List<Fragment> fragments = new ArrayList<>();
+        fragments.add(new Fragment("ns", "E", "1", timestamp, "$.a[1].b", FragmentType.NUMERIC, 8192, new byte[]{1, 2, 3}));
+        fragments.add(new Fragment("ns", "E", "1", timestamp, "$.æøå", FragmentType.EMPTY_ARRAY, 0, new byte[0]));
+        fragments.add(new Fragment(true, Fragment.LIMITED_CODE, null, null, null, null, null, null, 0, null));
+        try (RxSortTools.ExternalSort sort = new RxSortTools.ExternalSort(Comparator.naturalOrder(), Long.MAX_VALUE)) {
+            Path path = sort.writeRun(fragments.iterator());
+            sort.runs.add(path);
+            Iterator<Fragment> run = sort.openRun(path);
+            for (Fragment fragment : fragments) {
+                Fragment copy = run.next();
+                assertThat(copy).isEqualTo(fragment);
+                assertThat(copy.isStreamingControl()).isEqualTo(fragment.isStreamingControl());
+                assertThat(copy.controlCode()).isEqualTo(fragment.controlCode());
+                assertThat(copy.fragmentType()).isEqualTo(fragment.fragmentType());
+            }
+            assertThat(run.hasNext()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.descoped.lds.api.persistence.reactivex;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.Transaction;
+import io.descoped.lds.api.persistence.json.JsonDocument;
+import io.descoped.lds.api.persistence.json.JsonTools;
+import io.reactivex.Flowable;
+import org.testng.annotations.Test;
+
+import java.time.ZonedDateTime;
+
+import static java.time.ZonedDateTime.parse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnapshotDocumentCacheTest {
+
+    static final ZonedDateTime FUTURE = parse("2100-01-01T00:00:00.000Z");
+
+    private static JsonDocument document(String id, String version, String name) {
+        return new JsonDocument(new DocumentKey("ns", "entity", id, parse(version)),
+                JsonTools.toJsonNode("{\"name\":\"" + name + "\"}"));
+    }
+
+    @Test
+    public void thatDocumentsAreValidBetweenVersionAndSnapshot() {
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(1 << 20);
+        cache.put(document("id1", "2000-01-01T00:00:00.000Z", "a"), parse("2001-01-01T00:00:00.000Z"), false, cache.generation());
+
+        assertThat(cache.get("ns", "entity", "id1", parse("2000-06-01T00:00:00.000Z"))).isNotNull();
+        assertThat(cache.get("ns", "entity", "id1", parse("1999-06-01T00:00:00.000Z"))).isNull();
+        assertThat(cache.get("ns", "entity", "id1", parse("2002-01-01T00:00:00.000Z"))).isNull();
+
+        // a read of the same version at a later snapshot, after its start, leaves the entry open-ended
+        cache.put(document("id1", "2000-01-01T00:00:00.000Z", "a"), FUTURE, true, cache.generation());
+        assertThat(cache.get("ns", "entity", "id1", parse("2002-01-01T00:00:00.000Z"))).isNotNull();
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatCallersCannotChangeCachedDocuments() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(1 << 20);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 8,
+                RxJsonPersistenceBridge.DEFAULT_SORT_MEMORY_BUDGET_BYTES, cache);
+        bridge.createOrOverwrite(null, Flowable.just(document("id1", "2000-01-01T00:00:00.000Z", "a")), null).blockingAwait();
+
+        JsonDocument read = bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet();
+        ((ObjectNode) read.jackson()).put("name", "changed by the reader that missed");
+        JsonDocument hit = bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet();
+        assertThat(hit.jackson().get("name").textValue()).isEqualTo("a");
+        ((ObjectNode) hit.jackson()).put("name", "changed by the reader that hit");
+        assertThat(bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo("a");
+        assertThat(cache.hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatReadsStartedBeforeAnInvalidationAreNotCached() {
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(1 << 20);
+        long generation = cache.generation();
+        cache.invalidate("ns", "entity", "id2");
+        cache.put(document("id1", "2000-01-01T00:00:00.000Z", "a"), FUTURE, true, generation);
+        assertThat(cache.get("ns", "entity", "id1", FUTURE)).isNull();
+    }
+
+    @Test
+    public void thatFrequentlyReadDocumentsAreNotEvictedByOneOffReads() {
+        JsonDocument hot = document("hot", "2000-01-01T00:00:00.000Z", "hot");
+        long weight = SnapshotDocumentCache.estimatedWeight(hot);
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(2 * weight);
+        for (int i = 0; i < 5; i++) {
+            cache.get("ns", "entity", "hot", FUTURE);
+        }
+        cache.put(hot, FUTURE, true, cache.generation());
+        cache.get("ns", "entity", "warm", FUTURE);
+        cache.put(document("warm", "2000-01-01T00:00:00.000Z", "hot"), FUTURE, true, cache.generation());
+
+        for (int i = 0; i < 10; i++) {
+            String id = String.format("c%03d", i);
+            cache.get("ns", "entity", id, FUTURE);
+            cache.put(document(id, "2000-01-01T00:00:00.000Z", "hot"), FUTURE, true, cache.generation());
+        }
+        assertThat(cache.get("ns", "entity", "hot", FUTURE)).isNotNull();
+        assertThat(cache.weight()).isLessThanOrEqualTo(2 * weight);
+        assertThat(cache.rejectionCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void thatOnlyReadsAtLatestAreCachedForLaterSnapshots() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(1 << 20);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 8,
+                RxJsonPersistenceBridge.DEFAULT_SORT_MEMORY_BUDGET_BYTES, cache);
+        // a version timestamped after the time it is written, and after the snapshot of the next read
+        bridge.createOrOverwrite(null, Flowable.just(document("id1", "2000-01-01T00:00:00.000Z", "a"),
+                document("id1", "2090-01-01T00:00:00.000Z", "b")), null).blockingAwait();
+
+        assertThat(bridge.readDocument(null, parse("2050-01-01T00:00:00.000Z"), "ns", "entity", "id1").blockingGet()
+                .jackson().get("name").textValue()).isEqualTo("a");
+        assertThat(bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet()
+                .jackson().get("name").textValue()).isEqualTo("b");
+
+        persistence.readCount.set(0);
+        assertThat(bridge.readDocument(null, SnapshotDocumentCache.LATEST, "ns", "entity", "id1").blockingGet()
+                .jackson().get("name").textValue()).isEqualTo("b");
+        assertThat(bridge.readDocument(null, parse("2095-01-01T00:00:00.000Z"), "ns", "entity", "id1").blockingGet()
+                .jackson().get("name").textValue()).isEqualTo("b");
+        assertThat(bridge.readDocument(null, parse("2050-01-01T00:00:00.000Z"), "ns", "entity", "id1").blockingGet()
+                .jackson().get("name").textValue()).isEqualTo("a");
+        assertThat(persistence.readCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatLargeCachesAreSegmentedAndInvalidatedAcrossSegments() {
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(64L << 20);
+        assertThat(cache.segments).hasSize(SnapshotDocumentCache.MAX_SEGMENTS);
+        assertThat(new SnapshotDocumentCache(1 << 20).segments).hasSize(1);
+        for (int i = 0; i < 100; i++) {
+            cache.put(document("id" + i, "2000-01-01T00:00:00.000Z", "a"), FUTURE, false, cache.generation());
+        }
+        assertThat(cache.segments).allMatch(segment -> !segment.entries.isEmpty());
+        assertThat(cache.get("ns", "entity", "id42", FUTURE)).isNotNull();
+
+        cache.invalidate("ns", "entity");
+        assertThat(cache.weight()).isZero();
+        assertThat(cache.get("ns", "entity", "id42", FUTURE)).isNull();
+    }
+
+    @Test
+    public void thatBridgeServesReadsFromCacheUntilWritten() {
+        InMemoryRxPersistence persistence = new InMemoryRxPersistence(false);
+        SnapshotDocumentCache cache = new SnapshotDocumentCache(1 << 20);
+        RxJsonPersistenceBridge bridge = new RxJsonPersistenceBridge(persistence, 8,
+                RxJsonPersistenceBridge.DEFAULT_SORT_MEMORY_BUDGET_BYTES, cache);
+        bridge.createOrOverwrite(null, Flowable.just(document("id1", "2000-01-01T00:00:00.000Z", "a")), null).blockingAwait();
+        persistence.readCount.set(0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                    .isEqualTo("a");
+        }
+        assertThat(persistence.readCount.get()).isEqualTo(1);
+
+        Transaction tx = bridge.createTransaction(false);
+        bridge.createOrOverwrite(tx, Flowable.just(document("id1", "2000-06-01T00:00:00.000Z", "b")), null).blockingAwait();
+        // the writing transaction reads its own writes, and does not share them before committing
+        assertThat(bridge.readDocument(tx, FUTURE, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo("b");
+        assertThat(cache.weight()).isZero();
+        tx.commit().join();
+        assertThat(bridge.readDocument(null, FUTURE, "ns", "entity", "id1").blockingGet().jackson().get("name").textValue())
+                .isEqualTo("b");
+
+        bridge.markDocumentDeleted(null, "ns", "entity", "id1", parse("2000-07-01T00:00:00.000Z"), null).blockingAwait();
+        assertThat(bridge.readDocument(null, FUTURE, "ns", "entity", "id1").isEmpty().blockingGet()).isTrue();
+        assertThat(persistence.readCount.get()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,32 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import org.testng.annotations.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpochMicrosTest {
+
+    @Test
+    public void thatVersionsConvertToUtcMicroseconds() {
+        ZonedDateTime oslo = ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 123456789, ZoneId.of("Europe/Oslo"));
+        long version = EpochMicros.of(oslo);
+        assertThat(EpochMicros.toZonedDateTime(version)).isEqualTo(ZonedDateTime.parse("2019-06-01T10:00:00.123456Z"));
+        assertThat(EpochMicros.toZonedDateTime(EpochMicros.of(ZonedDateTime.parse("1969-12-31T23:59:59.999999Z"))))
+                .isEqualTo(ZonedDateTime.parse("1969-12-31T23:59:59.999999Z"));
+        assertThat(EpochMicros.of((ZonedDateTime) null)).isEqualTo(EpochMicros.NONE);
+        assertThat(EpochMicros.toZonedDateTime(EpochMicros.NONE)).isNull();
+    }
+
+    @Test
+    public void thatKeysWithTheSameInstantAreEqual() {
+        ZonedDateTime utc = ZonedDateTime.parse("2019-06-01T10:00:00Z");
+        DocumentKey key = new DocumentKey("ns", "E", "1", utc.withZoneSameInstant(ZoneId.of("Europe/Oslo")));
+        assertThat(key).isEqualTo(new DocumentKey("ns", "E", "1", utc));
+        assertThat(key.version()).isEqualTo(EpochMicros.of(utc));
+        assertThat(key.timestamp()).isEqualTo(utc);
+    }
+}
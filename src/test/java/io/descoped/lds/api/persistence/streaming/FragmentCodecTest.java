@@ -0,0 +1,151 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FragmentCodecTest {
+
+    private static List<Fragment> fragments() {
+        ZonedDateTime t1 = ZonedDateTime.parse("2019-01-01T10:00:00.123456Z");
+        ZonedDateTime t2 = ZonedDateTime.of(2019, 10, 27, 2, 30, 0, 123456789, ZoneId.of("Europe/Oslo"));
+        ZonedDateTime t3 = ZonedDateTime.parse("1960-01-01T00:00:00.000001Z");
+        List<Fragment> fragments = new ArrayList<>();
+        fragments.add(new Fragment("ns", "Person", "1", t1, "$.address.city", FragmentType.STRING, 0, "Oslo".getBytes(StandardCharsets.UTF_8)));
+        fragments.add(new Fragment("ns", "Person", "1", t1, "$.address.street", FragmentType.STRING, 0, "Gata".getBytes(StandardCharsets.UTF_8)));
+        fragments.add(new Fragment("ns", "Person", "1", t1, "$.address.street", FragmentType.STRING, 300, "1".getBytes(StandardCharsets.UTF_8)));
+        fragments.add(new Fragment("ns", "Person", "1", t2, "$.æøå[12]", FragmentType.EMPTY_ARRAY, 0, new byte[0]));
+        fragments.add(Fragment.limited());
+        fragments.add(new Fragment("ns", "Person", "2", t3, "$.a", FragmentType.NUMERIC, Long.MAX_VALUE, new byte[]{1, 2, 3}));
+        fragments.add(new Fragment("ns", "Person", "2", t3, "$", FragmentType.DELETED, 0, null));
+        fragments.add(new Fragment(false, (short) 0, null, null, null, null, null, null, 0, null));
+        fragments.add(Fragment.notLimited());
+        return fragments;
+    }
+
+    @Test
+    public void thatFragmentsRoundTrip() {
+        List<Fragment> fragments = fragments();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        FragmentCodec.Encoder encoder = new FragmentCodec.Encoder();
+        for (Fragment fragment : fragments) {
+            assertThat(encoder.encode(fragment, buffer)).isTrue();
+        }
+        buffer.flip();
+        FragmentCodec.Decoder decoder = new FragmentCodec.Decoder();
+        for (Fragment fragment : fragments) {
+            Fragment copy = decoder.decode(buffer);
+            assertThat(copy).isEqualTo(fragment);
+            assertThat(copy.isStreamingControl()).isEqualTo(fragment.isStreamingControl());
+            assertThat(copy.controlCode()).isEqualTo(fragment.controlCode());
+            assertThat(copy.version()).isEqualTo(fragment.version());
+        }
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void thatViewsDecodeFieldsWithoutCopyingValues() {
+        List<Fragment> fragments = fragments();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        FragmentCodec.Encoder encoder = new FragmentCodec.Encoder();
+        for (Fragment fragment : fragments) {
+            encoder.encode(fragment, buffer);
+        }
+        buffer.flip();
+        FragmentCodec.Decoder decoder = new FragmentCodec.Decoder();
+        for (int i = 0; i < fragments.size(); i++) {
+            Fragment fragment = fragments.get(i);
+            if (i % 2 == 0) {
+                assertThat(decoder.decode(buffer)).isEqualTo(fragment);
+                continue;
+            }
+            decoder.decodeView(buffer);
+            assertThat(decoder.isStreamingControl()).isEqualTo(fragment.isStreamingControl());
+            assertThat(decoder.controlCode()).isEqualTo(fragment.controlCode());
+            assertThat(decoder.namespace()).isEqualTo(fragment.namespace());
+            assertThat(decoder.entity()).isEqualTo(fragment.entity());
+            assertThat(decoder.id()).isEqualTo(fragment.id());
+            assertThat(decoder.version()).isEqualTo(fragment.version());
+            assertThat(decoder.path()).isEqualTo(fragment.path());
+            assertThat(decoder.fragmentType()).isEqualTo(fragment.fragmentType());
+            assertThat(decoder.offset()).isEqualTo(fragment.offset());
+            if (fragment.value() == null) {
+                assertThat(decoder.value()).isNull();
+            } else {
+                assertThat(decoder.value().isReadOnly()).isTrue();
+                assertThat(decoder.value()).isEqualTo(ByteBuffer.wrap(fragment.value()));
+            }
+        }
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void thatViewedValuesShareTheBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        new FragmentCodec.Encoder().encode(new Fragment("ns", "E", "1", 1000L, "$.a", FragmentType.STRING, 0,
+                "abc".getBytes(StandardCharsets.UTF_8)), buffer);
+        buffer.flip();
+        FragmentCodec.Decoder decoder = new FragmentCodec.Decoder();
+        decoder.decodeView(buffer);
+        ByteBuffer value = decoder.value();
+        buffer.put(buffer.limit() - 3, (byte) 'x');
+        assertThat(value.get(0)).isEqualTo((byte) 'x');
+    }
+
+    @Test
+    public void thatSortedKeysAreCompressed() {
+        ZonedDateTime timestamp = ZonedDateTime.parse("2019-01-01T10:00:00Z");
+        FragmentCodec.Encoder encoder = new FragmentCodec.Encoder();
+        encoder.encode(new Fragment("namespace", "SomeEntity", "c8a9e0b4-0d7f-4a8e-9d3b-2f6c1a7e5b90", timestamp,
+                "$.someObject.someField", FragmentType.BOOLEAN, 0, new byte[]{1}));
+        byte[] next = encoder.encode(new Fragment("namespace", "SomeEntity", "c8a9e0b4-0d7f-4a8e-9d3b-2f6c1a7e5b90", timestamp,
+                "$.someObject.someOtherField", FragmentType.BOOLEAN, 0, new byte[]{0}));
+        // flags, shared and suffix lengths, "OtherField", type, offset, value length and value
+        assertThat(next.length).isEqualTo(1 + 2 + 10 + 1 + 1 + 2);
+    }
+
+    @Test
+    public void thatEncodeIntoFullBufferLeavesStateUnchanged() {
+        List<Fragment> fragments = fragments();
+        FragmentCodec.Encoder encoder = new FragmentCodec.Encoder();
+        ByteBuffer small = ByteBuffer.allocate(8);
+        ByteBuffer large = ByteBuffer.allocate(4096);
+        for (Fragment fragment : fragments) {
+            int position = small.position();
+            if (!encoder.encode(fragment, small)) {
+                assertThat(small.position()).isEqualTo(position);
+                assertThat(encoder.encode(fragment, large)).isTrue();
+            } else {
+                small.flip();
+                large.put(small);
+            }
+            small.clear();
+        }
+        large.flip();
+        FragmentCodec.Decoder decoder = new FragmentCodec.Decoder();
+        for (Fragment fragment : fragments) {
+            assertThat(decoder.decode(large)).isEqualTo(fragment);
+        }
+    }
+
+    @Test
+    public void thatVarLongsRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long[] values = {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+        for (long value : values) {
+            FragmentCodec.writeVarLong(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertThat(FragmentCodec.readVarLong(buffer)).isEqualTo(value);
+        }
+        assertThat(FragmentCodec.unZigZag(FragmentCodec.zigZag(-123456789L))).isEqualTo(-123456789L);
+    }
+}
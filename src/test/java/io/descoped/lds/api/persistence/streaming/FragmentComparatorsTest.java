@@ -0,0 +1,59 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FragmentComparatorsTest {
+
+    private static Fragment fragment(String id, long version, String path, long offset, byte[] value) {
+        return new Fragment("ns", "E", id, version, path, FragmentType.STRING, offset, value);
+    }
+
+    @Test
+    public void thatLargeOffsetsAreOrdered() {
+        Fragment first = fragment("1", 1000, "$.s", 0, new byte[]{1});
+        Fragment far = fragment("1", 1000, "$.s", 3L << 31, new byte[]{1});
+        Fragment farther = fragment("1", 1000, "$.s", Long.MAX_VALUE, new byte[]{1});
+        assertThat(first.compareTo(far)).isEqualTo(-1);
+        assertThat(far.compareTo(first)).isEqualTo(1);
+        assertThat(far.compareTo(farther)).isEqualTo(-1);
+        assertThat(FragmentComparators.KEY.compare(farther, first)).isEqualTo(1);
+    }
+
+    @Test
+    public void thatControlFragmentsAreOrderedLastAlsoWhenReversed() {
+        Fragment fragment = fragment("1", 1000, "$.s", 0, new byte[]{1});
+        assertThat(Fragment.limited().compareTo(fragment)).isEqualTo(1);
+        assertThat(fragment.compareTo(Fragment.notLimited())).isEqualTo(-1);
+        assertThat(Fragment.limited().compareTo(Fragment.notLimited())).isEqualTo(-1);
+        assertThat(FragmentComparators.FORWARD.reversed().compare(Fragment.limited(), fragment)).isEqualTo(-1);
+        assertThat(FragmentComparators.REVERSE_DOCUMENTS.compare(Fragment.limited(), fragment)).isEqualTo(1);
+    }
+
+    @Test
+    public void thatKeyOrderIgnoresValues() {
+        Fragment a = fragment("1", 1000, "$.s", 0, new byte[]{1});
+        Fragment b = fragment("1", 1000, "$.s", 0, new byte[]{2});
+        assertThat(FragmentComparators.KEY.compare(a, b)).isZero();
+        assertThat(FragmentComparators.FORWARD.compare(a, b)).isEqualTo(-1);
+    }
+
+    @Test
+    public void thatReverseDocumentsKeepsFragmentsOfEachDocumentInOrder() {
+        List<Fragment> fragments = new ArrayList<>();
+        fragments.add(fragment("1", 1000, "$.a", 0, new byte[]{1}));
+        fragments.add(fragment("1", 1000, "$.b", 0, new byte[]{1}));
+        fragments.add(fragment("1", 2000, "$.a", 0, new byte[]{1}));
+        fragments.add(fragment("2", 1000, "$.a", 0, new byte[]{1}));
+        fragments.add(fragment("2", 1000, "$.a", 1L << 32, new byte[]{1}));
+        fragments.add(Fragment.notLimited());
+        List<Fragment> sorted = new ArrayList<>(fragments);
+        sorted.sort(FragmentComparators.REVERSE_DOCUMENTS);
+        assertThat(sorted).containsExactly(fragments.get(3), fragments.get(4), fragments.get(2), fragments.get(0),
+                fragments.get(1), fragments.get(5));
+    }
+}
@@ -0,0 +1,78 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import io.descoped.lds.api.persistence.DocumentKey;
+import io.descoped.lds.api.persistence.json.JsonToFragments;
+import io.descoped.lds.api.persistence.json.JsonTools;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FragmentDictionaryTest {
+
+    @Test
+    public void thatEqualStringsShareSymbolAndInstance() {
+        FragmentDictionary dictionary = new FragmentDictionary();
+        int a = dictionary.symbol("$.a");
+        int b = dictionary.symbol("$.b");
+        assertThat(a).isNotEqualTo(b);
+        assertThat(dictionary.symbol(new String("$.a"))).isEqualTo(a);
+        assertThat(dictionary.intern(new String("$.b"))).isSameAs(dictionary.string(b));
+        assertThat(dictionary.symbol(null)).isEqualTo(-1);
+        assertThat(dictionary.string(-1)).isNull();
+        assertThat(dictionary.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void thatDocumentsOfAStreamSharePaths() {
+        FragmentDictionary dictionary = new FragmentDictionary();
+        List<Fragment> first = new ArrayList<>();
+        new JsonToFragments(new DocumentKey("ns", "E", "1", 1000L), JsonTools.toJsonNode("{\"a\":1,\"b\":\"x\"}"), 64, dictionary)
+                .forEachRemaining(first::add);
+        List<Fragment> second = new ArrayList<>();
+        new JsonToFragments(new DocumentKey("ns", "E", "2", 1000L), JsonTools.toJsonNode("{\"a\":2,\"b\":\"y\"}"), 64, dictionary)
+                .forEachRemaining(second::add);
+        assertThat(first).hasSize(2);
+        for (int i = 0; i < first.size(); i++) {
+            assertThat(second.get(i).path()).isSameAs(first.get(i).path());
+            assertThat(second.get(i).pathSymbol()).isEqualTo(first.get(i).pathSymbol());
+            assertThat(second.get(i).namespace()).isSameAs(first.get(i).namespace());
+        }
+        assertThat(dictionary.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void thatInternedFragmentsShareStrings() {
+        FragmentDictionary dictionary = new FragmentDictionary();
+        Fragment first = dictionary.intern(new Fragment(new String("ns"), "E", "1", 1000L, new String("$.a"), FragmentType.STRING, 0, new byte[]{1}));
+        Fragment second = dictionary.intern(new Fragment(new String("ns"), "E", "2", 1000L, new String("$.a"), FragmentType.STRING, 0, new byte[]{2}));
+        assertThat(second.path()).isSameAs(first.path());
+        assertThat(second.namespace()).isSameAs(first.namespace());
+        assertThat(second.dictionary()).isSameAs(dictionary);
+        assertThat(second.value()).containsExactly(2);
+        assertThat(dictionary.intern(second)).isSameAs(second);
+        Fragment limited = Fragment.limited();
+        assertThat(dictionary.intern(limited)).isSameAs(limited);
+    }
+
+    @Test
+    public void thatFragmentsCompareEquallyAcrossDictionaries() {
+        Fragment plain = new Fragment("ns", "E", "1", 1000L, "$.a", FragmentType.NUMERIC, 0, new byte[]{1});
+        Fragment first = new Fragment(new FragmentDictionary(), "ns", "E", "1", 1000L, "$.a", FragmentType.NUMERIC, 0, new byte[]{1});
+        FragmentDictionary other = new FragmentDictionary();
+        other.symbol("$.b");
+        Fragment second = new Fragment(other, "ns", "E", "1", 1000L, "$.a", FragmentType.NUMERIC, 0, new byte[]{1});
+        Fragment later = new Fragment(other, "ns", "E", "1", 1000L, "$.b", FragmentType.NUMERIC, 0, new byte[]{1});
+        assertThat(first.pathSymbol()).isNotEqualTo(second.pathSymbol());
+        assertThat(first).isEqualTo(second).isEqualTo(plain);
+        assertThat(first.compareTo(second)).isZero();
+        assertThat(plain.compareTo(second)).isZero();
+        assertThat(first.samePathAs(second)).isTrue();
+        assertThat(first.hashCode()).isEqualTo(second.hashCode());
+        assertThat(later.compareTo(second)).isPositive();
+        assertThat(first.compareTo(later)).isNegative();
+        assertThat(later).isNotEqualTo(second);
+    }
+}
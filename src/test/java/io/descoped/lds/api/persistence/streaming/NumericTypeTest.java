@@ -0,0 +1,65 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NumericTypeTest {
+
+    @Test
+    public void thatNumbersRoundTripWithTheirType() {
+        assertRoundTrip(Integer.MIN_VALUE, NumericType.INT);
+        assertRoundTrip(42, NumericType.INT);
+        assertRoundTrip(Long.MAX_VALUE, NumericType.LONG);
+        assertRoundTrip(-7L, NumericType.LONG);
+        assertRoundTrip(new BigInteger("-123456789012345678901234567890"), NumericType.BIG_INTEGER);
+        assertRoundTrip(3.14159, NumericType.DOUBLE);
+        assertRoundTrip(-0.0, NumericType.DOUBLE);
+        assertRoundTrip(new BigDecimal("-1234567890.0987654321"), NumericType.BIG_DECIMAL);
+    }
+
+    @Test
+    public void thatNarrowAndFloatNumbersAreWidened() {
+        assertThat(NumericType.decode(NumericType.encode((short) 3))).isEqualTo(3);
+        assertThat(NumericType.decode(NumericType.encode(1.1f))).isEqualTo(1.1);
+    }
+
+    @Test
+    public void thatIntAndDoubleAreStoredCompactly() {
+        assertThat(NumericType.encode(1234567890)).hasSize(5);
+        assertThat(NumericType.encode(1234567890.123)).hasSize(9);
+    }
+
+    @Test
+    public void thatTextWrittenByEarlierVersionsIsDecoded() {
+        assertThat(NumericType.decode(text("42"))).isEqualTo(42);
+        assertThat(NumericType.decode(text("-2147483649"))).isEqualTo(-2147483649L);
+        assertThat(NumericType.decode(text("12345678901234567890"))).isEqualTo(new BigInteger("12345678901234567890"));
+        assertThat(NumericType.decode(text("2.5"))).isEqualTo(2.5);
+        assertThat(NumericType.decode(text("1.0E10"))).isEqualTo(1.0E10);
+    }
+
+    @Test
+    public void thatParsePicksNarrowestIntegralType() {
+        assertThat(NumericType.parse("999999999")).isEqualTo(999999999);
+        assertThat(NumericType.parse("2147483647")).isEqualTo(Integer.MAX_VALUE);
+        assertThat(NumericType.parse("2147483648")).isEqualTo(2147483648L);
+        assertThat(NumericType.parse("-9223372036854775808")).isEqualTo(Long.MIN_VALUE);
+        assertThat(NumericType.parse("9223372036854775808")).isEqualTo(new BigInteger("9223372036854775808"));
+        assertThat(NumericType.parse("-1")).isEqualTo(-1);
+    }
+
+    private static void assertRoundTrip(Number number, NumericType expectedType) {
+        byte[] encoded = NumericType.encode(number);
+        assertThat(NumericType.fromTypeCode(encoded[0])).isEqualTo(expectedType);
+        assertThat(NumericType.decode(encoded)).isEqualTo(number);
+    }
+
+    private static byte[] text(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
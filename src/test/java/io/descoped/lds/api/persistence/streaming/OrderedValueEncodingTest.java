@@ -0,0 +1,50 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderedValueEncodingTest {
+
+    @Test
+    public void thatNumbersAreOrderedByValueAcrossTypes() {
+        List<Number> ascending = List.of(Double.NEGATIVE_INFINITY, new BigInteger("-100000000000000000000"),
+                Long.MIN_VALUE + 1, -1e10, -123, -12.5, -12, -1.5, -1, -0.25, -0.125, 0, 0.001, 0.1, new BigDecimal("0.10001"),
+                1, 1.5, 2L, 9, 10, 12, 123, Integer.MAX_VALUE, 3e9, Long.MAX_VALUE, 1e300, Double.POSITIVE_INFINITY,
+                Double.NaN);
+        List<byte[]> keys = new ArrayList<>();
+        for (Number number : ascending) {
+            keys.add(OrderedValueEncoding.encodeNumber(number));
+        }
+        for (int i = 1; i < keys.size(); i++) {
+            assertThat(Arrays.compareUnsigned(keys.get(i - 1), keys.get(i)))
+                    .as("%s < %s", ascending.get(i - 1), ascending.get(i))
+                    .isNegative();
+        }
+    }
+
+    @Test
+    public void thatEqualNumbersHaveEqualKeys() {
+        byte[] one = OrderedValueEncoding.encodeNumber(1);
+        assertThat(OrderedValueEncoding.encodeNumber(1L)).isEqualTo(one);
+        assertThat(OrderedValueEncoding.encodeNumber(1.0)).isEqualTo(one);
+        assertThat(OrderedValueEncoding.encodeNumber(new BigDecimal("1.000"))).isEqualTo(one);
+        assertThat(OrderedValueEncoding.encodeNumber(1.1f)).isEqualTo(OrderedValueEncoding.encodeNumber(1.1));
+        assertThat(OrderedValueEncoding.encodeNumber(-0.0)).isEqualTo(OrderedValueEncoding.encodeNumber(0));
+        assertThat(OrderedValueEncoding.encode(FragmentType.NUMERIC, NumericType.encode(-42))).isEqualTo(OrderedValueEncoding.encodeNumber(-42.0));
+    }
+
+    @Test
+    public void thatPrefixEndBoundsAllKeysWithThePrefix() {
+        assertThat(OrderedValueEncoding.prefixEnd(new byte[]{'N', 'o', 'r'})).isEqualTo(new byte[]{'N', 'o', 's'});
+        assertThat(OrderedValueEncoding.prefixEnd(new byte[]{'a', (byte) 0xFF})).isEqualTo(new byte[]{'b'});
+        assertThat(OrderedValueEncoding.prefixEnd(new byte[]{(byte) 0xFF})).isNull();
+        assertThat(OrderedValueEncoding.prefixEnd(new byte[0])).isNull();
+    }
+}
@@ -0,0 +1,59 @@
+package io.descoped.lds.api.persistence.streaming;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ValueHasherTest {
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void thatSha1IsCompatibleWithMessageDigest() throws Exception {
+        byte[] value = "some value".getBytes(StandardCharsets.UTF_8);
+        assertThat(ValueHasher.SHA_1.hash(value)).isEqualTo(MessageDigest.getInstance("SHA-1").digest(value));
+        assertThat(ValueHasher.SHA_1.hash(value)).isEqualTo(MessageDigest.getInstance("SHA-1").digest(value));
+        Fragment fragment = new Fragment("ns", "E", "1", 0L, "$.a", FragmentType.STRING, 0, value);
+        assertThat(fragment.truncatedValue()).isEqualTo(fragment.truncatedValue(ValueHasher.SHA_1));
+    }
+
+    @Test
+    public void thatMurmur3MatchesReferenceOutput() {
+        assertThat(hex(ValueHasher.MURMUR3_128.hash(new byte[0]))).isEqualTo("00000000000000000000000000000000");
+        assertThat(hex(ValueHasher.MURMUR3_128.hash("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8))))
+                .isEqualTo("6c1b07bc7bbc4be347939ac4a93c437a");
+    }
+
+    @Test
+    public void thatMurmur3DistinguishesAllTailLengths() {
+        Set<String> hashes = new HashSet<>();
+        for (int length = 0; length <= 40; length++) {
+            byte[] value = new byte[length];
+            for (int i = 0; i < length; i++) {
+                value[i] = (byte) i;
+            }
+            assertThat(ValueHasher.MURMUR3_128.hash(value)).hasSize(16);
+            hashes.add(hex(ValueHasher.MURMUR3_128.hash(value)));
+        }
+        assertThat(hashes).hasSize(41);
+    }
+
+    @Test
+    public void thatSchemesAreResolvedByName() {
+        assertThat(ValueHasher.forName(ValueHasher.SHA_1.name())).isSameAs(ValueHasher.SHA_1);
+        assertThat(ValueHasher.forName(ValueHasher.MURMUR3_128.name())).isSameAs(ValueHasher.MURMUR3_128);
+        assertThatThrownBy(() -> ValueHasher.forName("MD5")).isInstanceOf(IllegalArgumentException.class);
+    }
+}